@@ -0,0 +1,55 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time the stages in front of the interpreter on a script made of every workload.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrontEndBenchmark {
+
+  private String source;
+  private List<Token> tokens;
+  private List<Statement> statements;
+
+  @Setup
+  public void setUp() {
+    source = Workloads.large(20);
+    tokens = LoxHarness.scan(source);
+    statements = LoxHarness.parse(source);
+  }
+
+  @Benchmark
+  public List<Token> scan() {
+    return new Scanner(source).scanTokens();
+  }
+
+  @Benchmark
+  public List<Statement> parse() {
+    return new Parser(tokens).parse();
+  }
+
+  @Benchmark
+  public Interpreter resolve() {
+    Interpreter interpreter = new Interpreter();
+    new Resolver(interpreter).resolve(statements);
+    return interpreter;
+  }
+}
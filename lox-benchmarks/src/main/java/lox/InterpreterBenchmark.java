@@ -0,0 +1,54 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Interpret an already resolved workload.
+ *
+ * The interpreter is created once per trial, so only execution is measured here.
+ * Scanning, parsing and resolving are covered by {@link FrontEndBenchmark}.
+ *
+ * Every workload runs with both ways of dispatching on nodes: the visitors'
+ * accept and the switch over node kinds, see SwitchInterpreter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+
+  @Param({"fib", "loop", "binaryTrees", "methodDispatch", "fields", "closures", "strings"})
+  public String workload;
+
+  @Param({"visitor", "switch"})
+  public String dispatch;
+
+  private Interpreter interpreter;
+  private List<Statement> statements;
+
+  @Setup
+  public void setUp() {
+    interpreter = dispatch.equals("switch") ? new SwitchInterpreter(OutputSink.stdout()) : new Interpreter();
+    statements = LoxHarness.compile(Workloads.get(workload), interpreter);
+  }
+
+  @Benchmark
+  public void interpret() {
+    interpreter.interpret(statements);
+  }
+}
@@ -0,0 +1,65 @@
+package lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loop bookkeeping alone, with and without the Optimizer's superinstructions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoopBenchmark {
+
+  static final String COUNTER =
+      "for (var i = 0; i < 100000; i = i + 1) {}\n";
+
+  static final String FIELD_UPDATE =
+      "class Accumulator {\n" +
+      "  init() { this.total = 0; }\n" +
+      "  run(n) {\n" +
+      "    var i = 0;\n" +
+      "    while (i < n) {\n" +
+      "      this.total = this.total + i;\n" +
+      "      i = i + 1;\n" +
+      "    }\n" +
+      "  }\n" +
+      "}\n" +
+      "Accumulator().run(100000);\n";
+
+  @Param({"counter", "fieldUpdate"})
+  public String loop;
+
+  @Param({"true", "false"})
+  public boolean superinstructions;
+
+  private Interpreter interpreter;
+  private List<Statement> statements;
+
+  @Setup
+  public void setUp() {
+    interpreter = new Interpreter();
+    String source = loop.equals("counter") ? COUNTER : FIELD_UPDATE;
+    statements = LoxHarness.compile(source, interpreter, superinstructions);
+  }
+
+  @Benchmark
+  public void interpret() {
+    interpreter.interpret(statements);
+  }
+}
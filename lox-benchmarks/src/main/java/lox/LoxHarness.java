@@ -0,0 +1,41 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Runs the same front end as {@link Lox#run} but hands back the pieces so that
+ * benchmarks can time each stage on its own.
+ */
+final class LoxHarness {
+
+  private LoxHarness() {
+  }
+
+  static List<Token> scan(String source) {
+    return new Scanner(source).scanTokens();
+  }
+
+  static List<Statement> parse(String source) {
+    List<Statement> statements = new Parser(scan(source)).parse();
+    if (statements.contains(null)) {
+      throw new IllegalStateException("workload does not parse");
+    }
+    return statements;
+  }
+
+  /**
+   * parse, optimize and resolve the source against the given interpreter.
+   */
+  static List<Statement> compile(String source, Interpreter interpreter) {
+    return compile(source, interpreter, true);
+  }
+
+  static List<Statement> compile(String source, Interpreter interpreter, boolean optimize) {
+    List<Statement> statements = parse(source);
+    if (optimize) {
+      statements = Optimizer.optimize(statements);
+    }
+    new Resolver(interpreter).resolve(statements);
+    return statements;
+  }
+}
@@ -0,0 +1,138 @@
+package lox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lox sources driven by the benchmarks.
+ *
+ * Every workload is side-effect free apart from its globals, so a script can be
+ * interpreted again and again by the same interpreter.
+ */
+final class Workloads {
+
+  static final String FIB =
+      "fun fib(n) {\n" +
+      "  if (n < 2) return n;\n" +
+      "  return fib(n - 1) + fib(n - 2);\n" +
+      "}\n" +
+      "var result = fib(20);\n";
+
+  static final String LOOP =
+      "var sum = 0;\n" +
+      "for (var i = 0; i < 100000; i = i + 1) {\n" +
+      "  sum = sum + i * 2 - i / 2;\n" +
+      "}\n";
+
+  static final String BINARY_TREES =
+      "class Tree {\n" +
+      "  init(left, right) {\n" +
+      "    this.left = left;\n" +
+      "    this.right = right;\n" +
+      "  }\n" +
+      "  check() {\n" +
+      "    if (this.left == nil) return 1;\n" +
+      "    return 1 + this.left.check() + this.right.check();\n" +
+      "  }\n" +
+      "}\n" +
+      "fun bottomUp(depth) {\n" +
+      "  if (depth == 0) return Tree(nil, nil);\n" +
+      "  return Tree(bottomUp(depth - 1), bottomUp(depth - 1));\n" +
+      "}\n" +
+      "var checked = 0;\n" +
+      "for (var i = 0; i < 4; i = i + 1) {\n" +
+      "  checked = checked + bottomUp(10).check();\n" +
+      "}\n";
+
+  static final String METHOD_DISPATCH =
+      "class A {\n" +
+      "  value() { return 1; }\n" +
+      "  twice() { return this.value() * 2; }\n" +
+      "}\n" +
+      "class B < A {\n" +
+      "  value() { return super.value() + 1; }\n" +
+      "}\n" +
+      "class C < B {}\n" +
+      "class D < C {}\n" +
+      "class E < D {}\n" +
+      "class F < E {}\n" +
+      "var leaf = F();\n" +
+      "var total = 0;\n" +
+      "for (var i = 0; i < 20000; i = i + 1) {\n" +
+      "  total = total + leaf.twice();\n" +
+      "}\n";
+
+  static final String FIELDS =
+      "class Point {\n" +
+      "  init(x, y) {\n" +
+      "    this.x = x;\n" +
+      "    this.y = y;\n" +
+      "  }\n" +
+      "}\n" +
+      "var p = Point(0, 0);\n" +
+      "for (var i = 0; i < 50000; i = i + 1) {\n" +
+      "  p.x = p.x + 1;\n" +
+      "  p.y = p.y + p.x;\n" +
+      "}\n";
+
+  static final String CLOSURES =
+      "fun makeCounter() {\n" +
+      "  var count = 0;\n" +
+      "  fun increment() {\n" +
+      "    count = count + 1;\n" +
+      "    return count;\n" +
+      "  }\n" +
+      "  return increment;\n" +
+      "}\n" +
+      "var total = 0;\n" +
+      "for (var i = 0; i < 1000; i = i + 1) {\n" +
+      "  var counter = makeCounter();\n" +
+      "  for (var j = 0; j < 20; j = j + 1) {\n" +
+      "    total = total + counter();\n" +
+      "  }\n" +
+      "}\n";
+
+  static final String STRINGS =
+      "var text = \"\";\n" +
+      "for (var i = 0; i < 2000; i = i + 1) {\n" +
+      "  text = text + \"lox\";\n" +
+      "}\n" +
+      "var same = text == text + \"\";\n";
+
+  static final Map<String, String> ALL = new LinkedHashMap<>();
+
+  static {
+    ALL.put("fib", FIB);
+    ALL.put("loop", LOOP);
+    ALL.put("binaryTrees", BINARY_TREES);
+    ALL.put("methodDispatch", METHOD_DISPATCH);
+    ALL.put("fields", FIELDS);
+    ALL.put("closures", CLOSURES);
+    ALL.put("strings", STRINGS);
+  }
+
+  private Workloads() {
+  }
+
+  static String get(String name) {
+    String source = ALL.get(name);
+    if (source == null) {
+      throw new IllegalArgumentException("Unknown workload: " + name);
+    }
+    return source;
+  }
+
+  /**
+   * concatenate every workload a number of times, renaming nothing.
+   * redefining globals is fine in Lox, so the result is still a valid script.
+   */
+  static String large(int copies) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < copies; i++) {
+      for (String source : ALL.values()) {
+        builder.append(source);
+      }
+    }
+    return builder.toString();
+  }
+}
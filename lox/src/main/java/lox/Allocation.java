@@ -0,0 +1,68 @@
+package lox;
+
+/**
+ * What the interpreter allocated, see AllocationProfiler.
+ *
+ * Sizes are estimates for a 64 bit JVM with compressed references, counting
+ * the objects a Lox value is made of rather than measuring them.
+ */
+enum Allocation {
+  // a LoxInstance with its four inline slots.
+  INSTANCE("instance"),
+  // a LoxFunction bound to its receiver.
+  BOUND_METHOD("bound method"),
+  // a LoxFunction closing over the environment it is declared in.
+  CLOSURE("closure"),
+  // an Environment with its empty HashMap.
+  ENVIRONMENT("environment"),
+  // the HashMap node of a variable, the first in an environment also makes the table.
+  VARIABLE("variable"),
+  // the String or LoxString rope node built by `+`.
+  STRING("string"),
+  // a LoxList with its first elements array.
+  LIST("list"),
+  // a LoxMap with its first key and value arrays.
+  MAP("map"),
+  // a LoxArray with its elements.
+  ARRAY("array");
+
+  final String description;
+
+  Allocation(String description) {
+    this.description = description;
+  }
+
+  /**
+   * the estimated bytes, size as given to AllocationProfiler.count(), or the
+   * variables an environment had before, for a variable.
+   */
+  long bytes(int size) {
+    switch (this) {
+      case INSTANCE:
+        return 40;
+      case BOUND_METHOD:
+      case CLOSURE:
+        return 32;
+      case ENVIRONMENT:
+        return 24 + 48;
+      case VARIABLE:
+        // a table of 16 references.
+        return size == 0 ? 32 + 80 : 32;
+      case STRING:
+        // short results are flat Latin-1 Strings, longer ones a rope node over both operands.
+        return size <= LoxString.FLAT_THRESHOLD ? 24 + align(16 + size) : 32;
+      case LIST:
+        return 24 + 48;
+      case MAP:
+        return 32 + 2 * 48;
+      case ARRAY:
+        return 24 + 16 + 8L * size;
+      default:
+        throw new AssertionError(this);
+    }
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+}
@@ -0,0 +1,163 @@
+package lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Behind `lox --profile-allocations`: counts the instances, bound methods,
+ * closures, environments, variables, strings, lists, maps and arrays every node
+ * of the program allocates, with their estimated bytes, see Allocation.
+ *
+ * The counting is done by the interpreters made for it, ProfilingInterpreter,
+ * ProfilingStacklessInterpreter and ProfilingFlatInterpreter. They override the
+ * methods making these objects, see Interpreter.newEnvironment(), and name the
+ * node running as they go. The plain interpreters carry none of it.
+ *
+ * report() prints the sites, the most bytes first, one line per node and kind:
+ *
+ *   [alloc] line 12 call instance: 10000 objects, 400000 bytes
+ */
+final class AllocationProfiler {
+  /**
+   * where objects were made: a node, or a site the flat interpreter describes
+   * itself.
+   */
+  static final class Site {
+    final String name;
+    final int line;
+    final LongAdder[] counts = adders();
+    final LongAdder[] bytes = adders();
+
+    Site(String name, int line) {
+      this.name = name;
+      this.line = line;
+    }
+
+    private static Site of(Object node) {
+      if (node instanceof Expr) {
+        return new Site(node.getClass().getSimpleName().toLowerCase(), LineFinder.of((Expr) node));
+      } else if (node instanceof Statement) {
+        return new Site(node.getClass().getSimpleName().toLowerCase(), LineFinder.of((Statement) node));
+      }
+      return (Site) node;
+    }
+
+    private void count(Allocation kind, int size) {
+      counts[kind.ordinal()].increment();
+      bytes[kind.ordinal()].add(kind.bytes(size));
+    }
+
+    private static LongAdder[] adders() {
+      LongAdder[] adders = new LongAdder[Allocation.values().length];
+      for (int i = 0; i < adders.length; i++) {
+        adders[i] = new LongAdder();
+      }
+      return adders;
+    }
+  }
+
+  /**
+   * an environment counting the variables defined in it, at the site that
+   * made it: the parameters of a call at the call, the variables of a block at
+   * the block.
+   */
+  private static final class CountingEnvironment extends Environment {
+    private static final long serialVersionUID = 1L;
+    // not snapshotted, a restored environment counts nothing.
+    private final transient Site site;
+
+    CountingEnvironment(Environment enclosing, Site site) {
+      super(enclosing);
+      this.site = site;
+    }
+
+    @Override
+    public void define(String name, Object value) {
+      if (site != null && !definesHere(name)) {
+        site.count(Allocation.VARIABLE, size());
+      }
+      super.define(name, value);
+    }
+  }
+
+  // one kind at one site, as counted when the report started.
+  private static final class Row {
+    final Site site;
+    final Allocation kind;
+    final long count;
+    final long bytes;
+
+    Row(Site site, Allocation kind) {
+      this.site = site;
+      this.kind = kind;
+      this.count = site.counts[kind.ordinal()].sum();
+      this.bytes = site.bytes[kind.ordinal()].sum();
+    }
+  }
+
+  // what is made before any node runs, natives called from Java say.
+  private final Site unknown = new Site("unknown", -1);
+  private final PrintStream out;
+  // nodes don't override equals, so sites are kept per node, not per line.
+  // Parallel iterations allocate from several threads.
+  private final Map<Object, Site> sites = new ConcurrentHashMap<>();
+
+  AllocationProfiler(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * count object, of kind, made by node. size is the characters of a string or
+   * the length of an array, 0 otherwise.
+   */
+  <T> T count(Object node, Allocation kind, int size, T object) {
+    site(node).count(kind, size);
+    return object;
+  }
+
+  /**
+   * a new environment made by node, counting what is defined in it.
+   */
+  Environment environment(Object node, Environment enclosing) {
+    Site site = site(node);
+    site.count(Allocation.ENVIRONMENT, 0);
+    return new CountingEnvironment(enclosing, site);
+  }
+
+  private Site site(Object node) {
+    if (node == null) return unknown;
+    Site site = sites.get(node);
+    if (site == null) {
+      site = sites.computeIfAbsent(node, Site::of);
+    }
+    return site;
+  }
+
+  void report() {
+    List<Row> rows = new ArrayList<>();
+    long objects = 0;
+    long bytes = 0;
+    List<Site> all = new ArrayList<>(sites.values());
+    all.add(unknown);
+    for (Site site : all) {
+      for (Allocation kind : Allocation.values()) {
+        Row row = new Row(site, kind);
+        if (row.count == 0) continue;
+        rows.add(row);
+        objects += row.count;
+        bytes += row.bytes;
+      }
+    }
+    rows.sort(Comparator.comparingLong((Row row) -> row.bytes).reversed());
+    out.println("[alloc] " + objects + " objects, " + bytes + " bytes");
+    for (Row row : rows) {
+      out.println("[alloc] line " + (row.site.line < 0 ? "?" : String.valueOf(row.site.line)) + " " + row.site.name
+          + " " + row.kind.description + ": " + row.count + " objects, " + row.bytes + " bytes");
+    }
+  }
+}
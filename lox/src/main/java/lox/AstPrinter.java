@@ -67,6 +67,21 @@ public class AstPrinter implements Expr.Visitor<String> {
     return null;
   }
 
+  @Override
+  public String visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    return "(" + expr.operator.lexeme + " " + expr.name.lexeme + " " + expr.right.accept(this) + ")";
+  }
+
+  @Override
+  public String visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    return expr.name.lexeme + " " + expr.operator.lexeme + "= " + expr.value.accept(this);
+  }
+
+  @Override
+  public String visitCompoundSetExpr(Expr.CompoundSet expr) {
+    return null;
+  }
+
   private String parenthesize(String name, Expr... expressions) {
     final StringBuilder stringBuilder = new StringBuilder();
     stringBuilder.append("(").append(name);
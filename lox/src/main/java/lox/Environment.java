@@ -1,25 +1,48 @@
 package lox;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Environment {
+public class Environment implements Serializable {
+  private static final long serialVersionUID = 1L;
 
-  private final Map<String, Object> values = new HashMap<>();
+  private final Map<String, Object> values;
   protected final Environment enclosing;
 
   public Environment() {
-    this.enclosing = null;
+    this(null, new HashMap<>());
   }
 
   public Environment(Environment enclosing) {
+    this(enclosing, new HashMap<>());
+  }
+
+  /**
+   * values is null for a subclass keeping its variables itself, which then
+   * overrides define, get and assign, see GlobalEnvironment.
+   */
+  Environment(Environment enclosing, Map<String, Object> values) {
     this.enclosing = enclosing;
+    this.values = values;
   }
 
   public void define(String name, Object value) {
     values.put(name, value);
   }
 
+  /**
+   * whether name is defined in this environment itself, and how many
+   * variables are, for a subclass counting them.
+   */
+  boolean definesHere(String name) {
+    return values.containsKey(name);
+  }
+
+  int size() {
+    return values.size();
+  }
+
   public Object get(Token name) {
     if (values.containsKey(name.lexeme)) {
       return values.get(name.lexeme);
@@ -0,0 +1,44 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * Receives the events of a TracingInterpreter, every method does nothing unless
+ * overridden.
+ */
+interface ExecutionListener {
+  default void statementEntered(Statement statement) {
+  }
+
+  default void callEntered(Token paren, LoxCallable callee, List<Object> arguments) {
+  }
+
+  /**
+   * the call returned result, see callFailed() for the other way out.
+   */
+  default void callExited(Token paren, LoxCallable callee, Object result) {
+  }
+
+  /**
+   * the call ended in a tail call, which reuses its frame: callEntered()
+   * follows for the callee, and what the callee returns is what this call
+   * returns. Reported as returning nil unless overridden.
+   */
+  default void callReplaced(Token paren, LoxCallable callee) {
+    callExited(paren, callee, null);
+  }
+
+  /**
+   * the call ended with error, a runtime error or anything else unwinding
+   * through it, instead of returning.
+   */
+  default void callFailed(Token paren, LoxCallable callee, Throwable error) {
+  }
+
+  /**
+   * a variable is defined or assigned, a function or class declaration
+   * included.
+   */
+  default void variableWritten(Token name, Object value) {
+  }
+}
@@ -1,8 +1,34 @@
 package lox;
 
+import java.io.Serializable;
 import java.util.List;
 
-abstract class Expr {
+abstract class Expr implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static final int BINARY = 0;
+  static final int CALL = 1;
+  static final int GET = 2;
+  static final int SET = 3;
+  static final int THIS = 4;
+  static final int SUPER = 5;
+  static final int GROUPING = 6;
+  static final int LITERAL = 7;
+  static final int UNARY = 8;
+  static final int VARIABLE = 9;
+  static final int ASSIGN = 10;
+  static final int LOGICAL = 11;
+  static final int VARIABLE_BINARY = 12;
+  static final int COMPOUND_ASSIGN = 13;
+  static final int COMPOUND_SET = 14;
+
+  // which subclass this is, one of the constants above.
+  final int kind;
+
+  Expr(int kind) {
+    this.kind = kind;
+  }
+
   interface Visitor<R> {
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
@@ -16,10 +42,57 @@ abstract class Expr {
     R visitVariableExpr(Variable expr);
     R visitAssignExpr(Assign expr);
     R visitLogicalExpr(Logical expr);
+    R visitVariableBinaryExpr(VariableBinary expr);
+    R visitCompoundAssignExpr(CompoundAssign expr);
+    R visitCompoundSetExpr(CompoundSet expr);
+  }
+
+  /**
+   * the same as expr.accept(visitor), but a switch on its kind instead
+   * of a virtual call, see SwitchInterpreter.
+   */
+  static <R> R dispatch(Visitor<R> visitor, Expr expr) {
+    switch (expr.kind) {
+      case BINARY:
+        return visitor.visitBinaryExpr((Binary) expr);
+      case CALL:
+        return visitor.visitCallExpr((Call) expr);
+      case GET:
+        return visitor.visitGetExpr((Get) expr);
+      case SET:
+        return visitor.visitSetExpr((Set) expr);
+      case THIS:
+        return visitor.visitThisExpr((This) expr);
+      case SUPER:
+        return visitor.visitSuperExpr((Super) expr);
+      case GROUPING:
+        return visitor.visitGroupingExpr((Grouping) expr);
+      case LITERAL:
+        return visitor.visitLiteralExpr((Literal) expr);
+      case UNARY:
+        return visitor.visitUnaryExpr((Unary) expr);
+      case VARIABLE:
+        return visitor.visitVariableExpr((Variable) expr);
+      case ASSIGN:
+        return visitor.visitAssignExpr((Assign) expr);
+      case LOGICAL:
+        return visitor.visitLogicalExpr((Logical) expr);
+      case VARIABLE_BINARY:
+        return visitor.visitVariableBinaryExpr((VariableBinary) expr);
+      case COMPOUND_ASSIGN:
+        return visitor.visitCompoundAssignExpr((CompoundAssign) expr);
+      case COMPOUND_SET:
+        return visitor.visitCompoundSetExpr((CompoundSet) expr);
+      default:
+        throw new IllegalStateException("Unknown expr kind " + expr.kind);
+    }
   }
 
   static class Binary extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -35,7 +108,10 @@ abstract class Expr {
   }
 
   static class Call extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Call(Expr callee, Token paren, List<Expr> arguments) {
+      super(CALL);
       this.callee = callee;
       this.paren = paren;
       this.arguments = arguments;
@@ -51,7 +127,10 @@ abstract class Expr {
   }
 
   static class Get extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Get(Expr object, Token name) {
+      super(GET);
       this.object = object;
       this.name = name;
     }
@@ -65,7 +144,10 @@ abstract class Expr {
   }
 
   static class Set extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Set(Expr object, Token name, Expr value) {
+      super(SET);
       this.object = object;
       this.name = name;
       this.value = value;
@@ -81,7 +163,10 @@ abstract class Expr {
   }
 
   static class This extends Expr {
+    private static final long serialVersionUID = 1L;
+
     This(Token keyword) {
+      super(THIS);
       this.keyword = keyword;
     }
 
@@ -93,7 +178,10 @@ abstract class Expr {
   }
 
   static class Super extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Super(Token keyword, Token method) {
+      super(SUPER);
       this.keyword = keyword;
       this.method = method;
     }
@@ -107,7 +195,10 @@ abstract class Expr {
   }
 
   static class Grouping extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -119,7 +210,10 @@ abstract class Expr {
   }
 
   static class Literal extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -131,7 +225,10 @@ abstract class Expr {
   }
 
   static class Unary extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -145,7 +242,10 @@ abstract class Expr {
   }
 
   static class Variable extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
 
@@ -154,10 +254,14 @@ abstract class Expr {
       return visitor.visitVariableExpr(this);
     }
   final Token name;
+  GlobalEnvironment.Cell cell;
   }
 
   static class Assign extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -168,10 +272,14 @@ abstract class Expr {
     }
   final Token name;
   final Expr value;
+  GlobalEnvironment.Cell cell;
   }
 
   static class Logical extends Expr {
+    private static final long serialVersionUID = 1L;
+
     Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -186,6 +294,67 @@ abstract class Expr {
   final Expr right;
   }
 
+  static class VariableBinary extends Expr {
+    private static final long serialVersionUID = 1L;
+
+    VariableBinary(Token name, Token operator, Expr right) {
+      super(VARIABLE_BINARY);
+      this.name = name;
+      this.operator = operator;
+      this.right = right;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitVariableBinaryExpr(this);
+    }
+  final Token name;
+  final Token operator;
+  final Expr right;
+  GlobalEnvironment.Cell cell;
+  }
+
+  static class CompoundAssign extends Expr {
+    private static final long serialVersionUID = 1L;
+
+    CompoundAssign(Token name, Token operator, Expr value) {
+      super(COMPOUND_ASSIGN);
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCompoundAssignExpr(this);
+    }
+  final Token name;
+  final Token operator;
+  final Expr value;
+  GlobalEnvironment.Cell cell;
+  }
+
+  static class CompoundSet extends Expr {
+    private static final long serialVersionUID = 1L;
+
+    CompoundSet(Expr object, Token name, Token operator, Expr value) {
+      super(COMPOUND_SET);
+      this.object = object;
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCompoundSetExpr(this);
+    }
+  final Expr object;
+  final Token name;
+  final Token operator;
+  final Expr value;
+  }
+
 
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,404 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program as parallel arrays instead of a graph of nodes, generated along
+ * with Expr and Statement.
+ *
+ * Node n is kinds[n], one of the constants below, tokens[n], the index of its
+ * first Token field or -1, and its other fields in order from
+ * operands[operandStart[n]]: a child node or -1 for null, the index of a token
+ * or of a constant, or where a list starts in operands, its size followed by
+ * its elements. The offset of a field is the constant named after its node and
+ * itself. Children come before their parents, root is the list of the
+ * program's statements.
+ *
+ * Tokens are columns too, with their lexemes interned and without literals,
+ * and a Token object is only made for one the first time it is asked for.
+ * The caches after a ';' in GenerateAst are left out.
+ */
+final class FlatAst {
+  static final int BINARY_EXPR = 0;
+  static final int CALL_EXPR = 1;
+  static final int GET_EXPR = 2;
+  static final int SET_EXPR = 3;
+  static final int THIS_EXPR = 4;
+  static final int SUPER_EXPR = 5;
+  static final int GROUPING_EXPR = 6;
+  static final int LITERAL_EXPR = 7;
+  static final int UNARY_EXPR = 8;
+  static final int VARIABLE_EXPR = 9;
+  static final int ASSIGN_EXPR = 10;
+  static final int LOGICAL_EXPR = 11;
+  static final int VARIABLE_BINARY_EXPR = 12;
+  static final int COMPOUND_ASSIGN_EXPR = 13;
+  static final int COMPOUND_SET_EXPR = 14;
+  static final int EXPRESSION_STATEMENT = 15;
+  static final int FUNCTION_STATEMENT = 16;
+  static final int PRINT_STATEMENT = 17;
+  static final int VAR_STATEMENT = 18;
+  static final int BLOCK_STATEMENT = 19;
+  static final int CLASS_STATEMENT = 20;
+  static final int IF_STATEMENT = 21;
+  static final int WHILE_STATEMENT = 22;
+  static final int PARALLEL_STATEMENT = 23;
+  static final int RETURN_STATEMENT = 24;
+  static final int IMPORT_STATEMENT = 25;
+
+  static final int BINARY_LEFT = 0;
+  static final int BINARY_RIGHT = 1;
+  static final int CALL_CALLEE = 0;
+  static final int CALL_ARGUMENTS = 1;
+  static final int GET_OBJECT = 0;
+  static final int SET_OBJECT = 0;
+  static final int SET_VALUE = 1;
+  static final int SUPER_METHOD = 0;
+  static final int GROUPING_EXPRESSION = 0;
+  static final int LITERAL_VALUE = 0;
+  static final int UNARY_RIGHT = 0;
+  static final int ASSIGN_VALUE = 0;
+  static final int LOGICAL_LEFT = 0;
+  static final int LOGICAL_RIGHT = 1;
+  static final int VARIABLE_BINARY_OPERATOR = 0;
+  static final int VARIABLE_BINARY_RIGHT = 1;
+  static final int COMPOUND_ASSIGN_OPERATOR = 0;
+  static final int COMPOUND_ASSIGN_VALUE = 1;
+  static final int COMPOUND_SET_OBJECT = 0;
+  static final int COMPOUND_SET_OPERATOR = 1;
+  static final int COMPOUND_SET_VALUE = 2;
+  static final int EXPRESSION_EXPRESSION = 0;
+  static final int FUNCTION_PARAMS = 0;
+  static final int FUNCTION_BODY = 1;
+  static final int PRINT_EXPRESSION = 0;
+  static final int VAR_INITIALIZER = 0;
+  static final int BLOCK_STATEMENTS = 0;
+  static final int CLASS_SUPERCLASS = 0;
+  static final int CLASS_METHODS = 1;
+  static final int IF_CONDITION = 0;
+  static final int IF_THEN_BRANCH = 1;
+  static final int IF_ELSE_BRANCH = 2;
+  static final int WHILE_CONDITION = 0;
+  static final int WHILE_BODY = 1;
+  static final int PARALLEL_NAME = 0;
+  static final int PARALLEL_START = 1;
+  static final int PARALLEL_END = 2;
+  static final int PARALLEL_BODY = 3;
+  static final int RETURN_VALUE = 0;
+  static final int IMPORT_PATH = 0;
+
+  final int[] kinds;
+  final int[] tokens;
+  final int[] operandStart;
+  final int[] operands;
+  final TokenType[] tokenTypes;
+  final String[] lexemes;
+  final int[] lines;
+  final Object[] constants;
+  final int root;
+  private final Token[] tokenObjects;
+
+  private FlatAst(int[] kinds, int[] tokens, int[] operandStart, int[] operands, TokenType[] tokenTypes,
+                  String[] lexemes, int[] lines, Object[] constants, int root) {
+    this.kinds = kinds;
+    this.tokens = tokens;
+    this.operandStart = operandStart;
+    this.operands = operands;
+    this.tokenTypes = tokenTypes;
+    this.lexemes = lexemes;
+    this.lines = lines;
+    this.constants = constants;
+    this.root = root;
+    this.tokenObjects = new Token[lexemes.length];
+  }
+
+  static FlatAst encode(List<Statement> statements) {
+    Encoder encoder = new Encoder();
+    return encoder.build(encoder.statementList(statements));
+  }
+
+  int size() {
+    return kinds.length;
+  }
+
+  /**
+   * the node's first Token field.
+   */
+  Token token(int node) {
+    return tokenAt(tokens[node]);
+  }
+
+  String lexeme(int node) {
+    return lexemes[tokens[node]];
+  }
+
+  int operand(int node, int field) {
+    return operands[operandStart[node] + field];
+  }
+
+  Token tokenAt(int index) {
+    Token token = tokenObjects[index];
+    if (token == null) {
+      token = tokenObjects[index] = new Token(tokenTypes[index], lexemes[index], null, lines[index]);
+    }
+    return token;
+  }
+
+  Object constant(int index) {
+    return constants[index];
+  }
+
+  int size(int list) {
+    return operands[list];
+  }
+
+  int element(int list, int index) {
+    return operands[list + 1 + index];
+  }
+
+  private static final class Encoder implements Expr.Visitor<Integer>, Statement.Visitor<Integer> {
+    private int[] kinds = new int[256];
+    private int[] tokens = new int[256];
+    private int[] operandStart = new int[256];
+    private int nodes = 0;
+    private int[] operands = new int[1024];
+    private int operandCount = 0;
+    private TokenType[] tokenTypes = new TokenType[256];
+    private String[] lexemes = new String[256];
+    private int[] lines = new int[256];
+    private int tokenCount = 0;
+    // every occurrence of a name shares one String.
+    private final Map<String, String> interned = new HashMap<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+
+    FlatAst build(int root) {
+      return new FlatAst(Arrays.copyOf(kinds, nodes), Arrays.copyOf(tokens, nodes),
+          Arrays.copyOf(operandStart, nodes), Arrays.copyOf(operands, operandCount),
+          Arrays.copyOf(tokenTypes, tokenCount), Arrays.copyOf(lexemes, tokenCount),
+          Arrays.copyOf(lines, tokenCount), constants.toArray(), root);
+    }
+
+    private int add(int kind, Token token, int... values) {
+      if (nodes == kinds.length) {
+        kinds = Arrays.copyOf(kinds, nodes * 2);
+        tokens = Arrays.copyOf(tokens, nodes * 2);
+        operandStart = Arrays.copyOf(operandStart, nodes * 2);
+      }
+      kinds[nodes] = kind;
+      tokens[nodes] = token(token);
+      operandStart[nodes] = operandCount;
+      for (int value : values) {
+        operand(value);
+      }
+      return nodes++;
+    }
+
+    private void operand(int value) {
+      if (operandCount == operands.length) {
+        operands = Arrays.copyOf(operands, operandCount * 2);
+      }
+      operands[operandCount++] = value;
+    }
+
+    private int token(Token token) {
+      if (token == null) return -1;
+      if (tokenCount == lexemes.length) {
+        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount * 2);
+        lexemes = Arrays.copyOf(lexemes, tokenCount * 2);
+        lines = Arrays.copyOf(lines, tokenCount * 2);
+      }
+      String lexeme = interned.putIfAbsent(token.lexeme, token.lexeme);
+      tokenTypes[tokenCount] = token.type;
+      lexemes[tokenCount] = lexeme == null ? token.lexeme : lexeme;
+      lines[tokenCount] = token.line;
+      return tokenCount++;
+    }
+
+    // literals are few and shared, the same value is stored once.
+    private int constant(Object value) {
+      return constantIndex.computeIfAbsent(value, key -> {
+        constants.add(key);
+        return constants.size() - 1;
+      });
+    }
+
+    private int node(Expr expr) {
+      return expr == null ? -1 : expr.accept(this);
+    }
+
+    private int node(Statement statement) {
+      return statement == null ? -1 : statement.accept(this);
+    }
+
+    private int list(int[] elements) {
+      int start = operandCount;
+      operand(elements.length);
+      for (int element : elements) {
+        operand(element);
+      }
+      return start;
+    }
+
+    private int expressionList(List<Expr> list) {
+      if (list == null) return -1;
+      int[] elements = new int[list.size()];
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = node(list.get(i));
+      }
+      return list(elements);
+    }
+
+    private int statementList(List<? extends Statement> list) {
+      if (list == null) return -1;
+      int[] elements = new int[list.size()];
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = node(list.get(i));
+      }
+      return list(elements);
+    }
+
+    private int tokenList(List<Token> list) {
+      if (list == null) return -1;
+      int[] elements = new int[list.size()];
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = token(list.get(i));
+      }
+      return list(elements);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      return add(BINARY_EXPR, expr.operator, node(expr.left), node(expr.right));
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      return add(CALL_EXPR, expr.paren, node(expr.callee), expressionList(expr.arguments));
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      return add(GET_EXPR, expr.name, node(expr.object));
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      return add(SET_EXPR, expr.name, node(expr.object), node(expr.value));
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      return add(THIS_EXPR, expr.keyword);
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+      return add(SUPER_EXPR, expr.keyword, token(expr.method));
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      return add(GROUPING_EXPR, null, node(expr.expression));
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      return add(LITERAL_EXPR, null, constant(expr.value));
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      return add(UNARY_EXPR, expr.operator, node(expr.right));
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      return add(VARIABLE_EXPR, expr.name);
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      return add(ASSIGN_EXPR, expr.name, node(expr.value));
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      return add(LOGICAL_EXPR, expr.operator, node(expr.left), node(expr.right));
+    }
+
+    @Override
+    public Integer visitVariableBinaryExpr(Expr.VariableBinary expr) {
+      return add(VARIABLE_BINARY_EXPR, expr.name, token(expr.operator), node(expr.right));
+    }
+
+    @Override
+    public Integer visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+      return add(COMPOUND_ASSIGN_EXPR, expr.name, token(expr.operator), node(expr.value));
+    }
+
+    @Override
+    public Integer visitCompoundSetExpr(Expr.CompoundSet expr) {
+      return add(COMPOUND_SET_EXPR, expr.name, node(expr.object), token(expr.operator), node(expr.value));
+    }
+
+    @Override
+    public Integer visitExpressionStatement(Statement.Expression statement) {
+      return add(EXPRESSION_STATEMENT, null, node(statement.expression));
+    }
+
+    @Override
+    public Integer visitFunctionStatement(Statement.Function statement) {
+      return add(FUNCTION_STATEMENT, statement.name, tokenList(statement.params), statementList(statement.body));
+    }
+
+    @Override
+    public Integer visitPrintStatement(Statement.Print statement) {
+      return add(PRINT_STATEMENT, null, node(statement.expression));
+    }
+
+    @Override
+    public Integer visitVarStatement(Statement.Var statement) {
+      return add(VAR_STATEMENT, statement.name, node(statement.initializer));
+    }
+
+    @Override
+    public Integer visitBlockStatement(Statement.Block statement) {
+      return add(BLOCK_STATEMENT, null, statementList(statement.statements));
+    }
+
+    @Override
+    public Integer visitClassStatement(Statement.Class statement) {
+      return add(CLASS_STATEMENT, statement.name, node(statement.superclass), statementList(statement.methods));
+    }
+
+    @Override
+    public Integer visitIfStatement(Statement.If statement) {
+      return add(IF_STATEMENT, null, node(statement.condition), node(statement.thenBranch), node(statement.elseBranch));
+    }
+
+    @Override
+    public Integer visitWhileStatement(Statement.While statement) {
+      return add(WHILE_STATEMENT, null, node(statement.condition), node(statement.body));
+    }
+
+    @Override
+    public Integer visitParallelStatement(Statement.Parallel statement) {
+      return add(PARALLEL_STATEMENT, statement.keyword, token(statement.name), node(statement.start), node(statement.end), node(statement.body));
+    }
+
+    @Override
+    public Integer visitReturnStatement(Statement.Return statement) {
+      return add(RETURN_STATEMENT, statement.keyword, node(statement.value));
+    }
+
+    @Override
+    public Integer visitImportStatement(Statement.Import statement) {
+      return add(IMPORT_STATEMENT, statement.keyword, token(statement.path));
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package lox;
+
+import java.util.List;
+
+/**
+ * A function declared in a flat program, see FlatInterpreter. It is a
+ * LoxFunction so that classes and instances take it as a method.
+ */
+final class FlatFunction extends LoxFunction {
+  private static final long serialVersionUID = 1L;
+  final FlatAst ast;
+  // the Function node.
+  final int node;
+
+  FlatFunction(FlatAst ast, int node, Environment closure, boolean isInit) {
+    this(ast, node, closure, isInit, null);
+  }
+
+  private FlatFunction(FlatAst ast, int node, Environment closure, boolean isInit, LoxInstance receiver) {
+    super(closure, isInit, receiver);
+    this.ast = ast;
+    this.node = node;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    return result(((FlatInterpreter) interpreter).call(this, arguments));
+  }
+
+  @Override
+  public LoxFunction bind(LoxInstance loxInstance) {
+    return new FlatFunction(ast, node, closure, isInit, loxInstance);
+  }
+
+  @Override
+  public int arity() {
+    return ast.size(ast.operand(node, FlatAst.FUNCTION_PARAMS));
+  }
+
+  @Override
+  public String toString() {
+    return "<function " + ast.lexeme(node) + " >";
+  }
+}
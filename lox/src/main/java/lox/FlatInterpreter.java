@@ -0,0 +1,302 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a program from its flat encoding, see FlatAst, switching on the kind
+ * of each node instead of going through visitors. Running with --flat.
+ *
+ * It runs the one program given to interpret(), resolved by
+ * Resolver.resolve(FlatAst). Every block and call gets an environment of its
+ * own, calls always grow the stack, filling it is a runtime error, nothing is
+ * memoized, and a parallel statement runs its iterations in order on the
+ * calling thread, which is one of the orders it may run them in.
+ */
+class FlatInterpreter extends Interpreter {
+  FlatAst ast;
+  private int[] depths;
+  // the global cell of each node resolved to a global, looked up on first use.
+  private GlobalEnvironment.Cell[] cells;
+
+  FlatInterpreter(OutputSink out) {
+    super(out);
+  }
+
+  void interpret(FlatAst ast, int[] depths) {
+    this.ast = ast;
+    this.depths = depths;
+    this.cells = new GlobalEnvironment.Cell[ast.size()];
+    try {
+      executeAll(ast.root);
+    } catch (RunTimeError error) {
+      // everything printed before the error should show up before its message.
+      flush();
+      Lox.runTimeError(error);
+    }
+  }
+
+  /**
+   * run the body of function, returning what its return statement returned.
+   */
+  Object call(FlatFunction function, List<Object> arguments) {
+    Environment environment = newEnvironment(function.closure);
+    if (function.receiver != null) {
+      environment.define("this", function.receiver);
+    }
+    int params = ast.operand(function.node, FlatAst.FUNCTION_PARAMS);
+    for (int i = 0; i < arguments.size(); i++) {
+      environment.define(ast.lexemes[ast.element(params, i)], arguments.get(i));
+    }
+    try {
+      executeBlock(ast.operand(function.node, FlatAst.FUNCTION_BODY), environment);
+    } catch (Return returnValue) {
+      return returnValue.value;
+    }
+    return null;
+  }
+
+  private void executeAll(int list) {
+    for (int i = 0; i < ast.size(list); i++) {
+      execute(ast.element(list, i));
+    }
+  }
+
+  private void executeBlock(int list, Environment environment) {
+    Environment previous = this.environment;
+    try {
+      this.environment = environment;
+      executeAll(list);
+    } finally {
+      this.environment = previous;
+    }
+  }
+
+  void execute(int node) {
+    switch (ast.kinds[node]) {
+      case FlatAst.EXPRESSION_STATEMENT:
+        evaluate(ast.operand(node, FlatAst.EXPRESSION_EXPRESSION));
+        break;
+      case FlatAst.FUNCTION_STATEMENT:
+        environment.define(ast.lexeme(node), newFunction(node, environment, false));
+        break;
+      case FlatAst.PRINT_STATEMENT:
+        print(evaluate(ast.operand(node, FlatAst.PRINT_EXPRESSION)));
+        break;
+      case FlatAst.VAR_STATEMENT: {
+        int initializer = ast.operand(node, FlatAst.VAR_INITIALIZER);
+        Object value = initializer < 0 ? null : evaluate(initializer);
+        environment.define(ast.lexeme(node), value);
+        break;
+      }
+      case FlatAst.BLOCK_STATEMENT:
+        executeBlock(ast.operand(node, FlatAst.BLOCK_STATEMENTS), newEnvironment(environment));
+        break;
+      case FlatAst.CLASS_STATEMENT:
+        executeClass(node);
+        break;
+      case FlatAst.IF_STATEMENT:
+        if (isTruthy(evaluate(ast.operand(node, FlatAst.IF_CONDITION)))) {
+          execute(ast.operand(node, FlatAst.IF_THEN_BRANCH));
+        } else if (ast.operand(node, FlatAst.IF_ELSE_BRANCH) >= 0) {
+          execute(ast.operand(node, FlatAst.IF_ELSE_BRANCH));
+        }
+        break;
+      case FlatAst.WHILE_STATEMENT:
+        while (isTruthy(evaluate(ast.operand(node, FlatAst.WHILE_CONDITION)))) {
+          execute(ast.operand(node, FlatAst.WHILE_BODY));
+        }
+        break;
+      case FlatAst.PARALLEL_STATEMENT:
+        executeParallel(node);
+        break;
+      case FlatAst.RETURN_STATEMENT: {
+        int value = ast.operand(node, FlatAst.RETURN_VALUE);
+        throw new Return(value < 0 ? null : evaluate(value));
+      }
+      default:
+        // imports are rejected by the resolver.
+        throw new IllegalStateException("Can't execute node kind " + ast.kinds[node]);
+    }
+  }
+
+  private void executeClass(int node) {
+    Token name = ast.token(node);
+    int superclassNode = ast.operand(node, FlatAst.CLASS_SUPERCLASS);
+    Object superclass = null;
+    if (superclassNode >= 0) {
+      superclass = evaluate(superclassNode);
+      if (!(superclass instanceof LoxClass)) {
+        throw new RunTimeError(ast.token(superclassNode), "Superclass must be a class");
+      }
+    }
+    environment.define(name.lexeme, null);
+    if (superclass != null) {
+      environment = newEnvironment(environment);
+      environment.define("super", superclass);
+    }
+    Map<String, LoxFunction> methods = new HashMap<>();
+    int declarations = ast.operand(node, FlatAst.CLASS_METHODS);
+    for (int i = 0; i < ast.size(declarations); i++) {
+      int method = ast.element(declarations, i);
+      String methodName = ast.lexeme(method);
+      methods.put(methodName, newFunction(method, environment, methodName.equals("init")));
+    }
+    LoxClass loxClass = new LoxClass(name.lexeme, (LoxClass) superclass, methods);
+    if (superclass != null) {
+      environment = environment.enclosing;
+    }
+    environment.assign(name, loxClass);
+  }
+
+  private void executeParallel(int node) {
+    Token keyword = ast.token(node);
+    int start = bound(keyword, evaluate(ast.operand(node, FlatAst.PARALLEL_START)));
+    int end = bound(keyword, evaluate(ast.operand(node, FlatAst.PARALLEL_END)));
+    String name = ast.lexemes[ast.operand(node, FlatAst.PARALLEL_NAME)];
+    int body = ast.operand(node, FlatAst.PARALLEL_BODY);
+    Environment previous = environment;
+    try {
+      for (int i = start; i < end; i++) {
+        environment = newEnvironment(previous);
+        environment.define(name, LoxNumber.of(i));
+        execute(body);
+      }
+    } finally {
+      environment = previous;
+    }
+  }
+
+  Object evaluate(int node) {
+    switch (ast.kinds[node]) {
+      case FlatAst.BINARY_EXPR: {
+        Object left = evaluate(ast.operand(node, FlatAst.BINARY_LEFT));
+        Object right = evaluate(ast.operand(node, FlatAst.BINARY_RIGHT));
+        return binary(ast.token(node), left, right);
+      }
+      case FlatAst.CALL_EXPR:
+        return evaluateCall(node);
+      case FlatAst.GET_EXPR: {
+        Object object = evaluate(ast.operand(node, FlatAst.GET_OBJECT));
+        return property(ast.token(node), object);
+      }
+      case FlatAst.SET_EXPR: {
+        Token name = ast.token(node);
+        LoxInstance instance = fieldsOf(evaluate(ast.operand(node, FlatAst.SET_OBJECT)), name);
+        Object value = evaluate(ast.operand(node, FlatAst.SET_VALUE));
+        instance.set(name, value);
+        return value;
+      }
+      case FlatAst.THIS_EXPR:
+        return read(node);
+      case FlatAst.SUPER_EXPR: {
+        int distance = depths[node];
+        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
+        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        Token method = ast.tokenAt(ast.operand(node, FlatAst.SUPER_METHOD));
+        LoxFunction function = superclass.findMethod(method.lexeme);
+        if (function == null) {
+          throw new RunTimeError(method, "Undefined property '" + method.lexeme + "'.");
+        }
+        return bind(function, object);
+      }
+      case FlatAst.GROUPING_EXPR:
+        return evaluate(ast.operand(node, FlatAst.GROUPING_EXPRESSION));
+      case FlatAst.LITERAL_EXPR:
+        return ast.constant(ast.operand(node, FlatAst.LITERAL_VALUE));
+      case FlatAst.UNARY_EXPR:
+        return unary(ast.token(node), evaluate(ast.operand(node, FlatAst.UNARY_RIGHT)));
+      case FlatAst.VARIABLE_EXPR:
+        return read(node);
+      case FlatAst.ASSIGN_EXPR:
+        return write(node, evaluate(ast.operand(node, FlatAst.ASSIGN_VALUE)));
+      case FlatAst.LOGICAL_EXPR: {
+        Object left = evaluate(ast.operand(node, FlatAst.LOGICAL_LEFT));
+        if (ast.tokenTypes[ast.tokens[node]] == TokenType.OR ? isTruthy(left) : !isTruthy(left)) {
+          return left;
+        }
+        return evaluate(ast.operand(node, FlatAst.LOGICAL_RIGHT));
+      }
+      case FlatAst.VARIABLE_BINARY_EXPR: {
+        Object left = read(node);
+        Token operator = ast.tokenAt(ast.operand(node, FlatAst.VARIABLE_BINARY_OPERATOR));
+        return binary(operator, left, evaluate(ast.operand(node, FlatAst.VARIABLE_BINARY_RIGHT)));
+      }
+      case FlatAst.COMPOUND_ASSIGN_EXPR: {
+        Object current = read(node);
+        Token operator = ast.tokenAt(ast.operand(node, FlatAst.COMPOUND_ASSIGN_OPERATOR));
+        return write(node, binary(operator, current, evaluate(ast.operand(node, FlatAst.COMPOUND_ASSIGN_VALUE))));
+      }
+      case FlatAst.COMPOUND_SET_EXPR: {
+        Token name = ast.token(node);
+        LoxInstance instance = fieldsOf(evaluate(ast.operand(node, FlatAst.COMPOUND_SET_OBJECT)), name);
+        Token operator = ast.tokenAt(ast.operand(node, FlatAst.COMPOUND_SET_OPERATOR));
+        Object value = binary(operator, instance.get(name, this), evaluate(ast.operand(node, FlatAst.COMPOUND_SET_VALUE)));
+        instance.set(name, value);
+        return value;
+      }
+      default:
+        throw new IllegalStateException("Can't evaluate node kind " + ast.kinds[node]);
+    }
+  }
+
+  private Object evaluateCall(int node) {
+    Token paren = ast.token(node);
+    Object callee = evaluate(ast.operand(node, FlatAst.CALL_CALLEE));
+    int list = ast.operand(node, FlatAst.CALL_ARGUMENTS);
+    List<Object> arguments = new ArrayList<>(ast.size(list));
+    for (int i = 0; i < ast.size(list); i++) {
+      arguments.add(evaluate(ast.element(list, i)));
+    }
+    LoxCallable function = callable(paren, callee, arguments.size());
+    try {
+      return function.call(this, arguments);
+    } catch (RunTimeError error) {
+      // natives don't know their call site
+      if (error.token != null) throw error;
+      throw new RunTimeError(paren, error.getMessage());
+    } catch (StackOverflowError error) {
+      // calls always grow the stack. The deepest call with room left to make
+      // the error reports it, the ones outside it pass it on.
+      throw new RunTimeError(paren, "Stack overflow.");
+    }
+  }
+
+  /**
+   * a function declared by node, see Interpreter.newFunction().
+   */
+  LoxFunction newFunction(int node, Environment closure, boolean isInit) {
+    return new FlatFunction(ast, node, closure, isInit);
+  }
+
+  /**
+   * the value of the variable, or this, the node names.
+   */
+  private Object read(int node) {
+    int distance = depths[node];
+    if (distance >= 0) {
+      return environment.getAt(distance, ast.lexeme(node));
+    }
+    return cell(node).get(ast.token(node));
+  }
+
+  private Object write(int node, Object value) {
+    int distance = depths[node];
+    if (distance >= 0) {
+      environment.assignAt(distance, ast.token(node), value);
+    } else {
+      cell(node).assign(ast.token(node), value);
+    }
+    return value;
+  }
+
+  private GlobalEnvironment.Cell cell(int node) {
+    GlobalEnvironment.Cell cell = cells[node];
+    if (cell == null) {
+      cell = cells[node] = global.cell(ast.lexeme(node));
+    }
+    return cell;
+  }
+}
@@ -0,0 +1,80 @@
+package lox;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The outermost environment, where globals and natives live.
+ *
+ * Each global name gets one Cell, created the first time the name is defined or
+ * looked up and never replaced. A Variable or Assign node resolved to a global
+ * keeps its cell after the first lookup, so later reads and writes go straight
+ * to the value instead of hashing the name.
+ *
+ * A cell stays undefined until the global is defined, reading or assigning it
+ * before that is still an error.
+ */
+class GlobalEnvironment extends Environment {
+  private static final long serialVersionUID = 1L;
+
+  static final class Cell implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // nodes may be shared between interpreters, a cached cell is only
+    // valid for the globals it was taken from.
+    final GlobalEnvironment owner;
+    // see Interpreter for the memory model.
+    private volatile Object value;
+    private volatile boolean defined = false;
+
+    private Cell(GlobalEnvironment owner) {
+      this.owner = owner;
+    }
+
+    Object get(Token name) {
+      if (!defined) {
+        throw new RunTimeError(name, "Undefined Variable: '" + name.lexeme + "' .");
+      }
+      return value;
+    }
+
+    void assign(Token name, Object value) {
+      if (!defined) {
+        throw new RunTimeError(name, "Undefined variable '" + name.lexeme + "'.");
+      }
+      this.value = value;
+    }
+  }
+
+  private final Map<String, Cell> cells = new ConcurrentHashMap<>();
+
+  GlobalEnvironment() {
+    // globals live in cells, not in the table of a plain Environment.
+    super(null, null);
+  }
+
+  Cell cell(String name) {
+    Cell cell = cells.get(name);
+    if (cell == null) {
+      cell = cells.computeIfAbsent(name, key -> new Cell(this));
+    }
+    return cell;
+  }
+
+  @Override
+  public void define(String name, Object value) {
+    Cell cell = cell(name);
+    cell.value = value;
+    cell.defined = true;
+  }
+
+  @Override
+  public Object get(Token name) {
+    return cell(name.lexeme).get(name);
+  }
+
+  @Override
+  public void assign(Token name, Object value) {
+    cell(name.lexeme).assign(name, value);
+  }
+}
@@ -1,46 +1,252 @@
 package lox;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Executes resolved statements.
+ *
+ * An Interpreter runs on one thread at a time, its current environment is a
+ * field. What a loaded program shares, the globals and the resolver's tables,
+ * is safe to use from many threads, and call() gives every thread calling into
+ * the program its own Interpreter over it. The memory model:
+ *
+ *   globals          volatile, a write is seen by every later read on any thread
+ *   instances        published safely by assigning them to a global, returning
+ *                    them from call() or finishing a parallel statement; after
+ *                    that, fields written by one thread at a time
+ *   closed over      the same as fields
+ *   variables
+ *
+ * Nothing is atomic beyond a single read or write, two threads running
+ * `count = count + 1` can lose an update. Loading code, interpret(), is
+ * meant to happen on one thread before others call in.
+ */
 public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void>{
 
-  private final Environment global = new Environment();
-  private Environment environment = global;
-  private final Map<Expr, Integer> locals = new HashMap<>();
+  // natives are stateless, every interpreter shares the same ones.
+  private static final Map<String, NativeFunction> NATIVES = new LinkedHashMap<>();
 
-  public Interpreter() {
-    global.define("clock", new LoxCallable() {
+  static {
+    defineNative(new NativeFunction("clock", 0) {
       @Override
       public Object call(Interpreter interpreter, List<Object> arguments) {
-        return (double) System.currentTimeMillis() / 1000.0;
+        return LoxNumber.of((double) System.currentTimeMillis() / 1000.0);
       }
-
+    });
+    defineNative(new NativeFunction("list", 0) {
       @Override
-      public int arity() {
-        return 0;
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        return interpreter.newList();
       }
-
+    });
+    defineNative(new NativeFunction("array", 1) {
       @Override
-      public String toString() {
-        return "native function";
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object length = arguments.get(0);
+        if (!(length instanceof Long) || (long) length < 0 || (long) length > Integer.MAX_VALUE) {
+          throw new RunTimeError("Array length must be a non-negative integer.");
+        }
+        return interpreter.newArray((int) (long) length);
+      }
+    });
+    defineNative(new NativeFunction("map", 0) {
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        return interpreter.newMap();
+      }
+    });
+    defineNative(new NativeFunction("allocations", 0) {
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        AllocationProfiler profiler = interpreter.profiler();
+        if (profiler != null) {
+          // what the program printed so far comes first.
+          interpreter.flush();
+          profiler.report();
+        }
+        return null;
       }
     });
   }
 
+  private static void defineNative(NativeFunction function) {
+    NATIVES.put(function.name, function);
+  }
+
+  static NativeFunction findNative(String name) {
+    return NATIVES.get(name);
+  }
+
+  final GlobalEnvironment global;
+  // the subclasses running the tree their own way swap it too.
+  Environment environment;
+  private final Map<Expr, Integer> locals;
+  // blocks and functions declaring nothing, they run without their own environment.
+  private final Set<Statement> scopeless;
+  // returns of a call in tail position, the caller's frame is done with by then.
+  private final Set<Statement> tailCalls;
+  // functions never closing over their environment, a self tail call refills it.
+  private final Set<Statement> reusableFrames;
+  // bodies parsed on first call resolved into these tables, and whether
+  // that went without errors, see LazyBody.
+  private final Map<LazyBody, Boolean> lazyBodies;
+  // paths of the modules run so far, see ModuleLoader.
+  private final Set<String> imported;
+  // pure functions with their results cached, empty unless asked for.
+  private final Map<Statement, Memo> memos;
+  private final OutputSink out;
+  // interns the strings `+` builds, null unless asked for, see StringTable.
+  private StringTable strings;
+
+  public Interpreter() {
+    this(OutputSink.stdout());
+  }
+
+  public Interpreter(OutputSink out) {
+    this(out, new GlobalEnvironment(), new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet(),
+        ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet());
+  }
+
+  /**
+   * continue from the state captured by snapshot().
+   */
+  Interpreter(OutputSink out, Snapshot snapshot) {
+    this(out, snapshot.global, snapshot.locals, snapshot.scopeless, snapshot.tailCalls, snapshot.reusableFrames,
+        snapshot.imported);
+  }
+
+  private Interpreter(OutputSink out, GlobalEnvironment global, Map<Expr, Integer> locals, Set<Statement> scopeless,
+                      Set<Statement> tailCalls, Set<Statement> reusableFrames, Set<String> imported) {
+    this.out = out;
+    this.global = global;
+    this.environment = global;
+    this.locals = locals;
+    this.scopeless = scopeless;
+    this.tailCalls = tailCalls;
+    this.reusableFrames = reusableFrames;
+    this.imported = imported;
+    // resolving a body again is harmless, a restored interpreter starts over.
+    this.lazyBodies = new ConcurrentHashMap<>();
+    this.memos = new ConcurrentHashMap<>();
+    for (Map.Entry<String, NativeFunction> entry : NATIVES.entrySet()) {
+      global.define(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * a child sharing the globals and resolved program, with its own output and
+   * environment, to run the iterations of a parallel statement on another thread.
+   */
+  protected Interpreter(Interpreter parent, OutputSink out) {
+    this.out = out;
+    this.global = parent.global;
+    this.environment = parent.global;
+    this.locals = parent.locals;
+    this.scopeless = parent.scopeless;
+    this.tailCalls = parent.tailCalls;
+    this.reusableFrames = parent.reusableFrames;
+    this.imported = parent.imported;
+    this.lazyBodies = parent.lazyBodies;
+    this.memos = parent.memos;
+    this.strings = parent.strings;
+  }
+
+  protected Interpreter fork(OutputSink out) {
+    return new Interpreter(this, out);
+  }
+
+  /**
+   * append what a child printed, all of it at once.
+   */
+  void emit(String text) {
+    synchronized (out) {
+      out.write(text);
+    }
+  }
+
   public void interpret(List<Statement> statements) {
     try {
       for(Statement statement : statements) {
         execute(statement);
       }
     } catch (RunTimeError error) {
+      // everything printed before the error should show up before its message.
+      flush();
       Lox.runTimeError(error);
     }
   }
 
-  private void execute(Statement statement) {
+  Snapshot snapshot() {
+    return new Snapshot(global, locals, scopeless, tailCalls, reusableFrames, imported);
+  }
+
+  public void flush() {
+    synchronized (out) {
+      out.flush();
+    }
+  }
+
+  /**
+   * what one thread calling into this interpreter works with.
+   */
+  private final class Context {
+    final StringWriter printed = new StringWriter();
+    final OutputSink out = new OutputSink(printed);
+    final Interpreter interpreter = fork(out);
+  }
+
+  private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+  /**
+   * Call the global function or class name from any thread, while other
+   * threads do the same.
+   *
+   * Arguments and the result are Lox values: null, Boolean, Double, String or
+   * something the program created; other numbers are converted to Double. What
+   * the call prints is appended to the output in one piece when it returns.
+   *
+   * @throws RunTimeError when name is not callable or the call fails.
+   */
+  public Object call(String name, Object... arguments) {
+    Object callee = global.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+    if (!(callee instanceof LoxCallable)) {
+      throw new RunTimeError("you can only call functions and classes.");
+    }
+    LoxCallable function = (LoxCallable) callee;
+    if (arguments.length != function.arity()) {
+      throw new RunTimeError("Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+    }
+    Object[] values = arguments.clone();
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] instanceof Number) {
+        values[i] = LoxNumber.of(((Number) values[i]).doubleValue());
+      }
+    }
+    Context context = contexts.get();
+    try {
+      Object result = function.call(context.interpreter, Arrays.asList(values));
+      if (result instanceof Long) return (double) (long) result;
+      return result instanceof LoxString ? result.toString() : result;
+    } finally {
+      context.out.flush();
+      StringBuffer printed = context.printed.getBuffer();
+      if (printed.length() > 0) {
+        emit(printed.toString());
+        printed.setLength(0);
+      }
+    }
+  }
+
+  protected void execute(Statement statement) {
     statement.accept(this);
   }
 
@@ -48,8 +254,62 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     locals.put(expr, depth);
   }
 
-  private String stringify(Object object) {
+  void resolveScopeless(Statement scope) {
+    scopeless.add(scope);
+  }
+
+  void resolveTailCall(Statement.Return statement) {
+    tailCalls.add(statement);
+  }
+
+  void resolveReusableFrame(Statement.Function function) {
+    reusableFrames.add(function);
+  }
+
+  boolean isTailCall(Statement.Return statement) {
+    return statement.value instanceof Expr.Call && tailCalls.contains(statement);
+  }
+
+  boolean reusesFrame(Statement.Function function) {
+    return reusableFrames.contains(function);
+  }
+
+  /**
+   * the bodies resolved into this interpreter's tables, with whether that
+   * went without errors, shared with its children.
+   */
+  Map<LazyBody, Boolean> lazyBodies() {
+    return lazyBodies;
+  }
+
+  /**
+   * intern the short strings `+` builds through strings, the table the program
+   * was scanned with, so comparing them to literals is an identity check.
+   * Running with --intern.
+   */
+  void internStrings(StringTable strings) {
+    this.strings = strings;
+  }
+
+  /**
+   * cache the results of function, which has to be pure, see PurityAnalyzer.
+   */
+  void memoize(Statement.Function function, int capacity) {
+    memos.put(function, new Memo(function.name.lexeme, capacity));
+  }
+
+  Memo memo(Statement.Function function) {
+    return memos.isEmpty() ? null : memos.get(function);
+  }
+
+  Collection<Memo> memos() {
+    return memos.values();
+  }
+
+  static String stringify(Object object) {
     if (object == null) return "nil";
+    // printed like the double it stands for, which takes exponents from 1e7 on.
+    if (object instanceof Long) object = (double) (long) object;
     if (object instanceof Double) {
       String text = object.toString();
       if (text.endsWith(".0")) {
@@ -60,40 +320,66 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     return object.toString();
   }
 
+  /**
+   * write the object straight into the output buffer, without building a String first.
+   */
+  private void stringify(Object object, OutputSink out) {
+    if (object == null) {
+      out.write("nil");
+    } else if (object instanceof Long) {
+      out.write((double) (long) object);
+    } else if (object instanceof Double) {
+      out.write((double) object);
+    } else if (object instanceof LoxString) {
+      ((LoxString) object).writeTo(out);
+    } else {
+      out.write(object.toString());
+    }
+  }
+
   @Override
   public Object visitBinaryExpr(Expr.Binary expr) {
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
-    switch (expr.operator.type) {
+    return binary(expr.operator, left, right);
+  }
+
+  /**
+   * apply a binary operator to operands already evaluated, shared by Binary and
+   * the superinstructions built from it.
+   */
+  Object binary(Token operator, Object left, Object right) {
+    switch (operator.type) {
       case MINUS:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left - (double) right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.subtract(left, right);
       case SLASH:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left / (double) right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.divide(left, right);
       case STAR:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left * (double) right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.multiply(left, right);
       case PLUS:
-        if (left instanceof Double && right instanceof Double) {
-          return (double) left + (double)right;
+        if (LoxNumber.isNumber(left) && LoxNumber.isNumber(right)) {
+          return LoxNumber.add(left, right);
         }
-        if (left instanceof String && right instanceof String) {
-          return left + (String)right;
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+          CharSequence result = concat((CharSequence) left, (CharSequence) right);
+          return strings == null ? result : strings.internRuntime(result);
         }
-        throw new RunTimeError(expr.operator, "operands must be two numbers or two strings");
+        throw new RunTimeError(operator, "operands must be two numbers or two strings");
       case GREATER:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left > (double)right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.less(right, left);
       case GREATER_EQUAL:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left >= (double) right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.lessEqual(right, left);
       case LESS:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left < (double) right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.less(left, right);
       case LESS_EQUAL:
-        checkNumberOperand(expr.operator, left, right);
-        return (double)left <= (double)right;
+        checkNumberOperand(operator, left, right);
+        return LoxNumber.lessEqual(left, right);
       case BANG_EQUAL:
         return !isEqual(left, right);
       case EQUAL_EQUAL:
@@ -113,39 +399,76 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     for (Expr argument : expr.arguments) {
       arguments.add(evaluate(argument));
     }
+    return callAt(expr, callable(expr, callee, arguments.size()), arguments);
+  }
+
+  /**
+   * check that callee can be called with that many arguments.
+   */
+  static LoxCallable callable(Expr.Call expr, Object callee, int arguments) {
+    return callable(expr.paren, callee, arguments);
+  }
+
+  static LoxCallable callable(Token paren, Object callee, int arguments) {
     if (!(callee instanceof LoxCallable)) {
-      throw new RunTimeError(expr.paren, "you can only call functions and classes.");
+      throw new RunTimeError(paren, "you can only call functions and classes.");
     }
     LoxCallable function = (LoxCallable) callee;
-    if (arguments.size() != function.arity()) {
-      throw new RunTimeError(expr.paren, "Expected " +
+    if (arguments != function.arity()) {
+      throw new RunTimeError(paren, "Expected " +
           function.arity() +
           " arguments but got " +
-          arguments.size() + ".");
+          arguments + ".");
     }
+    return function;
+  }
 
-      return function.call(this, arguments);
+  Object callAt(Expr.Call expr, LoxCallable function, List<Object> arguments) {
+    try {
+      return invoke(expr, function, arguments);
+    } catch (RunTimeError error) {
+      // natives don't know their call site
+      if (error.token != null) throw error;
+      throw new RunTimeError(expr.paren, error.getMessage());
+    }
+  }
+
+  protected Object invoke(Expr.Call expr, LoxCallable function, List<Object> arguments) {
+    return function.call(this, arguments);
   }
 
   @Override
   public Object visitGetExpr(Expr.Get expr) {
-    Object object = evaluate(expr.object);
+    return property(expr, evaluate(expr.object));
+  }
+
+  Object property(Expr.Get expr, Object object) {
+    return property(expr.name, object);
+  }
+
+  Object property(Token name, Object object) {
     if (object instanceof LoxInstance) {
-      return ((LoxInstance) object).get(expr.name);
+      return ((LoxInstance) object).get(name, this);
     }
-    throw new RunTimeError(expr.name, "only instances have properties");
+    if (object instanceof NativeObject) {
+      return ((NativeObject) object).get(name);
+    }
+    throw new RunTimeError(name, "only instances have properties");
   }
 
   @Override
   public Object visitSetExpr(Expr.Set expr) {
-    Object object = evaluate(expr.object);
+    LoxInstance instance = fieldsOf(evaluate(expr.object), expr.name);
+    Object value = evaluate(expr.value);
+    instance.set(expr.name, value);
+    return value;
+  }
+
+  static LoxInstance fieldsOf(Object object, Token name) {
     if (!(object instanceof LoxInstance)) {
-      throw new RunTimeError(expr.name, "only instances have fields.");
-    } else {
-      Object value = evaluate(expr.value);
-      ((LoxInstance)object).set(expr.name, value);
-      return value;
+      throw new RunTimeError(name, "only instances have fields.");
     }
+    return (LoxInstance) object;
   }
 
   @Override
@@ -162,16 +485,16 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     if (method == null) {
       throw new RunTimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
     }
-    return method.bind(object);
+    return bind(method, object);
   }
 
   private void checkNumberOperand(Token operator, Object leftOperand, Object rightOperand) {
-    if (leftOperand instanceof Double && rightOperand instanceof Double) return;
+    if (LoxNumber.isNumber(leftOperand) && LoxNumber.isNumber(rightOperand)) return;
     throw new RunTimeError(operator, "operands must be numbers");
   }
 
   private void checkNumberOperand(Token operator, Object operand) {
-    if (operand instanceof Double) return;
+    if (LoxNumber.isNumber(operand)) return;
     throw new RunTimeError(operator, "operand must be a number");
   }
 
@@ -188,11 +511,14 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
 
   @Override
   public Object visitUnaryExpr(Expr.Unary expr) {
-    Object right = evaluate(expr.right);
-    switch (expr.operator.type) {
+    return unary(expr.operator, evaluate(expr.right));
+  }
+
+  Object unary(Token operator, Object right) {
+    switch (operator.type) {
       case MINUS:
-        checkNumberOperand(expr.operator, right);
-        return -(double)right;
+        checkNumberOperand(operator, right);
+        return LoxNumber.negate(right);
       case BANG:
         return !isTruthy(right);
       default:
@@ -203,10 +529,19 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
 
   @Override
   public Object visitVariableExpr(Expr.Variable expr) {
-    return lookUpVariable(expr.name, expr);
+    GlobalEnvironment.Cell cell = expr.cell;
+    if (cell == null || cell.owner != global) {
+      Integer distance = locals.get(expr);
+      if (distance != null) {
+        return environment.getAt(distance, expr.name.lexeme);
+      }
+      // resolved to a global, remember its cell for the next time.
+      cell = expr.cell = global.cell(expr.name.lexeme);
+    }
+    return cell.get(expr.name);
   }
 
-  private Object lookUpVariable(Token name, Expr expr) {
+  Object lookUpVariable(Token name, Expr expr) {
     Integer distance = locals.get(expr);
     if (distance != null) {
       return environment.getAt(distance, name.lexeme);
@@ -215,15 +550,73 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     }
   }
 
-  @Override
-  public Object visitAssignExpr(Expr.Assign expr) {
-    Object value = evaluate(expr.value);
+  void assignVariable(Token name, Expr expr, Object value) {
     Integer distance = locals.get(expr);
     if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+      environment.assignAt(distance, name, value);
     } else {
-      global.assign(expr.name, value);
+      global.assign(name, value);
+    }
+  }
+
+  @Override
+  public Object visitAssignExpr(Expr.Assign expr) {
+    return assign(expr, evaluate(expr.value));
+  }
+
+  Object assign(Expr.Assign expr, Object value) {
+    GlobalEnvironment.Cell cell = expr.cell;
+    if (cell == null || cell.owner != global) {
+      Integer distance = locals.get(expr);
+      if (distance != null) {
+        environment.assignAt(distance, expr.name, value);
+        return value;
+      }
+      cell = expr.cell = global.cell(expr.name.lexeme);
+    }
+    cell.assign(expr.name, value);
+    return value;
+  }
+
+  @Override
+  public Object visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    GlobalEnvironment.Cell cell = expr.cell;
+    if (cell == null || cell.owner != global) {
+      Integer distance = locals.get(expr);
+      if (distance != null) {
+        Object left = environment.getAt(distance, expr.name.lexeme);
+        return binary(expr.operator, left, evaluate(expr.right));
+      }
+      cell = expr.cell = global.cell(expr.name.lexeme);
     }
+    Object left = cell.get(expr.name);
+    return binary(expr.operator, left, evaluate(expr.right));
+  }
+
+  @Override
+  public Object visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    GlobalEnvironment.Cell cell = expr.cell;
+    if (cell == null || cell.owner != global) {
+      Integer distance = locals.get(expr);
+      if (distance != null) {
+        Object current = environment.getAt(distance, expr.name.lexeme);
+        Object value = binary(expr.operator, current, evaluate(expr.value));
+        environment.assignAt(distance, expr.name, value);
+        return value;
+      }
+      cell = expr.cell = global.cell(expr.name.lexeme);
+    }
+    Object current = cell.get(expr.name);
+    Object value = binary(expr.operator, current, evaluate(expr.value));
+    cell.assign(expr.name, value);
+    return value;
+  }
+
+  @Override
+  public Object visitCompoundSetExpr(Expr.CompoundSet expr) {
+    LoxInstance instance = fieldsOf(evaluate(expr.object), expr.name);
+    Object value = binary(expr.operator, instance.get(expr.name, this), evaluate(expr.value));
+    instance.set(expr.name, value);
     return value;
   }
 
@@ -250,35 +643,56 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
 
   @Override
   public Void visitFunctionStatement(Statement.Function statement) {
-    LoxFunction function = new LoxFunction(statement, environment, false);
-    environment.define(statement.name.lexeme, function);
+    LoxFunction function = newFunction(statement, environment, false, scopeless.contains(statement));
+    define(statement.name, function);
     return null;
   }
 
   @Override
   public Void visitPrintStatement(Statement.Print statement) {
-    Object value = evaluate(statement.expression);
-    System.out.println(stringify(value));
+    print(evaluate(statement.expression));
     return null;
   }
 
+  void print(Object value) {
+    // threads calling in only write here through emit(), but may do so any time.
+    synchronized (out) {
+      stringify(value, out);
+      out.newLine();
+    }
+  }
+
   @Override
   public Void visitVarStatement(Statement.Var statement) {
     Object value = null;
     if (statement.initializer != null) {
       value = evaluate(statement.initializer);
     }
-    environment.define(statement.name.lexeme, value);
+    define(statement.name, value);
     return null;
   }
 
+  protected void define(Token name, Object value) {
+    environment.define(name.lexeme, value);
+  }
+
   @Override
   public Void visitBlockStatement(Statement.Block statement) {
+    if (isScopeless(statement)) {
+      for (Statement inner : statement.statements) {
+        execute(inner);
+      }
+      return null;
+    }
     // create a new environment for the block scope
-    executeBlock(statement.statements, new Environment(environment));
+    executeBlock(statement.statements, newEnvironment(environment));
     return null;
   }
 
+  boolean isScopeless(Statement statement) {
+    return scopeless.contains(statement);
+  }
+
   @Override
   public Void visitClassStatement(Statement.Class statement) {
     Object superclass = null;
@@ -290,12 +704,12 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     }
     environment.define(statement.name.lexeme, null);
     if (statement.superclass != null) {
-      environment = new Environment(environment);
+      environment = newEnvironment(environment);
       environment.define("super", superclass);
     }
     Map<String, LoxFunction> methods = new HashMap<>();
     for (Statement.Function method : statement.methods) {
-      LoxFunction loxFunction = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
+      LoxFunction loxFunction = newFunction(method, environment, method.name.lexeme.equals("init"), false);
       methods.put(method.name.lexeme, loxFunction);
     }
     LoxClass loxClass = new LoxClass(statement.name.lexeme, (LoxClass) superclass, methods);
@@ -324,8 +738,60 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     return null;
   }
 
+  @Override
+  public Void visitImportStatement(Statement.Import statement) {
+    Module module = statement.module;
+    // a module runs once, where the program first imports it, at the top level.
+    if (imported.add(module.path)) {
+      // the resolver has reported the errors, a module with any doesn't run.
+      if (!new Resolver(this).resolveModule(module.statements)) {
+        throw new RunTimeError(statement.keyword, "Can't import a module with errors.");
+      }
+      for (Statement moduleStatement : module.statements) {
+        execute(moduleStatement);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitParallelStatement(Statement.Parallel statement) {
+    Object start = evaluate(statement.start);
+    parallel(statement, start, evaluate(statement.end));
+    return null;
+  }
+
+  void parallel(Statement.Parallel statement, Object startValue, Object endValue) {
+    int start = bound(statement.keyword, startValue);
+    int end = bound(statement.keyword, endValue);
+    if (start < end) {
+      ParallelLoop.run(this, statement, environment, start, end);
+    }
+  }
+
+  static int bound(Token keyword, Object value) {
+    if (!(value instanceof Long) || Math.abs((long) value) > Integer.MAX_VALUE) {
+      throw new RunTimeError(keyword, "parallel bounds must be integers.");
+    }
+    return (int) (long) value;
+  }
+
   @Override
   public Void visitReturnStatement(Statement.Return statement) {
+    if (isTailCall(statement)) {
+      Expr.Call call = (Expr.Call) statement.value;
+      Object callee = evaluate(call.callee);
+      List<Object> arguments = new ArrayList<>();
+      for (Expr argument : call.arguments) {
+        arguments.add(evaluate(argument));
+      }
+      LoxCallable function = callable(call, callee, arguments.size());
+      if (function instanceof LoxFunction) {
+        // leave the call to LoxFunction.call, once this one's Java frames are gone
+        throw new Return((LoxFunction) function, arguments);
+      }
+      throw new Return(callAt(call, function, arguments));
+    }
     Object value = null;
     if (statement.value != null) value = evaluate(statement.value);
     throw new Return(value);
@@ -345,12 +811,56 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
     }
   }
 
+  /**
+   * the environment of a block, a call or a class's methods. This method and
+   * the ones below make the objects a program allocates, overridden by the
+   * subclasses counting them, see ProfilingInterpreter.
+   */
+  Environment newEnvironment(Environment enclosing) {
+    return new Environment(enclosing);
+  }
+
+  LoxInstance newInstance(LoxClass loxClass) {
+    return new LoxInstance(loxClass);
+  }
+
+  LoxFunction bind(LoxFunction method, LoxInstance receiver) {
+    return method.bind(receiver);
+  }
+
+  LoxFunction newFunction(Statement.Function declaration, Environment closure, boolean isInit, boolean scopeless) {
+    return new LoxFunction(declaration, closure, isInit, scopeless);
+  }
+
+  CharSequence concat(CharSequence left, CharSequence right) {
+    return LoxString.concat(left, right);
+  }
+
+  LoxList newList() {
+    return new LoxList();
+  }
+
+  LoxMap newMap() {
+    return new LoxMap();
+  }
+
+  LoxArray newArray(int length) {
+    return new LoxArray(length);
+  }
+
+  /**
+   * what counts the allocations, null unless running with --profile-allocations.
+   */
+  AllocationProfiler profiler() {
+    return null;
+  }
+
   /**
    * return false if the object is null or false
    * @param object Object.
    * @return boolean
    */
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if (object == null) return false;
     if (object instanceof Boolean) return (boolean) object;
     return true;
@@ -362,15 +872,19 @@ public class Interpreter implements Expr.Visitor<Object>, Statement.Visitor<Void
    * @param object2 Object.
    * @return Boolean.
    */
-  private boolean isEqual(Object object1, Object object2) {
-    if (object1 == null && object2 == null) return true;
-    if (object1 == null) return false;
+  static boolean isEqual(Object object1, Object object2) {
+    // interned strings, see StringTable, and the same instance or boxed value.
+    if (object1 == object2) return true;
+    if (object1 == null || object2 == null) return false;
+    // a rope and a plain String with the same characters are the same Lox string.
+    if (object1 instanceof LoxString) object1 = object1.toString();
+    if (object2 instanceof LoxString) object2 = object2.toString();
     return object1.equals(object2);
   }
 
 
 
-  private Object evaluate(Expr expr) {
+  protected Object evaluate(Expr expr) {
     return expr.accept(this);
   }
 
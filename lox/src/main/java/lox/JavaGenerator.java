@@ -0,0 +1,485 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Translates a Lox program into the source of a single Java class that runs it on
+ * the lox.runtime library, the first half of tool.CompileLox.
+ *
+ *   globals      static Global fields, looked up by name as the interpreter does
+ *   locals       final Ref locals, so inner classes can capture them as closures do
+ *   functions    anonymous CompiledFunction subclasses
+ *   classes      a CompiledClass holding one anonymous CompiledMethod per method
+ *
+ * Every top level statement becomes its own static method, which keeps long
+ * scripts clear of the JVM limit on the size of a method.
+ */
+public class JavaGenerator implements Expr.Visitor<String>, Statement.Visitor<Void> {
+  private final String className;
+  private final Set<String> globals = new TreeSet<>();
+  private final Map<Double, String> constants = new LinkedHashMap<>();
+  // [{a: v3_a}, {b: v7_b}], the Java local each Lox local is compiled to
+  private final Deque<Map<String, String>> scopes = new ArrayDeque<>();
+  private StringBuilder code;
+  private int indent;
+  private int counter;
+
+  // the enclosing method, if any
+  private String self;
+  private String superclass;
+  private boolean initializer;
+
+  private JavaGenerator(String className) {
+    this.className = className;
+  }
+
+  /**
+   * Scan, parse and resolve source, then generate the Java class.
+   *
+   * @return the Java source, or null when the program has static errors, which
+   *         have been reported like the interpreter reports them.
+   */
+  public static String generate(String source, String className) {
+    List<Token> tokens = new Scanner(source).scanTokens();
+    List<Statement> statements = new Parser(tokens).parse();
+    for (Statement statement : statements) {
+      if (statement instanceof Statement.Import) {
+        Lox.error(((Statement.Import) statement).keyword, "Can't compile a script with imports.");
+      }
+    }
+    if (Lox.hadError()) return null;
+    new Resolver(new Interpreter()).resolve(statements);
+    if (Lox.hadError()) return null;
+    return new JavaGenerator(className).program(statements);
+  }
+
+  private String program(List<Statement> statements) {
+    StringBuilder methods = new StringBuilder();
+    code = methods;
+    indent = 1;
+    for (int i = 0; i < statements.size(); i++) {
+      line("");
+      line("private static void s" + i + "() {");
+      indent++;
+      statements.get(i).accept(this);
+      indent--;
+      line("}");
+    }
+
+    StringBuilder program = new StringBuilder();
+    program.append("import lox.runtime.*;\n\n");
+    program.append("public final class ").append(className).append(" {\n");
+    for (String name : globals) {
+      program.append("  private static final Global g_").append(name)
+          .append(" = new Global(\"").append(name).append("\");\n");
+    }
+    for (Map.Entry<Double, String> constant : constants.entrySet()) {
+      program.append("  private static final Object ").append(constant.getValue())
+          .append(" = ").append(constant.getKey()).append(";\n");
+    }
+    program.append("\n  public static void main(String[] args) {\n");
+    program.append("    LoxRuntime.run(").append(className).append("::run);\n");
+    program.append("  }\n\n");
+    program.append("  private static void run() {\n");
+    for (int i = 0; i < statements.size(); i++) {
+      program.append("    s").append(i).append("();\n");
+    }
+    program.append("  }\n");
+    program.append(methods);
+    program.append("}\n");
+    return program.toString();
+  }
+
+  private void line(String text) {
+    if (!text.isEmpty()) {
+      for (int i = 0; i < indent; i++) code.append("  ");
+    }
+    code.append(text).append('\n');
+  }
+
+  private String fresh(String prefix) {
+    return prefix + counter++;
+  }
+
+  private String declare(String name) {
+    String local = fresh("v") + "_" + name;
+    scopes.peek().put(name, local);
+    return local;
+  }
+
+  private String local(Token name) {
+    for (Map<String, String> scope : scopes) {
+      String local = scope.get(name.lexeme);
+      if (local != null) return local;
+    }
+    return null;
+  }
+
+  private String global(Token name) {
+    globals.add(name.lexeme);
+    return "g_" + name.lexeme;
+  }
+
+  private String read(Token name) {
+    String local = local(name);
+    if (local != null) return local + ".value";
+    return global(name) + ".get(" + name.line + ")";
+  }
+
+  private String write(Token name, String value) {
+    String local = local(name);
+    if (local != null) return "(" + local + ".value = " + value + ")";
+    return global(name) + ".assign(" + value + ", " + name.line + ")";
+  }
+
+  private String generate(Expr expr) {
+    return expr.accept(this);
+  }
+
+  private void generate(Statement statement) {
+    statement.accept(this);
+  }
+
+  private void body(Statement statement) {
+    if (statement instanceof Statement.Block) {
+      generate(statement);
+    } else {
+      line("{");
+      indent++;
+      generate(statement);
+      indent--;
+      line("}");
+    }
+  }
+
+  private static String string(String value) {
+    StringBuilder literal = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"': literal.append("\\\""); break;
+        case '\\': literal.append("\\\\"); break;
+        case '\n': literal.append("\\n"); break;
+        case '\r': literal.append("\\r"); break;
+        case '\t': literal.append("\\t"); break;
+        default:
+          if (c < 0x20 || c > 0x7e) {
+            literal.append(String.format("\\u%04x", (int) c));
+          } else {
+            literal.append(c);
+          }
+      }
+    }
+    return literal.append('"').toString();
+  }
+
+  private static String binary(Token operator, String left, String right) {
+    switch (operator.type) {
+      case EQUAL_EQUAL: return "LoxRuntime.equal(" + left + ", " + right + ")";
+      case BANG_EQUAL: return "LoxRuntime.notEqual(" + left + ", " + right + ")";
+      default:
+    }
+    String method;
+    switch (operator.type) {
+      case PLUS: method = "add"; break;
+      case MINUS: method = "subtract"; break;
+      case STAR: method = "multiply"; break;
+      case SLASH: method = "divide"; break;
+      case GREATER: method = "greater"; break;
+      case GREATER_EQUAL: method = "greaterEqual"; break;
+      case LESS: method = "less"; break;
+      case LESS_EQUAL: method = "lessEqual"; break;
+      default:
+        throw new IllegalArgumentException("not a binary operator: " + operator.lexeme);
+    }
+    return "LoxRuntime." + method + "(" + left + ", " + right + ", " + operator.line + ")";
+  }
+
+  @Override
+  public String visitBinaryExpr(Expr.Binary expr) {
+    return binary(expr.operator, generate(expr.left), generate(expr.right));
+  }
+
+  @Override
+  public String visitCallExpr(Expr.Call expr) {
+    StringBuilder call = new StringBuilder("LoxRuntime.call(").append(generate(expr.callee));
+    if (expr.arguments.isEmpty()) {
+      call.append(", LoxRuntime.NO_ARGUMENTS");
+    } else {
+      call.append(", new Object[] {");
+      for (int i = 0; i < expr.arguments.size(); i++) {
+        if (i > 0) call.append(", ");
+        call.append(generate(expr.arguments.get(i)));
+      }
+      call.append("}");
+    }
+    return call.append(", ").append(expr.paren.line).append(")").toString();
+  }
+
+  @Override
+  public String visitGetExpr(Expr.Get expr) {
+    return "LoxRuntime.get(" + generate(expr.object) + ", " + string(expr.name.lexeme) + ", " + expr.name.line + ")";
+  }
+
+  @Override
+  public String visitSetExpr(Expr.Set expr) {
+    return "LoxRuntime.set(" + generate(expr.object) + ", " + string(expr.name.lexeme) + ", "
+        + generate(expr.value) + ", " + expr.name.line + ")";
+  }
+
+  @Override
+  public String visitThisExpr(Expr.This expr) {
+    return self;
+  }
+
+  @Override
+  public String visitSuperExpr(Expr.Super expr) {
+    return "LoxRuntime.superMethod(" + superclass + ", " + self + ", "
+        + string(expr.method.lexeme) + ", " + expr.method.line + ")";
+  }
+
+  @Override
+  public String visitGroupingExpr(Expr.Grouping expr) {
+    return "(" + generate(expr.expression) + ")";
+  }
+
+  @Override
+  public String visitLiteralExpr(Expr.Literal expr) {
+    Object value = expr.value;
+    if (value == null) return "null";
+    if (value instanceof Boolean) return (boolean) value ? "Boolean.TRUE" : "Boolean.FALSE";
+    if (value instanceof Number) {
+      // boxed once, rather than on every evaluation; the compiled runtime keeps every number a double.
+      return constants.computeIfAbsent(((Number) value).doubleValue(), number -> "K" + constants.size());
+    }
+    return string(value.toString());
+  }
+
+  @Override
+  public String visitUnaryExpr(Expr.Unary expr) {
+    String right = generate(expr.right);
+    if (expr.operator.type == TokenType.BANG) {
+      return "LoxRuntime.not(" + right + ")";
+    }
+    return "LoxRuntime.negate(" + right + ", " + expr.operator.line + ")";
+  }
+
+  @Override
+  public String visitVariableExpr(Expr.Variable expr) {
+    return read(expr.name);
+  }
+
+  @Override
+  public String visitAssignExpr(Expr.Assign expr) {
+    return write(expr.name, generate(expr.value));
+  }
+
+  @Override
+  public String visitLogicalExpr(Expr.Logical expr) {
+    String method = expr.operator.type == TokenType.OR ? "or" : "and";
+    return "LoxRuntime." + method + "(" + generate(expr.left) + ", () -> " + generate(expr.right) + ")";
+  }
+
+  @Override
+  public String visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    return binary(expr.operator, read(expr.name), generate(expr.right));
+  }
+
+  @Override
+  public String visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    return write(expr.name, binary(expr.operator, read(expr.name), generate(expr.value)));
+  }
+
+  @Override
+  public String visitCompoundSetExpr(Expr.CompoundSet expr) {
+    // the object is `this` or a variable, evaluating it twice is safe
+    String object = generate(expr.object);
+    String name = string(expr.name.lexeme);
+    String current = "LoxRuntime.get(" + object + ", " + name + ", " + expr.name.line + ")";
+    return "LoxRuntime.set(" + object + ", " + name + ", "
+        + binary(expr.operator, current, generate(expr.value)) + ", " + expr.name.line + ")";
+  }
+
+  @Override
+  public Void visitExpressionStatement(Statement.Expression statement) {
+    line("LoxRuntime.discard(" + generate(statement.expression) + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStatement(Statement.Function statement) {
+    String local = null;
+    if (!scopes.isEmpty()) {
+      local = declare(statement.name.lexeme);
+      line("final Ref " + local + " = new Ref(null);");
+    }
+    line((local != null ? local + ".value = " : global(statement.name) + ".define(")
+        + "new CompiledFunction(" + string(statement.name.lexeme) + ", " + statement.params.size() + ") {");
+    indent++;
+    line("@Override");
+    line("public Object invoke(Object[] arguments) {");
+    function(statement, false);
+    line("}");
+    indent--;
+    line(local != null ? "};" : "});");
+    return null;
+  }
+
+  /**
+   * the body of invoke, with the parameters copied into locals.
+   */
+  private void function(Statement.Function statement, boolean isInitializer) {
+    boolean enclosingInitializer = initializer;
+    initializer = isInitializer;
+    indent++;
+    scopes.push(new HashMap<>());
+    for (int i = 0; i < statement.params.size(); i++) {
+      String param = declare(statement.params.get(i).lexeme);
+      line("final Ref " + param + " = new Ref(arguments[" + i + "]);");
+    }
+    for (Statement body : statement.body) {
+      generate(body);
+    }
+    line(isInitializer ? "return " + self + ";" : "return null;");
+    scopes.pop();
+    indent--;
+    initializer = enclosingInitializer;
+  }
+
+  @Override
+  public Void visitPrintStatement(Statement.Print statement) {
+    line("LoxRuntime.print(" + generate(statement.expression) + ");");
+    return null;
+  }
+
+  @Override
+  public Void visitVarStatement(Statement.Var statement) {
+    String value = statement.initializer == null ? "null" : generate(statement.initializer);
+    if (scopes.isEmpty()) {
+      line(global(statement.name) + ".define(" + value + ");");
+    } else {
+      line("final Ref " + declare(statement.name.lexeme) + " = new Ref(" + value + ");");
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStatement(Statement.Block statement) {
+    line("{");
+    indent++;
+    scopes.push(new HashMap<>());
+    for (Statement inner : statement.statements) {
+      generate(inner);
+    }
+    scopes.pop();
+    indent--;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitClassStatement(Statement.Class statement) {
+    String local = null;
+    if (!scopes.isEmpty()) {
+      local = declare(statement.name.lexeme);
+      line("final Ref " + local + " = new Ref(null);");
+    }
+    line("{");
+    indent++;
+    String enclosingSuperclass = superclass;
+    String enclosingSelf = self;
+    superclass = null;
+    if (statement.superclass != null) {
+      superclass = fresh("super");
+      line("final CompiledClass " + superclass + " = LoxRuntime.superclass("
+          + generate(statement.superclass) + ", " + statement.superclass.name.line + ");");
+    }
+    if (local == null) {
+      line(global(statement.name) + ".define(null);");
+    }
+    String methods = fresh("methods");
+    line("java.util.Map<String, CompiledMethod> " + methods + " = new java.util.HashMap<>();");
+    for (Statement.Function method : statement.methods) {
+      self = fresh("self");
+      line(methods + ".put(" + string(method.name.lexeme) + ", new CompiledMethod("
+          + string(method.name.lexeme) + ", " + method.params.size() + ") {");
+      indent++;
+      line("@Override");
+      line("public Object invoke(CompiledInstance " + self + ", Object[] arguments) {");
+      function(method, method.name.lexeme.equals("init"));
+      line("}");
+      indent--;
+      line("});");
+    }
+    String loxClass = "new CompiledClass(" + string(statement.name.lexeme) + ", "
+        + (superclass == null ? "null" : superclass) + ", " + methods + ")";
+    if (local != null) {
+      line(local + ".value = " + loxClass + ";");
+    } else {
+      line(global(statement.name) + ".assign(" + loxClass + ", " + statement.name.line + ");");
+    }
+    self = enclosingSelf;
+    superclass = enclosingSuperclass;
+    indent--;
+    line("}");
+    return null;
+  }
+
+  @Override
+  public Void visitIfStatement(Statement.If statement) {
+    line("if (LoxRuntime.truthy(" + generate(statement.condition) + "))");
+    body(statement.thenBranch);
+    if (statement.elseBranch != null) {
+      line("else");
+      body(statement.elseBranch);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStatement(Statement.While statement) {
+    line("while (LoxRuntime.truthy(" + generate(statement.condition) + "))");
+    body(statement.body);
+    return null;
+  }
+
+  @Override
+  public Void visitParallelStatement(Statement.Parallel statement) {
+    String index = fresh("i");
+    line("LoxRuntime.parallel(" + generate(statement.start) + ", " + generate(statement.end) + ", "
+        + statement.keyword.line + ", " + index + " -> {");
+    indent++;
+    scopes.push(new HashMap<>());
+    line("final Ref " + declare(statement.name.lexeme) + " = new Ref((double) " + index + ");");
+    body(statement.body);
+    scopes.pop();
+    indent--;
+    line("});");
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStatement(Statement.Return statement) {
+    String value;
+    if (initializer) {
+      value = self;
+    } else {
+      value = statement.value == null ? "null" : generate(statement.value);
+    }
+    // `if (true)` keeps javac from rejecting the statements after it as unreachable
+    line("if (true) return " + value + ";");
+    return null;
+  }
+
+  @Override
+  public Void visitImportStatement(Statement.Import statement) {
+    throw new IllegalStateException("generate() rejects imports");
+  }
+}
@@ -0,0 +1,97 @@
+package lox;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The body of a function the parser only stepped over, running with --lazy.
+ *
+ * The parser matches the brackets and keeps where the body's tokens are, the
+ * resolver keeps the scopes it saw at the declaration, and the first call
+ * parses, optimizes and resolves the body from there. A function a run never
+ * calls costs no more than its tokens, which the scanner made anyway.
+ *
+ * Stepping over the body the parser also checks each pair of neighbouring
+ * tokens, which catches most syntax errors with the rest of the script's,
+ * before anything runs. The errors only the grammar or the resolver see are
+ * reported by the first call, which then fails, as do the ones after it.
+ *
+ * The nodes of a module are shared by every interpreter importing it, so the
+ * body is parsed once, but resolved once per interpreter, into its own tables.
+ */
+final class LazyBody implements Serializable {
+  private static final long serialVersionUID = 1L;
+  // the whole script's tokens, shared by all the bodies in it.
+  private final List<Token> tokens;
+  // the first token after the body's '{', and the matching '}'.
+  private final int start;
+  private final int end;
+  private Resolver.Context context;
+  // parsed and optimized.
+  private volatile List<Statement> statements;
+  // the tables of the interpreters the body was last resolved into without
+  // errors, see Interpreter.lazyBodies(). Calls running on them skip the lookup.
+  private transient volatile Map<LazyBody, Boolean> resolvedIn;
+  // the body didn't parse.
+  private boolean failed = false;
+
+  LazyBody(List<Token> tokens, int start, int end) {
+    this.tokens = tokens;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * the tokens of the body, without its braces.
+   */
+  List<Token> tokens() {
+    return tokens.subList(start, end);
+  }
+
+  void defer(Resolver.Context context) {
+    this.context = context;
+  }
+
+  Resolver.Context context() {
+    return context;
+  }
+
+  List<Statement> statements(Interpreter interpreter, Statement.Function function) {
+    if (resolvedIn == interpreter.lazyBodies()) return statements;
+    return materialize(interpreter, function);
+  }
+
+  /**
+   * the body parsed and optimized, null when it doesn't parse. The resolver
+   * looks into the bodies a parallel body may call before they are called.
+   */
+  List<Statement> parsed() {
+    // not on this: a thread resolving a body, holding it, may parse others.
+    synchronized (tokens) {
+      if (statements == null && !failed) {
+        Parser parser = new Parser(tokens, start);
+        List<Statement> body = parser.body();
+        failed = parser.hadError();
+        if (!failed) statements = Optimizer.optimize(body);
+      }
+      return statements;
+    }
+  }
+
+  // threads calling a function for the first time at once parse it once.
+  private synchronized List<Statement> materialize(Interpreter interpreter, Statement.Function function) {
+    parsed();
+    Boolean resolved = failed ? Boolean.FALSE : interpreter.lazyBodies().get(this);
+    if (resolved == null) {
+      resolved = new Resolver(interpreter).resolveBody(function, statements, context);
+      interpreter.lazyBodies().put(this, resolved);
+    }
+    if (!resolved) {
+      throw new RunTimeError(function.name, "Can't call '" + function.name.lexeme + "', its body has errors.");
+    }
+    // written after statements, a thread finding it finds them.
+    resolvedIn = interpreter.lazyBodies();
+    return statements;
+  }
+}
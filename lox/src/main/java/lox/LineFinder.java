@@ -0,0 +1,152 @@
+package lox;
+
+/**
+ * Finds the source line of a node from the tokens it keeps, -1 when it keeps
+ * none, like a literal.
+ */
+class LineFinder implements Expr.Visitor<Integer>, Statement.Visitor<Integer> {
+  private static final LineFinder INSTANCE = new LineFinder();
+
+  static int of(Expr expr) {
+    return expr.accept(INSTANCE);
+  }
+
+  static int of(Statement statement) {
+    return statement.accept(INSTANCE);
+  }
+
+  @Override
+  public Integer visitBinaryExpr(Expr.Binary expr) {
+    return expr.operator.line;
+  }
+
+  @Override
+  public Integer visitCallExpr(Expr.Call expr) {
+    int line = of(expr.callee);
+    return line < 0 ? expr.paren.line : line;
+  }
+
+  @Override
+  public Integer visitGetExpr(Expr.Get expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitSetExpr(Expr.Set expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitThisExpr(Expr.This expr) {
+    return expr.keyword.line;
+  }
+
+  @Override
+  public Integer visitSuperExpr(Expr.Super expr) {
+    return expr.keyword.line;
+  }
+
+  @Override
+  public Integer visitGroupingExpr(Expr.Grouping expr) {
+    return of(expr.expression);
+  }
+
+  @Override
+  public Integer visitLiteralExpr(Expr.Literal expr) {
+    return -1;
+  }
+
+  @Override
+  public Integer visitUnaryExpr(Expr.Unary expr) {
+    return expr.operator.line;
+  }
+
+  @Override
+  public Integer visitVariableExpr(Expr.Variable expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitAssignExpr(Expr.Assign expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitLogicalExpr(Expr.Logical expr) {
+    return expr.operator.line;
+  }
+
+  @Override
+  public Integer visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitCompoundSetExpr(Expr.CompoundSet expr) {
+    return expr.name.line;
+  }
+
+  @Override
+  public Integer visitExpressionStatement(Statement.Expression statement) {
+    return of(statement.expression);
+  }
+
+  @Override
+  public Integer visitFunctionStatement(Statement.Function statement) {
+    return statement.name.line;
+  }
+
+  @Override
+  public Integer visitPrintStatement(Statement.Print statement) {
+    return of(statement.expression);
+  }
+
+  @Override
+  public Integer visitVarStatement(Statement.Var statement) {
+    return statement.name.line;
+  }
+
+  @Override
+  public Integer visitBlockStatement(Statement.Block statement) {
+    for (Statement inner : statement.statements) {
+      int line = of(inner);
+      if (line >= 0) return line;
+    }
+    return -1;
+  }
+
+  @Override
+  public Integer visitClassStatement(Statement.Class statement) {
+    return statement.name.line;
+  }
+
+  @Override
+  public Integer visitIfStatement(Statement.If statement) {
+    return of(statement.condition);
+  }
+
+  @Override
+  public Integer visitWhileStatement(Statement.While statement) {
+    return of(statement.condition);
+  }
+
+  @Override
+  public Integer visitParallelStatement(Statement.Parallel statement) {
+    return statement.keyword.line;
+  }
+
+  @Override
+  public Integer visitReturnStatement(Statement.Return statement) {
+    return statement.keyword.line;
+  }
+
+  @Override
+  public Integer visitImportStatement(Statement.Import statement) {
+    return statement.keyword.line;
+  }
+}
@@ -3,39 +3,273 @@ package lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 public class Lox {
-  private static final Interpreter interpreter = new Interpreter();
+  private static Interpreter interpreter = new Interpreter();
+  // where runtime errors and static errors are reported, swapped per request by the Server.
+  private static PrintStream out = System.out;
+  private static PrintStream err = System.err;
   private static boolean hasError = false;
   private static boolean hadRunTimeError = false;
-  private static boolean hadResolverError = false;
+  // results each pure function keeps, 0 when nothing is memoized.
+  private static int memoSize = 0;
+  // parse function bodies when they are first called, see LazyBody.
+  private static boolean lazy = false;
+  // run scripts from their flat encoding, see FlatInterpreter.
+  private static boolean flat = false;
+  // dispatch on node kinds with a switch rather than with accept, see Expr.dispatch().
+  private static boolean switchDispatch = false;
+  // intern the strings programs build at runtime too, see StringTable.
+  private static boolean intern = false;
+  // count what every node allocates, see AllocationProfiler.
+  private static boolean profileAllocations = false;
+  // the identifiers and string literals of the program running and the modules it
+  // parses, see StringTable. Every program the server runs gets a table of its own.
+  private static StringTable strings = new StringTable();
+  private static ModuleLoader modules;
+  // run on a StacklessInterpreter allowing this many nested calls, -1 for the default interpreter.
+  private static int maxDepth = -1;
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: lox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    String restorePath = null;
+    String snapshotPath = null;
+    boolean trace = false;
+    boolean server = false;
+    int next = 0;
+    while (next < args.length && args[next].startsWith("--")) {
+      String option = args[next++];
+      switch (option) {
+        case "--restore":
+          if (next == args.length) usage();
+          restorePath = args[next++];
+          break;
+        case "--snapshot":
+          if (next == args.length) usage();
+          snapshotPath = args[next++];
+          break;
+        case "--trace":
+          trace = true;
+          break;
+        case "--profile-allocations":
+          profileAllocations = true;
+          break;
+        case "--stackless":
+          if (maxDepth < 0) maxDepth = StacklessInterpreter.DEFAULT_MAX_DEPTH;
+          break;
+        case "--max-depth":
+          if (next == args.length) usage();
+          try {
+            maxDepth = Integer.parseInt(args[next++]);
+          } catch (NumberFormatException e) {
+            usage();
+          }
+          if (maxDepth < 1) usage();
+          break;
+        case "--server":
+          server = true;
+          break;
+        case "--lazy":
+          lazy = true;
+          break;
+        case "--flat":
+          flat = true;
+          break;
+        case "--dispatch":
+          if (next == args.length) usage();
+          String dispatch = args[next++];
+          if (!dispatch.equals("switch") && !dispatch.equals("visitor")) usage();
+          switchDispatch = dispatch.equals("switch");
+          break;
+        case "--intern":
+          intern = true;
+          break;
+        case "--memoize":
+          if (memoSize == 0) memoSize = Memo.DEFAULT_CAPACITY;
+          break;
+        case "--memo-size":
+          if (next == args.length) usage();
+          try {
+            memoSize = Integer.parseInt(args[next++]);
+          } catch (NumberFormatException e) {
+            usage();
+          }
+          if (memoSize < 1) usage();
+          break;
+        default:
+          usage();
+      }
+    }
+    if (trace && maxDepth > 0) usage();
+    // the switch is another way for the tree interpreter to dispatch, see SwitchInterpreter.
+    if (switchDispatch && (trace || maxDepth > 0 || flat || profileAllocations)) usage();
+    // tracing and profiling are subclasses of the interpreter each, see TracingInterpreter.
+    if (trace && profileAllocations) usage();
+    // purity is decided over the whole program, code loaded before or after it could break it.
+    if (memoSize > 0 && (restorePath != null || (args.length == next && !server))) usage();
+    // the flat encoding has no lazy bodies, snapshots or tail calls, and runs a whole script.
+    if (flat && (trace || maxDepth > 0 || memoSize > 0 || lazy || server || restorePath != null
+        || snapshotPath != null || args.length == next)) {
+      usage();
+    }
+    modules = new ModuleLoader(lazy);
+    if (server) {
+      if (trace || restorePath != null || snapshotPath != null || args.length != next) usage();
+      if (!Server.serve(System.in, System.out)) System.exit(64);
+      return;
+    }
+    Snapshot snapshot = restorePath == null ? null : restore(restorePath);
+    if (trace) {
+      TracingInterpreter tracing = snapshot == null
+          ? new TracingInterpreter(OutputSink.stdout())
+          : new TracingInterpreter(OutputSink.stdout(), snapshot);
+      tracing.addListener(new Tracer(System.err));
+      interpreter = tracing;
+    } else {
+      interpreter = newInterpreter(OutputSink.stdout(), snapshot, System.err);
+    }
+    if (intern) interpreter.internStrings(strings);
+    if (args.length - next > 1 || (snapshotPath != null && args.length == next)) {
+      usage();
+    } else if (args.length - next == 1) {
+      runFile(args[next]);
+      if (snapshotPath != null) {
+        writeSnapshot(snapshotPath);
+      }
     } else {
       runPrompt();
     }
   }
 
+  private static void usage() {
+    System.out.println("Usage: lox [--restore snapshot] [--snapshot snapshot] [--trace | --stackless] [--max-depth n]"
+        + " [--profile-allocations]"
+        + " [--memoize] [--memo-size n] [--lazy] [--flat]"
+        + " [--dispatch switch|visitor] [--intern] [--server | script]");
+    System.exit(64);
+  }
+
+  /**
+   * the interpreter the options ask for, printing to out and continuing from
+   * snapshot unless it is null, profiling to profile when asked to.
+   */
+  private static Interpreter newInterpreter(OutputSink out, Snapshot snapshot, PrintStream profile) {
+    AllocationProfiler profiler = profileAllocations ? new AllocationProfiler(profile) : null;
+    if (maxDepth > 0) {
+      if (profiler != null) {
+        return snapshot == null
+            ? new ProfilingStacklessInterpreter(out, maxDepth, profiler)
+            : new ProfilingStacklessInterpreter(out, snapshot, maxDepth, profiler);
+      }
+      return snapshot == null ? new StacklessInterpreter(out, maxDepth) : new StacklessInterpreter(out, snapshot, maxDepth);
+    }
+    if (flat) {
+      return profiler != null ? new ProfilingFlatInterpreter(out, profiler) : new FlatInterpreter(out);
+    }
+    if (profiler != null) {
+      return snapshot == null ? new ProfilingInterpreter(out, profiler) : new ProfilingInterpreter(out, snapshot, profiler);
+    }
+    if (switchDispatch) {
+      return snapshot == null ? new SwitchInterpreter(out) : new SwitchInterpreter(out, snapshot);
+    }
+    return snapshot == null ? new Interpreter(out) : new Interpreter(out, snapshot);
+  }
+
+  private static Snapshot restore(String path) {
+    try {
+      return Snapshot.read(Paths.get(path));
+    } catch (IOException e) {
+      System.err.println("Can't restore snapshot: " + e.getMessage());
+      System.exit(65);
+      return null;
+    }
+  }
+
+  private static void writeSnapshot(String path) {
+    try {
+      interpreter.snapshot().write(Paths.get(path));
+    } catch (IOException e) {
+      System.err.println("Can't write snapshot: " + e.getMessage());
+      System.exit(74);
+    }
+  }
+
   private static void runFile(String path) throws IOException {
     final byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
-    if (hasError) {
-      System.exit(65);
+    try {
+      String source = new String(bytes, Charset.defaultCharset());
+      if (flat) {
+        runFlat(source);
+      } else {
+        run(source, Paths.get(path).toAbsolutePath().getParent());
+      }
+    } finally {
+      interpreter.flush();
+      reportMemos();
+      reportAllocations();
     }
-    if (hadRunTimeError) {
-      System.exit(70);
+    int status = status();
+    if (status != 0) {
+      System.exit(status);
     }
   }
 
+  /**
+   * run source as a program of its own, on a fresh interpreter, printing to
+   * stdout and reporting errors to stderr. See Server.
+   *
+   * @return the status lox would exit with.
+   */
+  static int runIsolated(String source, Path directory, OutputStream stdout, OutputStream stderr) {
+    Charset charset = Charset.defaultCharset();
+    out = new PrintStream(stdout, true, charset);
+    err = new PrintStream(stderr, true, charset);
+    hasError = false;
+    hadRunTimeError = false;
+    OutputSink sink = new OutputSink(new OutputStreamWriter(stdout, charset));
+    interpreter = newInterpreter(sink, null, err);
+    strings = new StringTable();
+    if (intern) interpreter.internStrings(strings);
+    try {
+      run(source, directory);
+      return status();
+    } finally {
+      interpreter.flush();
+      reportMemos();
+      reportAllocations();
+      out = System.out;
+      err = System.err;
+    }
+  }
+
+  private static int status() {
+    if (hasError) return 65;
+    if (hadRunTimeError) return 70;
+    return 0;
+  }
+
+  private static void reportMemos() {
+    List<Memo> memos = new ArrayList<>(interpreter.memos());
+    memos.sort(Comparator.comparing(memo -> memo.name));
+    for (Memo memo : memos) {
+      err.println("[memo] " + memo);
+    }
+  }
+
+  private static void reportAllocations() {
+    AllocationProfiler profiler = interpreter.profiler();
+    if (profiler != null) profiler.report();
+  }
+
   private static void runPrompt() throws IOException {
     final InputStreamReader input = new InputStreamReader(System.in);
     final BufferedReader reader = new BufferedReader(input);
@@ -44,29 +278,67 @@ public class Lox {
       System.out.println(">  ");
       final String line = reader.readLine();
       if (line == null) break;
-      run(line);
+      run(line, Paths.get("").toAbsolutePath());
+      interpreter.flush();
       hasError = false;
     }
+    reportAllocations();
   }
 
 
-  // core logic of our interpreter
-  private static void run(String source) {
-    final Scanner scanner = new Scanner(source);
+  // core logic of our interpreter, imports are relative to directory
+  private static void run(String source, Path directory) {
+    final Scanner scanner = new Scanner(source, strings);
     final List<Token> tokens = scanner.scanTokens();
-    final Parser parser = new Parser(tokens);
-    final List<Statement> statements = parser.parse();
+    final Parser parser = new Parser(tokens, lazy);
+    List<Statement> statements = parser.parse();
     final Resolver resolver = new Resolver(interpreter);
     // for now just print the tokens
     if (hasError) return;
+    // parse everything the program imports, a module with errors is a syntax error too
+    List<Module> imported = modules.load(statements, directory, strings);
+    if (hasError) return;
+    // fuse common patterns into superinstructions
+    statements = Optimizer.optimize(statements);
     // first do static analysis of statements
     resolver.resolve(statements);
+    if (memoSize > 0) {
+      List<Statement> program = new ArrayList<>();
+      for (Module module : imported) {
+        program.addAll(module.statements);
+      }
+      program.addAll(statements);
+      for (Statement.Function function : PurityAnalyzer.pureFunctions(program)) {
+        interpreter.memoize(function, memoSize);
+      }
+    }
     // if had resolver logic, do not interpret statements
-    if (hadResolverError) return;
+    if (hasError) return;
     // then interpret statements
     interpreter.interpret(statements);
   }
 
+  // the same front end, but only the flat encoding of the program outlives it.
+  private static void runFlat(String source) {
+    FlatAst ast = flatten(source);
+    if (ast == null) return;
+    int[] depths = new Resolver(interpreter).resolve(ast);
+    if (hasError) return;
+    ((FlatInterpreter) interpreter).interpret(ast, depths);
+  }
+
+  private static FlatAst flatten(String source) {
+    final Scanner scanner = new Scanner(source, strings);
+    final Parser parser = new Parser(scanner.scanTokens());
+    List<Statement> statements = parser.parse();
+    if (hasError) return null;
+    return FlatAst.encode(Optimizer.optimize(statements));
+  }
+
+  static boolean hadError() {
+    return hasError;
+  }
+
   static void error(int line, String message) {
     report(line, "", message);
   }
@@ -79,12 +351,12 @@ public class Lox {
     }
   }
   private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
+    err.println("[line " + line + "] Error" + where + ": " + message);
     hasError = true;
   }
 
   protected static void runTimeError(RunTimeError error) {
-    System.out.println(error.getMessage() + "\n[line " + error.token.line + "]");
+    out.println(error.getMessage() + "\n[line " + error.token.line + "]");
     hadRunTimeError = true;
   }
 }
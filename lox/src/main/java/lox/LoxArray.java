@@ -0,0 +1,85 @@
+package lox;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fixed size array of numbers returned by the native `array(length)`.
+ *
+ * Backed by a double[], so the numbers are stored unboxed and next to each other.
+ * Every element starts as 0.
+ *
+ *   var squares = array(10);
+ *   squares.set(3, 9);
+ *   print squares.get(3);
+ */
+class LoxArray implements NativeObject, Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final List<String> METHODS = Arrays.asList("get", "set", "length");
+  private final double[] elements;
+  // made on first read and kept, so a call doesn't allocate its function.
+  // Methods aren't snapshotted, a restored LoxArray makes them again.
+  private transient NativeFunction[] methods;
+
+  LoxArray(int length) {
+    this.elements = new double[length];
+  }
+
+  @Override
+  public Object get(Token name) {
+    int index = METHODS.indexOf(name.lexeme);
+    if (index < 0) {
+      throw new RunTimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+    // two threads may both make a method, either one will do.
+    NativeFunction[] made = methods;
+    if (made == null) made = methods = new NativeFunction[METHODS.size()];
+    if (made[index] == null) made[index] = method(name.lexeme);
+    return made[index];
+  }
+
+  private NativeFunction method(String name) {
+    switch (name) {
+      case "get":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return LoxNumber.of(elements[LoxList.index(arguments.get(0), elements.length)]);
+          }
+        };
+      case "set":
+        return new NativeFunction(2) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            int index = LoxList.index(arguments.get(0), elements.length);
+            Object value = arguments.get(1);
+            if (!LoxNumber.isNumber(value)) {
+              throw new RunTimeError("Array elements must be numbers.");
+            }
+            elements[index] = LoxNumber.toDouble(value);
+            return value;
+          }
+        };
+      case "length":
+        return new NativeFunction(0) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return LoxNumber.of(elements.length);
+          }
+        };
+      default:
+        throw new AssertionError(name);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < elements.length; i++) {
+      if (i > 0) builder.append(", ");
+      builder.append(Interpreter.stringify(elements[i]));
+    }
+    return builder.append("]").toString();
+  }
+}
@@ -1,17 +1,86 @@
 package lox;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class LoxClass implements LoxCallable {
+public class LoxClass implements LoxCallable, Serializable {
+  private static final long serialVersionUID = 1L;
   private final String name;
   private final LoxClass superclass;
   private final Map<String, LoxFunction> methods;
+  // field name -> slot, the same in every instance of this class. see LoxInstance.
+  // instances of one class may be created and extended on many threads.
+  private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+  private final int expectedFields;
 
   public LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
     this.name = name;
     this.superclass = superclass;
     this.methods = methods;
+    // lay out the fields a superclass init assigns first, then our own.
+    if (superclass != null) {
+      for (String field : superclass.initFields()) {
+        addSlot(field);
+      }
+    }
+    LoxFunction init = methods.get("init");
+    // a lazily parsed or flat init isn't looked into, its fields get slots as they are set.
+    if (init != null && init.declaration != null && init.declaration.body != null) {
+      collectFields(init.declaration.body);
+    }
+    this.expectedFields = slots.size();
+  }
+
+  /**
+   * find the `this.field = ...` assignments, the fields every instance is
+   * going to have, without looking into loops or nested functions.
+   */
+  private void collectFields(List<Statement> statements) {
+    for (Statement statement : statements) {
+      if (statement instanceof Statement.Expression) {
+        Expr expr = ((Statement.Expression) statement).expression;
+        if (expr instanceof Expr.Set && ((Expr.Set) expr).object instanceof Expr.This) {
+          String field = ((Expr.Set) expr).name.lexeme;
+          if (slotOf(field) < 0) addSlot(field);
+        }
+      } else if (statement instanceof Statement.Block) {
+        collectFields(((Statement.Block) statement).statements);
+      }
+    }
+  }
+
+  private Iterable<String> initFields() {
+    String[] fields = new String[expectedFields];
+    for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+      if (slot.getValue() < expectedFields) {
+        fields[slot.getValue()] = slot.getKey();
+      }
+    }
+    return List.of(fields);
+  }
+
+  int slotOf(String field) {
+    Integer slot = slots.get(field);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * give a field seen for the first time the next free slot.
+   */
+  synchronized int addSlot(String field) {
+    Integer existing = slots.get(field);
+    if (existing != null) {
+      return existing;
+    }
+    int slot = slots.size();
+    slots.put(field, slot);
+    return slot;
+  }
+
+  int expectedFields() {
+    return expectedFields;
   }
 
   @Override
@@ -21,10 +90,10 @@ public class LoxClass implements LoxCallable {
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
-    LoxInstance loxInstance = new LoxInstance(this);
+    LoxInstance loxInstance = interpreter.newInstance(this);
     LoxFunction init = findMethod("init");
     if (init != null) {
-      init.bind(loxInstance).call(interpreter, arguments);
+      interpreter.bind(init, loxInstance).call(interpreter, arguments);
     }
     return loxInstance;
   }
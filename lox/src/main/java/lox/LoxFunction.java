@@ -1,5 +1,6 @@
 package lox;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
@@ -7,50 +8,142 @@ import java.util.List;
  *
  * It will be used to let interpreter to call function.
  */
-public class LoxFunction implements LoxCallable {
+public class LoxFunction implements LoxCallable, Serializable {
+  private static final long serialVersionUID = 1L;
 
-  private final Statement.Function declaration;
+  final Statement.Function declaration;
   // Store the function when it's declared instead of its being called.
-  private final Environment closure;
-  private final Boolean isInit;
+  final Environment closure;
+  final Boolean isInit;
+  // the resolver found nothing to define in the function's scope, not even a parameter.
+  private final boolean scopeless;
+  // the instance a method is bound to, defined as `this` in each call.
+  final LoxInstance receiver;
 
-  public LoxFunction(Statement.Function declaration, Environment closure, Boolean isInit) {
+  public LoxFunction(Statement.Function declaration, Environment closure, Boolean isInit, boolean scopeless) {
+    this(declaration, closure, isInit, scopeless, null);
+  }
+
+  /**
+   * a function with no Statement.Function behind it, which makes its own
+   * calls, see FlatFunction.
+   */
+  LoxFunction(Environment closure, Boolean isInit, LoxInstance receiver) {
+    this(null, closure, isInit, false, receiver);
+  }
+
+  private LoxFunction(Statement.Function declaration, Environment closure, Boolean isInit,
+                      boolean scopeless, LoxInstance receiver) {
     this.declaration = declaration;
     this.closure = closure;
     this.isInit = isInit;
+    this.scopeless = scopeless;
+    this.receiver = receiver;
   }
 
+  /**
+   * A `return f(...)` the resolver found in tail position comes back here as a
+   * Return carrying f and its arguments, and the loop makes the call, so tail
+   * recursion runs in constant Java stack. A function calling itself that never
+   * closes over its environment refills the one it has.
+   *
+   * A memoized function, see Memo, runs its body only for arguments it hasn't
+   * seen yet, and the result of a chain of tail calls is the result of every
+   * memoized call in it.
+   */
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
+    LoxFunction function = this;
+    LoxFunction caller = null;
+    Environment environment = null;
+    Memo.Pending pending = null;
+    while (true) {
+      Memo memo = interpreter.memo(function.declaration);
+      if (memo != null) {
+        Object key = Memo.key(arguments);
+        Object cached = memo.get(key);
+        if (cached != Memo.MISS) return Memo.Pending.complete(pending, cached);
+        pending = new Memo.Pending(memo, key, pending);
+      }
+      environment = caller == null
+          ? function.environment(interpreter, arguments)
+          : function.environmentAfter(interpreter, caller, environment, arguments);
+      Object result;
+      try {
+        interpreter.executeBlock(function.body(interpreter), environment);
+        result = function.result(null);
+      } catch (Return returnValue) {
+        if (returnValue.callee != null) {
+          caller = function;
+          function = returnValue.callee;
+          arguments = returnValue.arguments;
+          continue;
+        }
+        result = function.result(returnValue.value);
+      }
+      return Memo.Pending.complete(pending, result);
+    }
+  }
+
+  /**
+   * the statements a call runs, parsed by the first call when the parser left
+   * them for later, see LazyBody.
+   */
+  List<Statement> body(Interpreter interpreter) {
+    List<Statement> body = declaration.body;
+    return body != null ? body : declaration.lazy.statements(interpreter, declaration);
+  }
+
+  /**
+   * the environment for a tail call to this function from a call of caller,
+   * running in current.
+   */
+  Environment environmentAfter(Interpreter interpreter, LoxFunction caller, Environment current,
+                               List<Object> arguments) {
+    if (caller.declaration != declaration || scopeless || !interpreter.reusesFrame(declaration)) {
+      return environment(interpreter, arguments);
+    }
+    bind(current, arguments);
+    return current;
+  }
+
+  /**
+   * the environment a call runs its body in.
+   */
+  Environment environment(Interpreter interpreter, List<Object> arguments) {
     // we need to make sure every function called will have its own environment
     // think about recursion.
-    Environment environment = new Environment(closure);
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    // unless there is nothing to put in it, then the closure does just as well.
+    Environment environment = closure;
+    if (!scopeless) {
+      environment = interpreter.newEnvironment(closure);
+      bind(environment, arguments);
     }
-    try {
-      interpreter.executeBlock(declaration.body, environment);
-    } catch (Return returnValue) {
-      if (isInit) {
-        return closure.getAt(0, "this");
-      }
-      return returnValue.value;
+    return environment;
+  }
+
+  private void bind(Environment environment, List<Object> arguments) {
+    if (receiver != null) {
+      environment.define("this", receiver);
     }
-    if (isInit) {
-      return closure.getAt(0, "this");
+    for (int i = 0; i < declaration.params.size(); i++) {
+      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
     }
-    return null;
   }
 
   /**
-   * we create an environment inside the method's original closure.
-   * we define `this` as a variable in that environment and bind it
-   * into the given instance.
+   * what a call returning value, or nil when it runs off its end, evaluates to.
+   */
+  Object result(Object value) {
+    return isInit ? receiver : value;
+  }
+
+  /**
+   * we bind the method to the given instance, which each call then defines
+   * as `this` in its own environment, next to the parameters.
    */
   public LoxFunction bind(LoxInstance loxInstance) {
-    Environment environment = new Environment(closure);
-    environment.define("this", loxInstance);
-    return new LoxFunction(declaration, environment, isInit);
+    return new LoxFunction(declaration, closure, isInit, scopeless, loxInstance);
   }
 
   @Override
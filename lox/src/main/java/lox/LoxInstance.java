@@ -1,12 +1,30 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Serializable;
+import java.util.Arrays;
 
-public class LoxInstance {
+/**
+ * An instance of a Lox class.
+ *
+ * Fields are not kept in a HashMap per instance. The class hands out a slot
+ * number per field name, shared by all of its instances, and the instance only
+ * stores the values: the first few inline, the rest in an overflow array sized
+ * after the fields the class's init assigns. An instance with up to four fields
+ * is a single 40 byte object instead of a HashMap, its table and a node per field.
+ */
+public class LoxInstance implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int INLINE_SLOTS = 4;
 
-  private LoxClass loxClass;
-  private final Map<String, Object> fields = new HashMap<>();
+  // marks a slot this instance has no field for yet, fields may hold nil.
+  private enum Absent { FIELD }
+
+  private final LoxClass loxClass;
+  private Object slot0 = Absent.FIELD;
+  private Object slot1 = Absent.FIELD;
+  private Object slot2 = Absent.FIELD;
+  private Object slot3 = Absent.FIELD;
+  private Object[] overflow;
 
   public LoxInstance(LoxClass loxClass) {
     this.loxClass = loxClass;
@@ -19,18 +37,67 @@ public class LoxInstance {
         '}';
   }
 
-  public Object get(Token name) {
-    if (fields.containsKey(name.lexeme)) {
-      return fields.get(name.lexeme);
+  /**
+   * the field, or the method bound to this instance by interpreter.
+   */
+  public Object get(Token name, Interpreter interpreter) {
+    int slot = loxClass.slotOf(name.lexeme);
+    if (slot >= 0) {
+      Object value = read(slot);
+      if (value != Absent.FIELD) {
+        return value;
+      }
     }
     LoxFunction method = loxClass.findMethod(name.lexeme);
     if (method != null) {
-      return method.bind(this);
+      return interpreter.bind(method, this);
     }
     throw new RunTimeError( name, "Undefined property '" + name.lexeme + "'.");
   }
 
   public void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+    int slot = loxClass.slotOf(name.lexeme);
+    if (slot < 0) {
+      slot = loxClass.addSlot(name.lexeme);
+    }
+    write(slot, value);
+  }
+
+  private Object read(int slot) {
+    switch (slot) {
+      case 0: return slot0;
+      case 1: return slot1;
+      case 2: return slot2;
+      case 3: return slot3;
+      default:
+        int index = slot - INLINE_SLOTS;
+        if (overflow == null || index >= overflow.length) return Absent.FIELD;
+        return overflow[index];
+    }
+  }
+
+  private void write(int slot, Object value) {
+    switch (slot) {
+      case 0: slot0 = value; return;
+      case 1: slot1 = value; return;
+      case 2: slot2 = value; return;
+      case 3: slot3 = value; return;
+      default:
+        int index = slot - INLINE_SLOTS;
+        if (overflow == null || index >= overflow.length) {
+          growOverflow(index + 1);
+        }
+        overflow[index] = value;
+    }
+  }
+
+  private void growOverflow(int minimum) {
+    int length = Math.max(minimum, loxClass.expectedFields() - INLINE_SLOTS);
+    if (overflow != null) {
+      length = Math.max(length, overflow.length * 2);
+    }
+    int from = overflow == null ? 0 : overflow.length;
+    overflow = overflow == null ? new Object[length] : Arrays.copyOf(overflow, length);
+    Arrays.fill(overflow, from, length, Absent.FIELD);
   }
 }
@@ -0,0 +1,145 @@
+package lox;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The growable list returned by the native `list()`.
+ *
+ * Elements live in one contiguous Object[], so get and set by index are O(1),
+ * and push is amortized O(1).
+ *
+ *   var names = list();
+ *   names.push("lox");
+ *   print names.get(0);
+ */
+class LoxList implements NativeObject, Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final List<String> METHODS = Arrays.asList("get", "set", "push", "pop", "length");
+  private static final int INITIAL_CAPACITY = 8;
+  // the lists and maps this thread is printing, one reached again through a
+  // cycle prints as [...] or {...}.
+  static final ThreadLocal<Set<Object>> PRINTING =
+      ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  private Object[] elements = new Object[INITIAL_CAPACITY];
+  private int size = 0;
+  // made on first read and kept, so a call doesn't allocate its function.
+  // Methods aren't snapshotted, a restored LoxList makes them again.
+  private transient NativeFunction[] methods;
+
+  @Override
+  public Object get(Token name) {
+    int index = METHODS.indexOf(name.lexeme);
+    if (index < 0) {
+      throw new RunTimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+    // two threads may both make a method, either one will do.
+    NativeFunction[] made = methods;
+    if (made == null) made = methods = new NativeFunction[METHODS.size()];
+    if (made[index] == null) made[index] = method(name.lexeme);
+    return made[index];
+  }
+
+  private NativeFunction method(String name) {
+    switch (name) {
+      case "get":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return elements[index(arguments.get(0), size)];
+          }
+        };
+      case "set":
+        return new NativeFunction(2) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            Object value = arguments.get(1);
+            elements[index(arguments.get(0), size)] = value;
+            return value;
+          }
+        };
+      case "push":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            add(arguments.get(0));
+            return null;
+          }
+        };
+      case "pop":
+        return new NativeFunction(0) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            if (size == 0) {
+              throw new RunTimeError("Can't pop from an empty list.");
+            }
+            Object value = elements[--size];
+            elements[size] = null;
+            return value;
+          }
+        };
+      case "length":
+        return new NativeFunction(0) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return LoxNumber.of(size);
+          }
+        };
+      default:
+        throw new AssertionError(name);
+    }
+  }
+
+  void add(Object value) {
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, size * 2);
+    }
+    elements[size++] = value;
+  }
+
+  /**
+   * turn a Lox number into a valid index below length.
+   */
+  static int index(Object value, int length) {
+    if (value instanceof Long) {
+      long number = (long) value;
+      if (number < 0 || number >= length) {
+        throw new RunTimeError("Index " + Interpreter.stringify(value) + " out of bounds for length " + length + ".");
+      }
+      return (int) number;
+    }
+    // only fractions, infinities and NaN are Doubles.
+    if (!(value instanceof Double)) {
+      throw new RunTimeError("Index must be a number.");
+    }
+    double number = (double) value;
+    if (number != Math.floor(number)) {
+      throw new RunTimeError("Index must be an integer.");
+    }
+    if (number < 0 || number >= length) {
+      throw new RunTimeError("Index " + Interpreter.stringify(value) + " out of bounds for length " + length + ".");
+    }
+    return (int) number;
+  }
+
+  @Override
+  public String toString() {
+    Set<Object> printing = PRINTING.get();
+    if (!printing.add(this)) return "[...]";
+    try {
+      StringBuilder builder = new StringBuilder("[");
+      for (int i = 0; i < size; i++) {
+        if (i > 0) builder.append(", ");
+        builder.append(Interpreter.stringify(elements[i]));
+      }
+      return builder.append("]").toString();
+    } finally {
+      printing.remove(this);
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package lox;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dictionary returned by the native `map()`.
+ *
+ * An open addressing table with linear probing: keys and values sit in two
+ * parallel arrays, there is no node object per entry. Two keys are the same key
+ * when Lox's `==` says they are equal, so 1 and 1.0 or a string and a rope with
+ * the same characters hit the same entry. Strings and numbers, the common keys,
+ * are probed without going through the generic equality.
+ *
+ *   var ages = map();
+ *   ages.set("lox", 10);
+ *   print ages.get("lox");
+ */
+class LoxMap implements NativeObject, Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final List<String> METHODS = Arrays.asList("get", "set", "has", "remove", "size", "keys");
+  private static final int INITIAL_CAPACITY = 8;
+
+  // stands in for a nil key, since a null key marks an empty slot.
+  private enum Sentinel { NIL }
+
+  // slots depend on identity hash codes, which don't survive serialization,
+  // so the table is written as a list of entries and rebuilt on read.
+  private transient Object[] keys = new Object[INITIAL_CAPACITY];
+  private transient Object[] values = new Object[INITIAL_CAPACITY];
+  private transient int size = 0;
+  // made on first read and kept, so a call doesn't allocate its function.
+  // Methods aren't snapshotted, a restored LoxMap makes them again.
+  private transient NativeFunction[] methods;
+
+  @Override
+  public Object get(Token name) {
+    int index = METHODS.indexOf(name.lexeme);
+    if (index < 0) {
+      throw new RunTimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+    // two threads may both make a method, either one will do.
+    NativeFunction[] made = methods;
+    if (made == null) made = methods = new NativeFunction[METHODS.size()];
+    if (made[index] == null) made[index] = method(name.lexeme);
+    return made[index];
+  }
+
+  private NativeFunction method(String name) {
+    switch (name) {
+      case "get":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            int slot = find(key(arguments.get(0)));
+            return slot >= 0 ? values[slot] : null;
+          }
+        };
+      case "set":
+        return new NativeFunction(2) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            Object value = arguments.get(1);
+            put(key(arguments.get(0)), value);
+            return value;
+          }
+        };
+      case "has":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return find(key(arguments.get(0))) >= 0;
+          }
+        };
+      case "remove":
+        return new NativeFunction(1) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return remove(key(arguments.get(0)));
+          }
+        };
+      case "size":
+        return new NativeFunction(0) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            return LoxNumber.of(size);
+          }
+        };
+      case "keys":
+        return new NativeFunction(0) {
+          @Override
+          public Object call(Interpreter interpreter, List<Object> arguments) {
+            LoxList list = interpreter.newList();
+            for (Object key : keys) {
+              if (key != null) list.add(key == Sentinel.NIL ? null : key);
+            }
+            return list;
+          }
+        };
+      default:
+        throw new AssertionError(name);
+    }
+  }
+
+  /**
+   * normalize a Lox value into the form it is stored and compared in.
+   */
+  private static Object key(Object value) {
+    if (value == null) return Sentinel.NIL;
+    if (value instanceof LoxString) return value.toString();
+    return value;
+  }
+
+  private static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * return the slot holding key, or the complement of the empty slot where
+   * the probe for key stopped.
+   */
+  private int find(Object key) {
+    int mask = keys.length - 1;
+    if (key instanceof String) {
+      for (int i = mix(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+        Object candidate = keys[i];
+        if (candidate == null) return ~i;
+        if (candidate == key || (candidate instanceof String && candidate.equals(key))) return i;
+      }
+    }
+    if (key instanceof Long) {
+      for (int i = mix(key.hashCode()) & mask; ; i = (i + 1) & mask) {
+        Object candidate = keys[i];
+        if (candidate == null) return ~i;
+        if (candidate == key || (candidate instanceof Long && candidate.equals(key))) return i;
+      }
+    }
+    if (key instanceof Double) {
+      // Double.equals semantics, the same as Lox `==` on numbers.
+      long bits = Double.doubleToLongBits((double) key);
+      for (int i = mix(Long.hashCode(bits)) & mask; ; i = (i + 1) & mask) {
+        Object candidate = keys[i];
+        if (candidate == null) return ~i;
+        if (candidate instanceof Double && Double.doubleToLongBits((double) candidate) == bits) return i;
+      }
+    }
+    for (int i = mix(hash(key)) & mask; ; i = (i + 1) & mask) {
+      Object candidate = keys[i];
+      if (candidate == null) return ~i;
+      if (Interpreter.isEqual(candidate, key)) return i;
+    }
+  }
+
+  /**
+   * the hash find uses for the key, whichever path it takes.
+   */
+  private static int hash(Object key) {
+    if (key instanceof Double) return Long.hashCode(Double.doubleToLongBits((double) key));
+    return key.hashCode();
+  }
+
+  private void put(Object key, Object value) {
+    int slot = find(key);
+    if (slot >= 0) {
+      values[slot] = value;
+      return;
+    }
+    if ((size + 1) * 3 > keys.length * 2) {
+      grow();
+      slot = find(key);
+    }
+    keys[~slot] = key;
+    values[~slot] = value;
+    size++;
+  }
+
+  private void grow() {
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new Object[oldKeys.length * 2];
+    values = new Object[oldValues.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = ~find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * remove key and return its value, shifting the entries that probed past it
+   * back so no tombstone is needed.
+   */
+  private Object remove(Object key) {
+    int slot = find(key);
+    if (slot < 0) return null;
+    Object removed = values[slot];
+    int mask = keys.length - 1;
+    int hole = slot;
+    for (int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+      int home = mix(hash(keys[i])) & mask;
+      // move the entry into the hole unless its home lies cyclically in (hole, i].
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        keys[hole] = keys[i];
+        values[hole] = values[i];
+        hole = i;
+      }
+    }
+    keys[hole] = null;
+    values[hole] = null;
+    size--;
+    return removed;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        out.writeObject(keys[i]);
+        out.writeObject(values[i]);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    keys = new Object[INITIAL_CAPACITY];
+    values = new Object[INITIAL_CAPACITY];
+    int entries = in.readInt();
+    for (int i = 0; i < entries; i++) {
+      Object key = in.readObject();
+      put(key, in.readObject());
+    }
+  }
+
+  @Override
+  public String toString() {
+    Set<Object> printing = LoxList.PRINTING.get();
+    if (!printing.add(this)) return "{...}";
+    try {
+      StringBuilder builder = new StringBuilder("{");
+      boolean first = true;
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == null) continue;
+        if (!first) builder.append(", ");
+        first = false;
+        builder.append(Interpreter.stringify(keys[i] == Sentinel.NIL ? null : keys[i]))
+            .append(": ")
+            .append(Interpreter.stringify(values[i]));
+      }
+      return builder.append("}").toString();
+    } finally {
+      printing.remove(this);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package lox;
+
+/**
+ * Arithmetic on Lox numbers.
+ *
+ * A Lox number is a double, but integral ones are kept as a Long so counters
+ * and indices skip floating point and mostly hit a cache of boxes. A number is
+ * a Long exactly when it is integral, within +-2^53 and not -0.0, and a Double
+ * otherwise. Every number the interpreter makes goes through of(), so the same
+ * number always has the same class, and equals(), hashCode() and memo keys
+ * keep working on the boxes as they are.
+ *
+ * Long operations give the result the double operation would: within +-2^53
+ * every integer is an exact double, and anything that could leave that range,
+ * overflow or become fractional is done in double instead.
+ */
+final class LoxNumber {
+  // the largest magnitude up to which every integer is an exact double.
+  static final long MAX_EXACT = 1L << 53;
+  // operands below this multiply without overflowing a long.
+  private static final long MAX_FACTOR = 1L << 31;
+
+  // loop counters and indices mostly stay small, Long.valueOf only caches up to 127.
+  private static final Long[] SMALL = new Long[1024];
+
+  static {
+    for (int i = 0; i < SMALL.length; i++) {
+      SMALL[i] = (long) i;
+    }
+  }
+
+  private LoxNumber() {
+  }
+
+  static boolean isNumber(Object value) {
+    return value instanceof Long || value instanceof Double;
+  }
+
+  static double toDouble(Object number) {
+    return ((Number) number).doubleValue();
+  }
+
+  static Object of(double number) {
+    long integer = (long) number;
+    if (integer == number && Math.abs(integer) <= MAX_EXACT
+        && (integer != 0 || Double.doubleToRawLongBits(number) == 0L)) {
+      return of(integer);
+    }
+    return number;
+  }
+
+  static Object of(long number) {
+    if (number >= 0 && number < SMALL.length) return SMALL[(int) number];
+    if (Math.abs(number) > MAX_EXACT) return of((double) number);
+    return number;
+  }
+
+  static Object add(Object left, Object right) {
+    // both within +-2^53, the sum can't overflow.
+    if (left instanceof Long && right instanceof Long) return of((long) left + (long) right);
+    return of(toDouble(left) + toDouble(right));
+  }
+
+  static Object subtract(Object left, Object right) {
+    if (left instanceof Long && right instanceof Long) return of((long) left - (long) right);
+    return of(toDouble(left) - toDouble(right));
+  }
+
+  static Object multiply(Object left, Object right) {
+    if (left instanceof Long && right instanceof Long) {
+      long a = (long) left;
+      long b = (long) right;
+      if (Math.abs(a) < MAX_FACTOR && Math.abs(b) < MAX_FACTOR) {
+        // 0 times a negative number is -0.0.
+        if ((a == 0 || b == 0) && (a | b) < 0) return -0.0;
+        return of(a * b);
+      }
+    }
+    return of(toDouble(left) * toDouble(right));
+  }
+
+  static Object divide(Object left, Object right) {
+    if (left instanceof Long && right instanceof Long) {
+      long a = (long) left;
+      long b = (long) right;
+      if (b != 0 && a % b == 0) {
+        if (a == 0 && b < 0) return -0.0;
+        return of(a / b);
+      }
+    }
+    return of(toDouble(left) / toDouble(right));
+  }
+
+  static Object negate(Object operand) {
+    if (operand instanceof Long) {
+      long number = (long) operand;
+      return number == 0 ? (Object) (-0.0) : of(-number);
+    }
+    return of(-(double) operand);
+  }
+
+  static boolean less(Object left, Object right) {
+    if (left instanceof Long && right instanceof Long) return (long) left < (long) right;
+    return toDouble(left) < toDouble(right);
+  }
+
+  static boolean lessEqual(Object left, Object right) {
+    if (left instanceof Long && right instanceof Long) return (long) left <= (long) right;
+    return toDouble(left) <= toDouble(right);
+  }
+}
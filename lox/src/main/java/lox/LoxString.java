@@ -0,0 +1,157 @@
+package lox;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A Lox string produced by `+`.
+ *
+ * Instead of copying both operands on every concatenation we keep them as the two
+ * halves of a rope, so building a string piece by piece is O(1) per `+`.
+ * The characters are only copied into one flat String, once, when somebody needs
+ * them as a whole: printing, equality or hashing.
+ *
+ * Short results are still concatenated eagerly, a rope node costs more than
+ * copying a handful of characters.
+ */
+final class LoxString implements CharSequence, Serializable {
+  private static final long serialVersionUID = 1L;
+  static final int FLAT_THRESHOLD = 64;
+
+  // String or LoxString, dropped once flat is set so the rope doesn't keep its
+  // characters twice. Another thread walking the rope meanwhile has read them
+  // already and keeps its own references.
+  private volatile CharSequence left;
+  private volatile CharSequence right;
+  private final int length;
+  // set by whichever thread flattens first, every thread computes the same String.
+  // Written before the halves are dropped, so a reader finding a half gone finds it.
+  private volatile String flat;
+
+  private LoxString(CharSequence left, CharSequence right, int length) {
+    this.left = left;
+    this.right = right;
+    this.length = length;
+  }
+
+  /**
+   * return left + right, as a String for short results and as a rope otherwise.
+   */
+  static CharSequence concat(CharSequence left, CharSequence right) {
+    if (left.length() == 0) return right;
+    if (right.length() == 0) return left;
+    int length = left.length() + right.length();
+    if (length <= FLAT_THRESHOLD) {
+      return left.toString().concat(right.toString());
+    }
+    return new LoxString(left, right, length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  /**
+   * copy every piece into one buffer, walking the rope with an explicit stack
+   * since a string built in a loop is a chain as long as the loop.
+   */
+  @Override
+  public String toString() {
+    String done = flat;
+    if (done != null) return done;
+    char[] buffer = new char[length];
+    // fill the buffer from the end, so right halves are popped first.
+    int position = length;
+    Deque<CharSequence> pieces = new ArrayDeque<>();
+    pieces.push(this);
+    while (!pieces.isEmpty()) {
+      CharSequence piece = pieces.pop();
+      String text;
+      if (piece instanceof LoxString) {
+        LoxString rope = (LoxString) piece;
+        text = rope.flat;
+        if (text == null) {
+          CharSequence left = rope.left;
+          CharSequence right = rope.right;
+          if (left != null && right != null) {
+            pieces.push(left);
+            pieces.push(right);
+            continue;
+          }
+          // flattened since we looked.
+          text = rope.flat;
+        }
+      } else {
+        text = piece.toString();
+      }
+      position -= text.length();
+      text.getChars(0, text.length(), buffer, position);
+    }
+    String text = new String(buffer);
+    flat = text;
+    left = null;
+    right = null;
+    return text;
+  }
+
+  /**
+   * write the characters piece by piece, in order, without flattening the rope.
+   */
+  void writeTo(OutputSink out) {
+    Deque<CharSequence> pieces = new ArrayDeque<>();
+    pieces.push(this);
+    while (!pieces.isEmpty()) {
+      CharSequence piece = pieces.pop();
+      if (piece instanceof LoxString) {
+        LoxString rope = (LoxString) piece;
+        String text = rope.flat;
+        if (text == null) {
+          CharSequence left = rope.left;
+          CharSequence right = rope.right;
+          if (left != null && right != null) {
+            pieces.push(right);
+            pieces.push(left);
+            continue;
+          }
+          text = rope.flat;
+        }
+        out.write(text);
+        continue;
+      }
+      out.write(piece.toString());
+    }
+  }
+
+  /**
+   * snapshots store the flat String, serializing the rope itself would recurse
+   * once per concatenation.
+   */
+  private Object writeReplace() {
+    return toString();
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) return true;
+    if (!(object instanceof LoxString) && !(object instanceof String)) return false;
+    CharSequence other = (CharSequence) object;
+    return length == other.length() && toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+}
@@ -0,0 +1,97 @@
+package lox;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of one pure function, see PurityAnalyzer, keyed by the arguments
+ * they were computed from. It keeps at most capacity of them and forgets the
+ * least recently used one first.
+ *
+ * Arguments are compared the way Lox compares them, except that a key keeps
+ * -0 and 0 apart, a function may tell them apart by dividing by them. Objects
+ * are compared by identity, a pure function can't look inside them anyway.
+ *
+ * Calls may come from several threads, a parallel body or call(), so every
+ * access is synchronized.
+ */
+final class Memo {
+  // what get() returns for arguments it hasn't seen, nil is a result like any other.
+  static final Object MISS = new Object();
+  static final int DEFAULT_CAPACITY = 10_000;
+
+  final String name;
+  private final Map<Object, Object> results;
+  private long hits = 0;
+  private long misses = 0;
+
+  Memo(String name, int capacity) {
+    this.name = name;
+    this.results = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * memoized calls waiting for one result, a call and the ones it replaced
+   * with a tail call.
+   */
+  static final class Pending {
+    private final Memo memo;
+    private final Object key;
+    private final Pending next;
+
+    Pending(Memo memo, Object key, Pending next) {
+      this.memo = memo;
+      this.key = key;
+      this.next = next;
+    }
+
+    static Object complete(Pending pending, Object result) {
+      for (Pending call = pending; call != null; call = call.next) {
+        call.memo.put(call.key, result);
+      }
+      return result;
+    }
+  }
+
+  static Object key(List<Object> arguments) {
+    if (arguments.size() == 1) return normalize(arguments.get(0));
+    Object[] key = new Object[arguments.size()];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = normalize(arguments.get(i));
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * a string built by `+` is equal to the same characters from a literal.
+   */
+  private static Object normalize(Object value) {
+    return value instanceof LoxString ? value.toString() : value;
+  }
+
+  synchronized Object get(Object key) {
+    Object result = results.getOrDefault(key, MISS);
+    if (result == MISS) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return result;
+  }
+
+  synchronized void put(Object key, Object result) {
+    results.put(key, result);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return name + ": " + hits + " hits, " + misses + " misses, " + results.size() + " cached";
+  }
+}
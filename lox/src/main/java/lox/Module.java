@@ -0,0 +1,29 @@
+package lox;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * A parsed module, see ModuleLoader. The statements may be shared by several
+ * interpreters, each one resolves and runs them itself.
+ */
+final class Module implements Serializable {
+  private static final long serialVersionUID = 1L;
+  // absolute, a module is imported once per path.
+  final String path;
+  final List<Statement> statements;
+
+  Module(String path, List<Statement> statements) {
+    this.path = path;
+    this.statements = statements;
+  }
+
+  /**
+   * where the module's own imports are looked up.
+   */
+  Path directory() {
+    return Paths.get(path).getParent();
+  }
+}
@@ -0,0 +1,161 @@
+package lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the modules a program imports, before any of it runs.
+ *
+ * `import "lib/strings.lox";` names a file relative to the script importing it.
+ * Each module is read, scanned, parsed and optimized on the fork-join pool, and
+ * its own imports start loading as soon as it is parsed, so modules that don't
+ * depend on each other load in parallel. load() returns once everything the
+ * program reaches is parsed, with every Import pointing at its Module.
+ *
+ * Parsed modules stay cached in memory for the life of the loader, keyed by
+ * path and checked against the file's modification time and size, so a process
+ * loading many programs, a server, only parses a module again after it changes.
+ * Nothing is written to disk, every new process parses its modules again.
+ */
+final class ModuleLoader {
+
+  private static final class Entry {
+    final FileTime modified;
+    final long size;
+    final CompletableFuture<Module> module;
+
+    Entry(BasicFileAttributes attributes, CompletableFuture<Module> module) {
+      this.modified = attributes.lastModifiedTime();
+      this.size = attributes.size();
+      this.module = module;
+    }
+
+    boolean isCurrent(BasicFileAttributes attributes) {
+      return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+    }
+  }
+
+  private static final class Pending {
+    final Statement.Import statement;
+    final Path path;
+
+    Pending(Statement.Import statement, Path path) {
+      this.statement = statement;
+      this.path = path;
+    }
+  }
+
+  /**
+   * why a module couldn't be loaded, reported at the import naming it.
+   */
+  private static final class LoadError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    LoadError(String message) {
+      super(message, null, false, false);
+    }
+  }
+
+  private final Map<Path, Entry> cache = new ConcurrentHashMap<>();
+  // parse function bodies on first call, see LazyBody.
+  private final boolean lazy;
+
+  ModuleLoader(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * load every module statements import, directly or not, with paths relative
+   * to directory. Problems are reported like syntax errors. Modules parsed now
+   * intern their names in strings, the table of the program importing them,
+   * cached ones keep those of the program that first imported them.
+   *
+   * @return the modules reached, each one once.
+   */
+  List<Module> load(List<Statement> statements, Path directory, StringTable strings) {
+    List<Module> modules = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    Deque<Pending> pending = new ArrayDeque<>(imports(statements, directory));
+    while (!pending.isEmpty()) {
+      Pending next = pending.poll();
+      Module module;
+      try {
+        module = module(next.path, strings).join();
+      } catch (CompletionException e) {
+        Lox.error(next.statement.path, e.getCause().getMessage());
+        continue;
+      }
+      next.statement.module = module;
+      if (seen.add(module.path)) {
+        modules.add(module);
+        pending.addAll(imports(module.statements, module.directory()));
+      }
+    }
+    return modules;
+  }
+
+  private static List<Pending> imports(List<Statement> statements, Path directory) {
+    List<Pending> imports = new ArrayList<>();
+    // the parser only allows imports at the top level.
+    for (Statement statement : statements) {
+      if (statement instanceof Statement.Import) {
+        Statement.Import importStatement = (Statement.Import) statement;
+        imports.add(new Pending(importStatement, resolve(directory, importStatement)));
+      }
+    }
+    return imports;
+  }
+
+  private static Path resolve(Path directory, Statement.Import statement) {
+    return directory.resolve((String) statement.path.literal).toAbsolutePath().normalize();
+  }
+
+  /**
+   * the module at path, parsed by now or on its way.
+   */
+  private CompletableFuture<Module> module(Path path, StringTable strings) {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(new LoadError("Can't read module."));
+    }
+    return cache.compute(path, (key, entry) -> entry != null && entry.isCurrent(attributes)
+        ? entry
+        : new Entry(attributes, CompletableFuture.supplyAsync(() -> parse(path, strings)))).module;
+  }
+
+  private Module parse(Path path, StringTable strings) {
+    String source;
+    try {
+      source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+    } catch (IOException e) {
+      throw new LoadError("Can't read module.");
+    }
+    Scanner scanner = new Scanner(source, strings);
+    Parser parser = new Parser(scanner.scanTokens(), lazy);
+    List<Statement> statements = parser.parse();
+    if (scanner.hadError() || parser.hadError()) {
+      throw new LoadError("Can't import a module with errors.");
+    }
+    Module module = new Module(path.toString(), Optimizer.optimize(statements));
+    // start on the modules this one imports while load() gets to it.
+    for (Pending next : imports(module.statements, module.directory())) {
+      module(next.path, strings);
+    }
+    return module;
+  }
+}
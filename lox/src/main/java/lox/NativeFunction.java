@@ -0,0 +1,61 @@
+package lox;
+
+import java.io.NotSerializableException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * Base of the functions implemented in Java, like `clock` or the methods of the
+ * built-in collections.
+ *
+ * A native reports a misuse by throwing a RunTimeError without a token, the
+ * interpreter then blames the call expression.
+ */
+abstract class NativeFunction implements LoxCallable, Serializable {
+  private static final long serialVersionUID = 1L;
+  // the global it is defined as, null for methods of native objects.
+  final String name;
+  private final int arity;
+
+  NativeFunction(int arity) {
+    this(null, arity);
+  }
+
+  NativeFunction(String name, int arity) {
+    this.name = name;
+    this.arity = arity;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public String toString() {
+    return "native function";
+  }
+
+  /**
+   * a global native is written by name, and read back as the same native.
+   */
+  Object writeReplace() throws ObjectStreamException {
+    if (name == null) {
+      throw new NotSerializableException("method of a native object");
+    }
+    return new Reference(name);
+  }
+
+  private static final class Reference implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String name;
+
+    Reference(String name) {
+      this.name = name;
+    }
+
+    private Object readResolve() {
+      return Interpreter.findNative(name);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package lox;
+
+/**
+ * A value implemented in Java whose properties can be read with `.`, the way
+ * fields and methods are read from a LoxInstance.
+ */
+interface NativeObject {
+  Object get(Token name);
+}
@@ -0,0 +1,221 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the parsed statements, before they are resolved, replacing common
+ * patterns with superinstructions the interpreter executes in one step:
+ *
+ *   i < n                    VariableBinary, the left operand read in place
+ *   i = i + 1                CompoundAssign, one lookup for the read and the write
+ *   this.x = this.x + v      CompoundSet, the object evaluated once
+ *
+ * Every other node is copied as it is.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Statement.Visitor<Statement> {
+
+  static List<Statement> optimize(List<Statement> statements) {
+    return new Optimizer().optimizeAll(statements);
+  }
+
+  private List<Statement> optimizeAll(List<Statement> statements) {
+    List<Statement> optimized = new ArrayList<>(statements.size());
+    for (Statement statement : statements) {
+      optimized.add(optimize(statement));
+    }
+    return optimized;
+  }
+
+  private Statement optimize(Statement statement) {
+    return statement == null ? null : statement.accept(this);
+  }
+
+  private Expr optimize(Expr expr) {
+    return expr == null ? null : expr.accept(this);
+  }
+
+  /**
+   * the operators the superinstructions fuse, all of them take numbers.
+   */
+  private static boolean isFusable(Token operator) {
+    switch (operator.type) {
+      case MINUS: case PLUS: case SLASH: case STAR:
+      case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * whether both expressions always evaluate to the same object: `this`, or the
+   * same variable, which resolve to the same binding inside one expression.
+   */
+  private static boolean sameObject(Expr left, Expr right) {
+    if (left instanceof Expr.This && right instanceof Expr.This) return true;
+    return left instanceof Expr.Variable && right instanceof Expr.Variable
+        && ((Expr.Variable) left).name.lexeme.equals(((Expr.Variable) right).name.lexeme);
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    if (expr.left instanceof Expr.Variable && isFusable(expr.operator)) {
+      return new Expr.VariableBinary(((Expr.Variable) expr.left).name, expr.operator, optimize(expr.right));
+    }
+    return new Expr.Binary(optimize(expr.left), expr.operator, optimize(expr.right));
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    if (expr.value instanceof Expr.Binary) {
+      Expr.Binary binary = (Expr.Binary) expr.value;
+      if (binary.left instanceof Expr.Variable && isFusable(binary.operator)
+          && ((Expr.Variable) binary.left).name.lexeme.equals(expr.name.lexeme)) {
+        return new Expr.CompoundAssign(expr.name, binary.operator, optimize(binary.right));
+      }
+    }
+    return new Expr.Assign(expr.name, optimize(expr.value));
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    if (expr.value instanceof Expr.Binary) {
+      Expr.Binary binary = (Expr.Binary) expr.value;
+      if (binary.left instanceof Expr.Get && isFusable(binary.operator)) {
+        Expr.Get get = (Expr.Get) binary.left;
+        if (get.name.lexeme.equals(expr.name.lexeme) && sameObject(expr.object, get.object)) {
+          return new Expr.CompoundSet(expr.object, expr.name, binary.operator, optimize(binary.right));
+        }
+      }
+    }
+    return new Expr.Set(optimize(expr.object), expr.name, optimize(expr.value));
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+    for (Expr argument : expr.arguments) {
+      arguments.add(optimize(argument));
+    }
+    return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    return new Expr.Get(optimize(expr.object), expr.name);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitSuperExpr(Expr.Super expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    return new Expr.Grouping(optimize(expr.expression));
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    return new Expr.Unary(expr.operator, optimize(expr.right));
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    return new Expr.Logical(optimize(expr.left), expr.operator, optimize(expr.right));
+  }
+
+  @Override
+  public Expr visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitCompoundSetExpr(Expr.CompoundSet expr) {
+    return expr;
+  }
+
+  @Override
+  public Statement visitExpressionStatement(Statement.Expression statement) {
+    return new Statement.Expression(optimize(statement.expression));
+  }
+
+  @Override
+  public Statement visitFunctionStatement(Statement.Function statement) {
+    // a lazy body is optimized once it is parsed, see LazyBody.
+    if (statement.body == null) return statement;
+    return new Statement.Function(statement.name, statement.params, optimizeAll(statement.body));
+  }
+
+  @Override
+  public Statement visitPrintStatement(Statement.Print statement) {
+    return new Statement.Print(optimize(statement.expression));
+  }
+
+  @Override
+  public Statement visitVarStatement(Statement.Var statement) {
+    return new Statement.Var(statement.name, optimize(statement.initializer));
+  }
+
+  @Override
+  public Statement visitBlockStatement(Statement.Block statement) {
+    return new Statement.Block(optimizeAll(statement.statements));
+  }
+
+  @Override
+  public Statement visitClassStatement(Statement.Class statement) {
+    List<Statement.Function> methods = new ArrayList<>(statement.methods.size());
+    for (Statement.Function method : statement.methods) {
+      methods.add((Statement.Function) optimize(method));
+    }
+    return new Statement.Class(statement.name, statement.superclass, methods);
+  }
+
+  @Override
+  public Statement visitIfStatement(Statement.If statement) {
+    return new Statement.If(optimize(statement.condition), optimize(statement.thenBranch),
+        optimize(statement.elseBranch));
+  }
+
+  @Override
+  public Statement visitWhileStatement(Statement.While statement) {
+    return new Statement.While(optimize(statement.condition), optimize(statement.body));
+  }
+
+  @Override
+  public Statement visitParallelStatement(Statement.Parallel statement) {
+    return new Statement.Parallel(statement.keyword, statement.name,
+        optimize(statement.start), optimize(statement.end), optimize(statement.body));
+  }
+
+  @Override
+  public Statement visitReturnStatement(Statement.Return statement) {
+    return new Statement.Return(statement.keyword, optimize(statement.value));
+  }
+
+  @Override
+  public Statement visitImportStatement(Statement.Import statement) {
+    return statement;
+  }
+}
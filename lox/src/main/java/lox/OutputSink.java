@@ -0,0 +1,116 @@
+package lox;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Where `print` statements write to.
+ *
+ * Characters are collected in a buffer and only handed to the target writer when
+ * the buffer is full or when flush is called explicitly, so a script printing line
+ * after line does not pay for a locked, flushed write per line.
+ *
+ * To collect the output in memory, hand in a StringWriter and flush before reading it.
+ */
+public class OutputSink implements Flushable {
+  private static final int DEFAULT_CAPACITY = 8192;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final Writer target;
+  private final char[] buffer;
+  private int count = 0;
+
+  public OutputSink(Writer target) {
+    this(target, DEFAULT_CAPACITY);
+  }
+
+  public OutputSink(Writer target, int capacity) {
+    this.target = target;
+    this.buffer = new char[capacity];
+  }
+
+  public static OutputSink stdout() {
+    return new OutputSink(new OutputStreamWriter(System.out, Charset.defaultCharset()));
+  }
+
+  public void write(char c) {
+    if (count == buffer.length) drain();
+    buffer[count++] = c;
+  }
+
+  public void write(String text) {
+    int offset = 0;
+    int length = text.length();
+    while (offset < length) {
+      if (count == buffer.length) drain();
+      int chunk = Math.min(buffer.length - count, length - offset);
+      text.getChars(offset, offset + chunk, buffer, count);
+      count += chunk;
+      offset += chunk;
+    }
+  }
+
+  /**
+   * write a Lox number the way Lox prints it: integral numbers without the trailing ".0".
+   */
+  public void write(double number) {
+    // small integral numbers are written digit by digit, skipping Double.toString.
+    // -0.0 and numbers from 1e7 on print differently, leave them to the slow path.
+    if (number == (long) number && Math.abs(number) < 1e7
+        && Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(-0.0)) {
+      write((long) number);
+      return;
+    }
+    write(Interpreter.stringify(number));
+  }
+
+  private void write(long number) {
+    if (number < 0) {
+      write('-');
+      number = -number;
+    }
+    // at most 7 digits, see write(double)
+    if (buffer.length - count < 7) drain();
+    if (buffer.length < 7) {
+      write(Long.toString(number));
+      return;
+    }
+    int digits = 1;
+    for (long rest = number / 10; rest > 0; rest /= 10) digits++;
+    for (int i = count + digits - 1; i >= count; i--) {
+      buffer[i] = (char) ('0' + number % 10);
+      number /= 10;
+    }
+    count += digits;
+  }
+
+  public void newLine() {
+    write(LINE_SEPARATOR);
+  }
+
+  /**
+   * hand the buffered characters to the target, without flushing the target itself.
+   */
+  private void drain() {
+    try {
+      target.write(buffer, 0, count);
+      count = 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void flush() {
+    drain();
+    try {
+      target.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package lox;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The iterations of a parallel statement, run on the common ForkJoinPool.
+ *
+ * The range is halved until the pieces are small enough to give every worker a
+ * few of them. A piece runs its iterations in order on a forked Interpreter, each
+ * in a fresh environment holding the index. What it prints is buffered and
+ * appended to the parent's output when the piece is done, so lines never mix.
+ *
+ * The Resolver has made sure the body only writes variables it declares itself,
+ * and calls no function by name that writes any other, see Resolver.Effects.
+ * Instances, lists and maps reachable from it are shared, and it is up to the
+ * program to have iterations touch different ones, or different indices.
+ */
+final class ParallelLoop extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  private final Interpreter interpreter;
+  private final Statement.Parallel statement;
+  private final List<Statement> body;
+  private final Environment enclosing;
+  private final int start;
+  private final int end;
+  private final int grain;
+  // the first error any iteration threw, the others stop at their next iteration
+  private final AtomicReference<Throwable> failure;
+
+  private ParallelLoop(Interpreter interpreter, Statement.Parallel statement, List<Statement> body,
+                       Environment enclosing, int start, int end, int grain,
+                       AtomicReference<Throwable> failure) {
+    this.interpreter = interpreter;
+    this.statement = statement;
+    this.body = body;
+    this.enclosing = enclosing;
+    this.start = start;
+    this.end = end;
+    this.grain = grain;
+    this.failure = failure;
+  }
+
+  static void run(Interpreter interpreter, Statement.Parallel statement, Environment enclosing,
+                  int start, int end) {
+    int grain = Math.max(1, (end - start) / (ForkJoinPool.getCommonPoolParallelism() * 4));
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    ForkJoinPool.commonPool().invoke(new ParallelLoop(interpreter, statement,
+        Collections.singletonList(statement.body), enclosing, start, end, grain, failure));
+    Throwable error = failure.get();
+    if (error instanceof RuntimeException) throw (RuntimeException) error;
+    if (error instanceof Error) throw (Error) error;
+  }
+
+  @Override
+  protected void compute() {
+    if (end - start > grain) {
+      int middle = (start + end) >>> 1;
+      invokeAll(
+          new ParallelLoop(interpreter, statement, body, enclosing, start, middle, grain, failure),
+          new ParallelLoop(interpreter, statement, body, enclosing, middle, end, grain, failure));
+      return;
+    }
+    StringWriter printed = new StringWriter();
+    OutputSink out = new OutputSink(printed);
+    Interpreter worker = interpreter.fork(out);
+    try {
+      for (int i = start; i < end && failure.get() == null; i++) {
+        Environment iteration = worker.newEnvironment(enclosing);
+        iteration.define(statement.name.lexeme, LoxNumber.of(i));
+        worker.executeBlock(body, iteration);
+      }
+    } catch (RuntimeException | StackOverflowError error) {
+      failure.compareAndSet(null, error);
+    } finally {
+      out.flush();
+      interpreter.emit(printed.toString());
+    }
+  }
+}
@@ -1,17 +1,54 @@
 package lox;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import static lox.TokenType.*;
 
 public class Parser {
+  // tokens an expression can start with.
+  private static final Set<TokenType> OPERAND_START = EnumSet.of(
+      IDENTIFIER, STRING, NUMBER, TRUE, FALSE, NIL, THIS, SUPER, LEFT_PAREN, BANG, MINUS);
+  // tokens an expression can end with, bar ')', which also ends conditions.
+  private static final Set<TokenType> OPERAND_END = EnumSet.of(
+      IDENTIFIER, STRING, NUMBER, TRUE, FALSE, NIL, THIS);
+  // tokens that can't follow those: another operand, or a statement whose ';' is missing.
+  private static final Set<TokenType> NOT_AFTER_OPERAND = EnumSet.of(
+      IDENTIFIER, STRING, NUMBER, TRUE, FALSE, NIL, THIS, SUPER, BANG, RIGHT_BRACE,
+      CLASS, ELSE, FOR, FUN, IF, IMPORT, PARALLEL, PRINT, RETURN, VAR, WHILE);
+  // operators and keywords an expression has to follow.
+  private static final Set<TokenType> BEFORE_OPERAND = EnumSet.of(
+      PLUS, MINUS, STAR, SLASH, BANG, BANG_EQUAL, EQUAL, EQUAL_EQUAL,
+      GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, AND, OR, COMMA, PRINT);
+
   private final List<Token> tokens;
   private int current = 0;
+  // skip function bodies, see LazyBody.
+  private final boolean lazy;
+  private boolean hadError = false;
+  // blocks we are inside of, imports are only allowed outside all of them.
+  private int blockDepth = 0;
 
   Parser(List<Token> tokens) {
+    this(tokens, false);
+  }
+
+  Parser(List<Token> tokens, boolean lazy) {
     this.tokens = tokens;
+    this.lazy = lazy;
+  }
+
+  /**
+   * a parser for the body of a lazily parsed function, starting after its '{'.
+   */
+  Parser(List<Token> tokens, int start) {
+    this(tokens, true);
+    this.current = start;
   }
 
   public List<Statement> parse() {
@@ -22,8 +59,20 @@ public class Parser {
     return statements;
   }
 
+  /**
+   * the statements up to and including the '}' closing the block we are in.
+   */
+  List<Statement> body() {
+    return block();
+  }
+
+  boolean hadError() {
+    return hadError;
+  }
+
   private Statement declaration() {
     try {
+      if (match(IMPORT)) return importStatement();
       if (match(CLASS)) return classDeclaration();
       if (match(FUN)) return function("function");
       if (match(VAR)) return varDeclaration();
@@ -64,10 +113,100 @@ public class Parser {
     }
     consume(RIGHT_PAREN, "Expect ')' after parameters.");
     consume(LEFT_BRACE, "Expect '{' before " + type + " body.");
+    if (lazy) {
+      Statement.Function function = new Statement.Function(name, parameters, null);
+      function.lazy = skipBody();
+      return function;
+    }
     List<Statement> body = block();
     return new Statement.Function(name, parameters, body);
   }
 
+  /**
+   * step over a function body, matching its brackets and looking at each pair of
+   * neighbouring tokens, so most syntax errors in it are still reported before
+   * anything runs. What takes the grammar to see, an invalid assignment target
+   * say, is reported once the function is called and the body parsed.
+   */
+  private LazyBody skipBody() {
+    int start = current;
+    // the '(' and '{' not closed yet, the body's own '{' at the bottom.
+    Deque<TokenType> open = new ArrayDeque<>();
+    open.push(LEFT_BRACE);
+    // report only the first error, the ones after it often just follow from it.
+    boolean reported = false;
+    while (!isAtEnd()) {
+      Token token = advance();
+      String message = null;
+      Token at = token;
+      if (token.type == LEFT_PAREN || token.type == LEFT_BRACE) {
+        open.push(token.type);
+      } else if (token.type == RIGHT_PAREN) {
+        if (open.peek() == LEFT_PAREN) {
+          open.pop();
+        } else {
+          message = "Expect expression";
+        }
+      } else if (token.type == RIGHT_BRACE) {
+        // the '}' closes any '(' left open in its block.
+        if (open.peek() == LEFT_PAREN) {
+          message = "Expect ')' after expression.";
+          while (open.peek() == LEFT_PAREN) open.pop();
+        }
+        open.pop();
+      } else if (token.type == IMPORT) {
+        message = "Can only import at the top level of a script.";
+      }
+      if (message == null) {
+        message = misplaced(token.type, peek().type);
+        at = peek();
+      }
+      if (message != null && !reported) {
+        error(at, message);
+        reported = true;
+      }
+      if (open.isEmpty()) return new LazyBody(tokens, start, current - 1);
+    }
+    throw error(peek(), "Expect '}' after block.");
+  }
+
+  /**
+   * what is wrong with next following type, as the parser would put it, null
+   * when the two tokens alone don't tell.
+   */
+  private static String misplaced(TokenType type, TokenType next) {
+    switch (type) {
+      case DOT:
+        return next == IDENTIFIER ? null : "Expect property after '.'.";
+      case SUPER:
+        return next == DOT ? null : "Expect . after 'super'.";
+      case VAR:
+        return next == IDENTIFIER ? null : "Expect variable name";
+      case FUN:
+        return next == IDENTIFIER ? null : "Expect function name";
+      case CLASS:
+        return next == IDENTIFIER ? null : "Expect class name";
+      case IF: case WHILE: case FOR: case PARALLEL:
+        return next == LEFT_PAREN ? null : "Expect '(' after '" + type.name().toLowerCase() + "'.";
+      case LEFT_PAREN:
+        // a call, a grouping, parameters or the clauses of a for.
+        return OPERAND_START.contains(next) || next == RIGHT_PAREN || next == SEMICOLON || next == VAR
+            ? null : "Expect expression";
+    }
+    if (BEFORE_OPERAND.contains(type) && !OPERAND_START.contains(next)) return "Expect expression";
+    if (OPERAND_END.contains(type) && NOT_AFTER_OPERAND.contains(next)) return "Expect ';' after expression.";
+    return null;
+  }
+
+  private Statement importStatement() {
+    Token keyword = previous();
+    Token path = consume(STRING, "Expect module path after 'import'.");
+    consume(SEMICOLON, "Expect ';' after module path.");
+    if (blockDepth > 0) {
+      error(keyword, "Can only import at the top level of a script.");
+    }
+    return new Statement.Import(keyword, path);
+  }
 
   private Statement varDeclaration() {
     Token name = consume(IDENTIFIER, "Expect variable name");
@@ -84,6 +223,7 @@ public class Parser {
     // TODO: fill in more statement types later
     if (match(WHILE)) return whileStatement();
     if (match(FOR)) return forStatement();
+    if (match(PARALLEL)) return parallelStatement();
     if (match(IF)) return ifStatement();
     if (match(PRINT)) return printStateStatement();
     if (match(RETURN)) return returnStatement();
@@ -102,7 +242,7 @@ public class Parser {
       if (previous().type == SEMICOLON) return;
 
       switch (peek().type) {
-        case CLASS: case FOR: case FUN: case IF: case PRINT:
+        case CLASS: case FOR: case FUN: case IF: case IMPORT: case PARALLEL: case PRINT:
         case RETURN: case VAR: case WHILE:
           return;
       }
@@ -161,6 +301,25 @@ public class Parser {
   }
 
 
+  /**
+   * parallel (var i = start, end) body
+   * runs body once for every integer i from start up to, not including, end.
+   */
+  private Statement parallelStatement() {
+    Token keyword = previous();
+    consume(LEFT_PAREN, "Expect '(' after 'parallel'.");
+    consume(VAR, "Expect 'var' after '('.");
+    Token name = consume(IDENTIFIER, "Expect index variable name.");
+    consume(EQUAL, "Expect '=' after index variable name.");
+    Expr start = expression();
+    consume(COMMA, "Expect ',' after start of range.");
+    Expr end = expression();
+    consume(RIGHT_PAREN, "Expect ')' after parallel range.");
+    Statement body = statement();
+
+    return new Statement.Parallel(keyword, name, start, end, body);
+  }
+
   private Statement whileStatement() {
     consume(LEFT_PAREN, "Expect '(' after 'while'.");
     Expr condition = expression();
@@ -208,9 +367,11 @@ public class Parser {
 
   private List<Statement> block() {
     List<Statement> statements = new ArrayList<>();
+    blockDepth++;
     while (!check(RIGHT_BRACE) && !isAtEnd()) {
       statements.add(declaration());
     }
+    blockDepth--;
     consume(RIGHT_BRACE, "Expect '}' after block.");
     return statements;
   }
@@ -411,6 +572,7 @@ public class Parser {
   }
 
   private ParseError error(Token token, String message) {
+    hadError = true;
     Lox.error(token, message);
     return new ParseError();
   }
@@ -0,0 +1,131 @@
+package lox;
+
+/**
+ * A FlatInterpreter counting what every node of the program allocates, see
+ * AllocationProfiler and ProfilingInterpreter. Running with --flat and
+ * --profile-allocations.
+ *
+ * Nodes are indices here, each gets a site of its own, named after the tree
+ * node it was encoded from, on first use.
+ */
+final class ProfilingFlatInterpreter extends FlatInterpreter {
+  // the names of the node kinds, in the order of FlatAst's, as the tree interpreters name them.
+  private static final String[] NAMES = {
+      "binary", "call", "get", "set", "this", "super", "grouping", "literal", "unary", "variable", "assign",
+      "logical", "variablebinary", "compoundassign", "compoundset", "expression", "function", "print", "var",
+      "block", "class", "if", "while", "parallel", "return", "import"};
+
+  private final AllocationProfiler profiler;
+  private AllocationProfiler.Site[] sites;
+  // the site of the node running, which makes whatever is allocated now.
+  private AllocationProfiler.Site site;
+
+  ProfilingFlatInterpreter(OutputSink out, AllocationProfiler profiler) {
+    super(out);
+    this.profiler = profiler;
+  }
+
+  @Override
+  void execute(int node) {
+    AllocationProfiler.Site enclosing = site;
+    site = site(node);
+    super.execute(node);
+    site = enclosing;
+  }
+
+  @Override
+  Object evaluate(int node) {
+    AllocationProfiler.Site enclosing = site;
+    site = site(node);
+    Object value = super.evaluate(node);
+    site = enclosing;
+    return value;
+  }
+
+  private AllocationProfiler.Site site(int node) {
+    if (sites == null) sites = new AllocationProfiler.Site[ast.size()];
+    AllocationProfiler.Site site = sites[node];
+    if (site == null) {
+      site = sites[node] = new AllocationProfiler.Site(NAMES[ast.kinds[node]], line(node));
+    }
+    return site;
+  }
+
+  /**
+   * the source line of node, from the tokens it or the nodes in it keep, -1
+   * when there are none, see LineFinder.
+   */
+  private int line(int node) {
+    int token = ast.tokens[node];
+    if (token >= 0) return ast.lines[token];
+    switch (ast.kinds[node]) {
+      case FlatAst.BLOCK_STATEMENT: {
+        int list = ast.operand(node, FlatAst.BLOCK_STATEMENTS);
+        for (int i = 0; i < ast.size(list); i++) {
+          int line = line(ast.element(list, i));
+          if (line >= 0) return line;
+        }
+        return -1;
+      }
+      case FlatAst.EXPRESSION_STATEMENT:
+        return line(ast.operand(node, FlatAst.EXPRESSION_EXPRESSION));
+      case FlatAst.PRINT_STATEMENT:
+        return line(ast.operand(node, FlatAst.PRINT_EXPRESSION));
+      case FlatAst.IF_STATEMENT:
+        return line(ast.operand(node, FlatAst.IF_CONDITION));
+      case FlatAst.WHILE_STATEMENT:
+        return line(ast.operand(node, FlatAst.WHILE_CONDITION));
+      case FlatAst.GROUPING_EXPR:
+        return line(ast.operand(node, FlatAst.GROUPING_EXPRESSION));
+      default:
+        return -1;
+    }
+  }
+
+  @Override
+  AllocationProfiler profiler() {
+    return profiler;
+  }
+
+  @Override
+  Environment newEnvironment(Environment enclosing) {
+    return profiler.environment(site, enclosing);
+  }
+
+  @Override
+  LoxInstance newInstance(LoxClass loxClass) {
+    return profiler.count(site, Allocation.INSTANCE, 0, super.newInstance(loxClass));
+  }
+
+  @Override
+  LoxFunction bind(LoxFunction method, LoxInstance receiver) {
+    return profiler.count(site, Allocation.BOUND_METHOD, 0, super.bind(method, receiver));
+  }
+
+  @Override
+  LoxFunction newFunction(int node, Environment closure, boolean isInit) {
+    return profiler.count(site, Allocation.CLOSURE, 0, super.newFunction(node, closure, isInit));
+  }
+
+  @Override
+  CharSequence concat(CharSequence left, CharSequence right) {
+    CharSequence result = super.concat(left, right);
+    if (result == left || result == right) return result;
+    return profiler.count(site, Allocation.STRING, result.length(), result);
+  }
+
+  @Override
+  LoxList newList() {
+    return profiler.count(site, Allocation.LIST, 0, super.newList());
+  }
+
+  @Override
+  LoxMap newMap() {
+    return profiler.count(site, Allocation.MAP, 0, super.newMap());
+  }
+
+  @Override
+  LoxArray newArray(int length) {
+    return profiler.count(site, Allocation.ARRAY, length, super.newArray(length));
+  }
+}
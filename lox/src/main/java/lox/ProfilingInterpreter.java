@@ -0,0 +1,105 @@
+package lox;
+
+/**
+ * An interpreter counting what every node of the program allocates, see
+ * AllocationProfiler. Running with --profile-allocations.
+ *
+ * Like TracingInterpreter it overrides what it watches, here the methods
+ * making objects, so a plain Interpreter runs none of it. execute and evaluate
+ * name the node running. A node that throws stays named, so the frame a tail
+ * call makes, once its return has thrown, is counted at the return.
+ */
+class ProfilingInterpreter extends Interpreter {
+  private final AllocationProfiler profiler;
+  // the node running, which makes whatever is allocated now.
+  private Object node;
+
+  ProfilingInterpreter(OutputSink out, AllocationProfiler profiler) {
+    super(out);
+    this.profiler = profiler;
+  }
+
+  ProfilingInterpreter(OutputSink out, Snapshot snapshot, AllocationProfiler profiler) {
+    super(out, snapshot);
+    this.profiler = profiler;
+  }
+
+  private ProfilingInterpreter(ProfilingInterpreter parent, OutputSink out) {
+    super(parent, out);
+    this.profiler = parent.profiler;
+    this.node = parent.node;
+  }
+
+  /**
+   * parallel iterations count into the same profiler, from the parallel statement.
+   */
+  @Override
+  protected Interpreter fork(OutputSink out) {
+    return new ProfilingInterpreter(this, out);
+  }
+
+  @Override
+  protected void execute(Statement statement) {
+    Object enclosing = node;
+    node = statement;
+    super.execute(statement);
+    node = enclosing;
+  }
+
+  @Override
+  protected Object evaluate(Expr expr) {
+    Object enclosing = node;
+    node = expr;
+    Object value = super.evaluate(expr);
+    node = enclosing;
+    return value;
+  }
+
+  @Override
+  AllocationProfiler profiler() {
+    return profiler;
+  }
+
+  @Override
+  Environment newEnvironment(Environment enclosing) {
+    return profiler.environment(node, enclosing);
+  }
+
+  @Override
+  LoxInstance newInstance(LoxClass loxClass) {
+    return profiler.count(node, Allocation.INSTANCE, 0, super.newInstance(loxClass));
+  }
+
+  @Override
+  LoxFunction bind(LoxFunction method, LoxInstance receiver) {
+    return profiler.count(node, Allocation.BOUND_METHOD, 0, super.bind(method, receiver));
+  }
+
+  @Override
+  LoxFunction newFunction(Statement.Function declaration, Environment closure, boolean isInit, boolean scopeless) {
+    return profiler.count(node, Allocation.CLOSURE, 0, super.newFunction(declaration, closure, isInit, scopeless));
+  }
+
+  @Override
+  CharSequence concat(CharSequence left, CharSequence right) {
+    CharSequence result = super.concat(left, right);
+    // adding an empty string makes nothing.
+    if (result == left || result == right) return result;
+    return profiler.count(node, Allocation.STRING, result.length(), result);
+  }
+
+  @Override
+  LoxList newList() {
+    return profiler.count(node, Allocation.LIST, 0, super.newList());
+  }
+
+  @Override
+  LoxMap newMap() {
+    return profiler.count(node, Allocation.MAP, 0, super.newMap());
+  }
+
+  @Override
+  LoxArray newArray(int length) {
+    return profiler.count(node, Allocation.ARRAY, length, super.newArray(length));
+  }
+}
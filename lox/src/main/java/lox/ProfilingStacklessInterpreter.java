@@ -0,0 +1,89 @@
+package lox;
+
+/**
+ * A StacklessInterpreter counting what every node of the program allocates,
+ * see AllocationProfiler and ProfilingInterpreter. Running with --stackless
+ * and --profile-allocations.
+ *
+ * Every node it takes a step further is named as the one allocating, so a
+ * call's frame is counted at the call and a tail call's at its return.
+ */
+class ProfilingStacklessInterpreter extends StacklessInterpreter {
+  private final AllocationProfiler profiler;
+  // the node taking a step, which makes whatever is allocated now.
+  private Object node;
+
+  ProfilingStacklessInterpreter(OutputSink out, int maxDepth, AllocationProfiler profiler) {
+    super(out, maxDepth);
+    this.profiler = profiler;
+  }
+
+  ProfilingStacklessInterpreter(OutputSink out, Snapshot snapshot, int maxDepth, AllocationProfiler profiler) {
+    super(out, snapshot, maxDepth);
+    this.profiler = profiler;
+  }
+
+  private ProfilingStacklessInterpreter(ProfilingStacklessInterpreter parent, OutputSink out) {
+    super(parent, out);
+    this.profiler = parent.profiler;
+    this.node = parent.node;
+  }
+
+  @Override
+  protected Interpreter fork(OutputSink out) {
+    return new ProfilingStacklessInterpreter(this, out);
+  }
+
+  @Override
+  void advance(Object node, int state) {
+    this.node = node;
+    super.advance(node, state);
+  }
+
+  @Override
+  AllocationProfiler profiler() {
+    return profiler;
+  }
+
+  @Override
+  Environment newEnvironment(Environment enclosing) {
+    return profiler.environment(node, enclosing);
+  }
+
+  @Override
+  LoxInstance newInstance(LoxClass loxClass) {
+    return profiler.count(node, Allocation.INSTANCE, 0, super.newInstance(loxClass));
+  }
+
+  @Override
+  LoxFunction bind(LoxFunction method, LoxInstance receiver) {
+    return profiler.count(node, Allocation.BOUND_METHOD, 0, super.bind(method, receiver));
+  }
+
+  @Override
+  LoxFunction newFunction(Statement.Function declaration, Environment closure, boolean isInit, boolean scopeless) {
+    return profiler.count(node, Allocation.CLOSURE, 0, super.newFunction(declaration, closure, isInit, scopeless));
+  }
+
+  @Override
+  CharSequence concat(CharSequence left, CharSequence right) {
+    CharSequence result = super.concat(left, right);
+    if (result == left || result == right) return result;
+    return profiler.count(node, Allocation.STRING, result.length(), result);
+  }
+
+  @Override
+  LoxList newList() {
+    return profiler.count(node, Allocation.LIST, 0, super.newList());
+  }
+
+  @Override
+  LoxMap newMap() {
+    return profiler.count(node, Allocation.MAP, 0, super.newMap());
+  }
+
+  @Override
+  LoxArray newArray(int length) {
+    return profiler.count(node, Allocation.ARRAY, length, super.newArray(length));
+  }
+}
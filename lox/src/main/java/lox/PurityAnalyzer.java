@@ -0,0 +1,376 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the functions whose result depends on nothing but their arguments, so
+ * a call with arguments seen before can reuse the result, see Memo.
+ *
+ * A pure function is declared once at the top level of the program and never
+ * assigned to, and its body
+ *
+ *   reads only its parameters, its own locals and pure functions
+ *   calls only pure functions, by name
+ *   assigns only its own locals
+ *   prints nothing, touches no fields and declares no function or class
+ *
+ * Whether a function is pure depends on the functions it calls, so every
+ * candidate starts out pure and the ones using anything else are dropped
+ * until nothing changes.
+ */
+class PurityAnalyzer implements Expr.Visitor<Void>, Statement.Visitor<Void> {
+
+  private static final class Candidate {
+    final Statement.Function declaration;
+    // names the body reads from the globals, all of them have to be pure functions.
+    final Set<String> globals = new HashSet<>();
+    boolean impure = false;
+
+    Candidate(Statement.Function declaration) {
+      this.declaration = declaration;
+    }
+  }
+
+  // names assigned anywhere in the program, at any depth.
+  private final Set<String> assigned = new HashSet<>();
+  private final List<Set<String>> scopes = new ArrayList<>();
+  // the function being analyzed, null while only collecting assignments.
+  private Candidate current;
+
+  static Set<Statement.Function> pureFunctions(List<Statement> statements) {
+    PurityAnalyzer analyzer = new PurityAnalyzer();
+    Map<String, Integer> declarations = new HashMap<>();
+    Map<String, Candidate> candidates = new HashMap<>();
+    for (Statement statement : statements) {
+      Token name = declaredName(statement);
+      if (name != null) declarations.merge(name.lexeme, 1, Integer::sum);
+      if (statement instanceof Statement.Function) {
+        Candidate candidate = analyzer.analyze((Statement.Function) statement);
+        candidates.put(name.lexeme, candidate);
+      } else {
+        statement.accept(analyzer);
+      }
+    }
+
+    List<String> dropped = new ArrayList<>();
+    for (Map.Entry<String, Candidate> entry : candidates.entrySet()) {
+      String name = entry.getKey();
+      if (entry.getValue().impure || declarations.get(name) > 1 || analyzer.assigned.contains(name)) {
+        dropped.add(name);
+      }
+    }
+    do {
+      candidates.keySet().removeAll(dropped);
+      dropped.clear();
+      for (Map.Entry<String, Candidate> entry : candidates.entrySet()) {
+        if (!candidates.keySet().containsAll(entry.getValue().globals)) {
+          dropped.add(entry.getKey());
+        }
+      }
+    } while (!dropped.isEmpty());
+
+    Set<Statement.Function> pure = new HashSet<>();
+    for (Candidate candidate : candidates.values()) {
+      pure.add(candidate.declaration);
+    }
+    return pure;
+  }
+
+  private static Token declaredName(Statement statement) {
+    if (statement instanceof Statement.Function) return ((Statement.Function) statement).name;
+    if (statement instanceof Statement.Var) return ((Statement.Var) statement).name;
+    if (statement instanceof Statement.Class) return ((Statement.Class) statement).name;
+    return null;
+  }
+
+  private Candidate analyze(Statement.Function function) {
+    current = new Candidate(function);
+    beginScope();
+    for (Token param : function.params) {
+      declare(param);
+    }
+    visitBody(function);
+    endScope();
+    Candidate candidate = current;
+    current = null;
+    return candidate;
+  }
+
+  /**
+   * walk code that can't be part of the current function's result, only to
+   * collect its assignments.
+   */
+  private void collect(Runnable walk) {
+    Candidate enclosing = current;
+    List<Set<String>> enclosingScopes = new ArrayList<>(scopes);
+    current = null;
+    walk.run();
+    current = enclosing;
+    scopes.clear();
+    scopes.addAll(enclosingScopes);
+  }
+
+  /**
+   * a body not parsed yet may do anything, and assign any name followed by
+   * `=` in it.
+   */
+  private void skipLazy(Statement.Function function) {
+    impure();
+    List<Token> tokens = function.lazy.tokens();
+    for (int i = 0; i + 1 < tokens.size(); i++) {
+      if (tokens.get(i).type == TokenType.IDENTIFIER && tokens.get(i + 1).type == TokenType.EQUAL) {
+        assigned.add(tokens.get(i).lexeme);
+      }
+    }
+  }
+
+  private void visitBody(Statement.Function function) {
+    if (function.body == null) {
+      skipLazy(function);
+    } else {
+      visitAll(function.body);
+    }
+  }
+
+  private void visitAll(List<Statement> statements) {
+    for (Statement statement : statements) {
+      statement.accept(this);
+    }
+  }
+
+  private void visit(Expr expr) {
+    if (expr != null) expr.accept(this);
+  }
+
+  private void impure() {
+    if (current != null) current.impure = true;
+  }
+
+  private void beginScope() {
+    scopes.add(new HashSet<>());
+  }
+
+  private void endScope() {
+    scopes.remove(scopes.size() - 1);
+  }
+
+  private void declare(Token name) {
+    if (!scopes.isEmpty()) scopes.get(scopes.size() - 1).add(name.lexeme);
+  }
+
+  private boolean isLocal(Token name) {
+    for (Set<String> scope : scopes) {
+      if (scope.contains(name.lexeme)) return true;
+    }
+    return false;
+  }
+
+  private void read(Token name) {
+    if (current != null && !isLocal(name)) current.globals.add(name.lexeme);
+  }
+
+  private void write(Token name) {
+    assigned.add(name.lexeme);
+    if (current != null && !isLocal(name)) current.impure = true;
+  }
+
+  @Override
+  public Void visitBinaryExpr(Expr.Binary expr) {
+    visit(expr.left);
+    visit(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCallExpr(Expr.Call expr) {
+    // a function held in a local could be anything.
+    if (!(expr.callee instanceof Expr.Variable) || isLocal(((Expr.Variable) expr.callee).name)) {
+      impure();
+    }
+    visit(expr.callee);
+    for (Expr argument : expr.arguments) {
+      visit(argument);
+    }
+    return null;
+  }
+
+  @Override
+  public Void visitGetExpr(Expr.Get expr) {
+    impure();
+    visit(expr.object);
+    return null;
+  }
+
+  @Override
+  public Void visitSetExpr(Expr.Set expr) {
+    impure();
+    visit(expr.object);
+    visit(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visitThisExpr(Expr.This expr) {
+    impure();
+    return null;
+  }
+
+  @Override
+  public Void visitSuperExpr(Expr.Super expr) {
+    impure();
+    return null;
+  }
+
+  @Override
+  public Void visitGroupingExpr(Expr.Grouping expr) {
+    visit(expr.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitLiteralExpr(Expr.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Void visitUnaryExpr(Expr.Unary expr) {
+    visit(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitVariableExpr(Expr.Variable expr) {
+    read(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitAssignExpr(Expr.Assign expr) {
+    visit(expr.value);
+    write(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitLogicalExpr(Expr.Logical expr) {
+    visit(expr.left);
+    visit(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    read(expr.name);
+    visit(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    visit(expr.value);
+    read(expr.name);
+    write(expr.name);
+    return null;
+  }
+
+  @Override
+  public Void visitCompoundSetExpr(Expr.CompoundSet expr) {
+    impure();
+    visit(expr.object);
+    visit(expr.value);
+    return null;
+  }
+
+  @Override
+  public Void visitExpressionStatement(Statement.Expression statement) {
+    visit(statement.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitFunctionStatement(Statement.Function statement) {
+    // a closure could outlive the call and see its locals change.
+    impure();
+    declare(statement.name);
+    collect(() -> visitBody(statement));
+    return null;
+  }
+
+  @Override
+  public Void visitPrintStatement(Statement.Print statement) {
+    impure();
+    visit(statement.expression);
+    return null;
+  }
+
+  @Override
+  public Void visitVarStatement(Statement.Var statement) {
+    visit(statement.initializer);
+    declare(statement.name);
+    return null;
+  }
+
+  @Override
+  public Void visitBlockStatement(Statement.Block statement) {
+    beginScope();
+    visitAll(statement.statements);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitClassStatement(Statement.Class statement) {
+    impure();
+    declare(statement.name);
+    collect(() -> {
+      visit(statement.superclass);
+      for (Statement.Function method : statement.methods) {
+        visitBody(method);
+      }
+    });
+    return null;
+  }
+
+  @Override
+  public Void visitIfStatement(Statement.If statement) {
+    visit(statement.condition);
+    statement.thenBranch.accept(this);
+    if (statement.elseBranch != null) statement.elseBranch.accept(this);
+    return null;
+  }
+
+  @Override
+  public Void visitWhileStatement(Statement.While statement) {
+    visit(statement.condition);
+    statement.body.accept(this);
+    return null;
+  }
+
+  @Override
+  public Void visitParallelStatement(Statement.Parallel statement) {
+    visit(statement.start);
+    visit(statement.end);
+    beginScope();
+    declare(statement.name);
+    statement.body.accept(this);
+    endScope();
+    return null;
+  }
+
+  @Override
+  public Void visitReturnStatement(Statement.Return statement) {
+    visit(statement.value);
+    return null;
+  }
+
+  @Override
+  public Void visitImportStatement(Statement.Import statement) {
+    // the module's statements are analyzed along with the program's.
+    return null;
+  }
+}
@@ -1,9 +1,17 @@
 package lox;
 
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.function.Supplier;
 
 import static lox.FunctionType.INITIALIZER;
 
@@ -15,15 +23,173 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
   private final Stack<Map<String, Boolean>> scopes = new Stack<>();
   private FunctionType currentFunctionType = FunctionType.NONE;
   private ClassType currentClassType = ClassType.NONE;
+  // the scope holding the index of the innermost parallel statement, -1 outside one.
+  // iterations run concurrently, so they may only write what they declare themselves.
+  private int parallelScope = -1;
+  private boolean inParallelBody = false;
+  // what the functions declared so far assign, and the ones declared in each scope.
+  private Functions functions = new Functions();
+  private final Stack<Map<String, Effects>> functionScopes = new Stack<>();
+  // the function whose body is being resolved, null at the top level.
+  private Effects function;
+  // calls made from parallel bodies, checked once everything they may reach is resolved.
+  private final List<ParallelCall> parallelCalls = new ArrayList<>();
+  // statement lists being resolved, the outermost one checks parallelCalls.
+  private int resolving = 0;
+  // resolving a lazy body before its first call, only to learn what it assigns.
+  private final boolean analyzing;
+  // whether the function being resolved declares a function or class, at any
+  // depth, that closes over its environment.
+  private boolean closesOverScope = false;
+  private boolean hadError = false;
+  // the program being resolved flat, and where each node finds its name, see resolve(FlatAst).
+  private FlatAst ast;
+  private int[] depths;
+
+  /**
+   * where the resolver was when it met a function whose body isn't parsed
+   * yet, to pick up from there once it is, see LazyBody.
+   */
+  static final class Context implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final List<Map<String, Boolean>> scopes = new ArrayList<>();
+    private final List<Map<String, Effects>> functionScopes = new ArrayList<>();
+    // shared with the resolver that met the function, and its other lazy bodies.
+    private final Functions functions;
+    private final FunctionType functionType;
+    private final ClassType classType;
+    private final int parallelScope;
+
+    private Context(Resolver resolver) {
+      // later declarations in these scopes aren't visible from the body.
+      for (Map<String, Boolean> scope : resolver.scopes) {
+        scopes.add(new HashMap<>(scope));
+      }
+      for (Map<String, Effects> scope : resolver.functionScopes) {
+        functionScopes.add(new HashMap<>(scope));
+      }
+      this.functions = resolver.functions;
+      this.functionType = resolver.currentFunctionType;
+      this.classType = resolver.currentClassType;
+      this.parallelScope = resolver.parallelScope;
+    }
+  }
+
+  /**
+   * what a function's body assigns: the outermost scope it writes a variable in
+   * outside the function, -1 for a global, counting what the functions it calls
+   * by name write. Iterations of a parallel body run concurrently, so the body
+   * may not call a function writing outside it, see checkParallelCalls(). Calls
+   * of methods, classes and functions held in anything but the name they were
+   * declared with aren't followed.
+   */
+  static final class Effects implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // a Statement.Function, the node of a flat one, or null for a global name.
+    private final Object declaration;
+    // the scope of the function's own parameters and locals.
+    private final int base;
+    private final Set<Effects> calls = new HashSet<>();
+    private int outermost = Integer.MAX_VALUE;
+    // a lazy body isn't until it is called, or a parallel body may call it.
+    private boolean resolved = false;
+
+    private Effects(Object declaration, int base) {
+      this.declaration = declaration;
+      this.base = base;
+    }
+  }
+
+  /**
+   * the Effects of the functions in one program, shared by the resolvers of its
+   * lazy bodies, which lock it.
+   */
+  private static final class Functions implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Map<Object, Effects> declared = new HashMap<>();
+    // a global calls the function declared with its name, which may come after
+    // the calls of it.
+    private final Map<String, Effects> globals = new HashMap<>();
+
+    Effects of(Object declaration, int base) {
+      return declared.computeIfAbsent(declaration, key -> new Effects(key, base));
+    }
+
+    Effects global(String name) {
+      return globals.computeIfAbsent(name, key -> {
+        Effects global = new Effects(null, Integer.MAX_VALUE);
+        global.resolved = true;
+        return global;
+      });
+    }
+  }
+
+  // a parallel body calling a function by name.
+  private static final class ParallelCall {
+    final Token name;
+    final Effects callee;
+    final int parallelScope;
+
+    ParallelCall(Token name, Effects callee, int parallelScope) {
+      this.name = name;
+      this.callee = callee;
+      this.parallelScope = parallelScope;
+    }
+  }
 
   public Resolver(Interpreter interpreter) {
+    this(interpreter, false);
+  }
+
+  private Resolver(Interpreter interpreter, boolean analyzing) {
     this.interpreter = interpreter;
+    this.analyzing = analyzing;
+  }
+
+  /**
+   * resolve the body of a function parsed lazily, in the scopes its
+   * declaration saw. false when there were errors.
+   */
+  boolean resolveBody(Statement.Function function, List<Statement> body, Context context) {
+    // lazy bodies called from several threads at once learn about the same functions.
+    synchronized (context.functions) {
+      for (Map<String, Boolean> scope : context.scopes) {
+        scopes.push(new HashMap<>(scope));
+      }
+      for (Map<String, Effects> scope : context.functionScopes) {
+        functionScopes.push(new HashMap<>(scope));
+      }
+      functions = context.functions;
+      this.function = functions.of(function, scopes.size() - 1);
+      currentFunctionType = context.functionType;
+      currentClassType = context.classType;
+      parallelScope = context.parallelScope;
+      resolve(body);
+      this.function.resolved = true;
+      if (!closesOverScope) {
+        interpreter.resolveReusableFrame(function);
+      }
+      return !hadError;
+    }
+  }
+
+  /**
+   * resolve the statements of a module, when it is first imported. false when
+   * there were errors.
+   */
+  boolean resolveModule(List<Statement> statements) {
+    resolve(statements);
+    return !hadError;
   }
 
   protected void resolve(List<Statement> statements) {
+    resolving++;
     for(Statement statement : statements) {
       resolve(statement);
     }
+    if (--resolving == 0 && !analyzing) {
+      checkParallelCalls();
+    }
   }
 
   private void resolve(Statement statement) {
@@ -34,12 +200,327 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
     expr.accept(this);
   }
 
+  private void error(Token token, String message) {
+    hadError = true;
+    // a body analyzed early reports its errors when it is called.
+    if (!analyzing) {
+      Lox.error(token, message);
+    }
+  }
+
   private void beginScope() {
     scopes.push(new HashMap<>());
+    functionScopes.push(new HashMap<>());
   }
 
   private void endScope() {
     scopes.pop();
+    functionScopes.pop();
+  }
+
+  // What follows is shared by the tree and the flat resolver: the scopes and
+  // the checks of each kind of node, which find names by their lexemes. A flat
+  // program has tokens for errors only, so they are asked for when one is
+  // reported, see FlatAst.
+
+  /**
+   * declare name in the innermost scope, not defined yet. Calls of name are no
+   * longer calls of a function declared with it before.
+   */
+  private void declare(String name, Supplier<Token> token) {
+    if (scopes.isEmpty()) {
+      functions.global(name).calls.clear();
+      return;
+    }
+    Map<String, Boolean> scope = scopes.peek();
+    if (scope.containsKey(name)) {
+      error(token.get(), "Already a variable with same name in the scope");
+    }
+    // false means the variable has not been defined.
+    scope.put(name, false);
+    functionScopes.peek().remove(name);
+  }
+
+  private void define(String name) {
+    if (scopes.isEmpty()) return;
+    // true means the variable has been defined.
+    scopes.peek().put(name, true);
+  }
+
+  /**
+   * a function is declared with name, calls of the name are calls of it.
+   */
+  private void declareFunction(String name, Supplier<Token> token, Object declaration) {
+    closesOverScope = true;
+    declare(name, token);
+    define(name);
+    Effects effects = functions.of(declaration, scopes.size());
+    if (scopes.isEmpty()) {
+      Effects global = functions.global(name);
+      global.calls.clear();
+      global.calls.add(effects);
+    } else {
+      functionScopes.peek().put(name, effects);
+    }
+  }
+
+  /**
+   * how many scopes out name is read from, -1 for a global.
+   */
+  private int read(String name, Supplier<Token> token) {
+    // means the variable has not been defined
+    if (!scopes.isEmpty() && scopes.peek().get(name) == Boolean.FALSE) {
+      error(token.get(), "Can't read local variable in its own initializer.");
+    }
+    return depthOf(name);
+  }
+
+  /**
+   * how many scopes out name is assigned, -1 for a global. Iterations of a
+   * parallel body run concurrently, so they may only write what they declare
+   * themselves, and the function being resolved notes how far out it writes.
+   */
+  private int write(String name, Supplier<Token> token) {
+    int scope = scopeOf(name);
+    if (function != null && scope < function.base && scope < function.outermost) {
+      function.outermost = scope;
+    }
+    if (parallelScope >= 0 && scope < parallelScope) {
+      error(token.get(), "Can't assign to a variable declared outside a parallel body.");
+    }
+    return depthOf(name);
+  }
+
+  /**
+   * a call of the variable callee: the function being resolved calls what it
+   * names, and a parallel body may not call a function writing outside it,
+   * which checkParallelCalls() tells once all the functions are resolved.
+   */
+  private void call(String callee, Supplier<Token> token) {
+    int scope = scopeOf(callee);
+    Effects effects = scope < 0 ? functions.global(callee) : functionScopes.get(scope).get(callee);
+    if (effects == null) return;
+    if (function != null) {
+      function.calls.add(effects);
+    }
+    if (parallelScope >= 0) {
+      parallelCalls.add(new ParallelCall(token.get(), effects, parallelScope));
+    }
+  }
+
+  /**
+   * how many scopes out `this` is.
+   */
+  private int resolveThis(Supplier<Token> keyword) {
+    if (currentClassType == ClassType.NONE) {
+      error(keyword.get(), "Can't use 'this' outside of a class.");
+    }
+    return depthOf("this");
+  }
+
+  /**
+   * how many scopes out `super` is.
+   */
+  private int resolveSuper(Supplier<Token> keyword) {
+    if (currentClassType == ClassType.NONE) {
+      error(keyword.get(), "Can't use 'super' outside of a class");
+    } else if (currentClassType != ClassType.SUBCLASS) {
+      error(keyword.get(), "Can't use 'super' in a class wih no superclass");
+    }
+    return depthOf("super");
+  }
+
+  private void checkReturn(Supplier<Token> keyword, boolean hasValue) {
+    if (currentFunctionType == FunctionType.NONE) {
+      error(keyword.get(), "Cannot return from top-level");
+    } else if (inParallelBody) {
+      error(keyword.get(), "Can't return from inside a parallel body.");
+    }
+    if (hasValue && currentFunctionType == FunctionType.INITIALIZER) {
+      error(keyword.get(), "cannot return value from an initializer.");
+    }
+  }
+
+  /**
+   * what resolving a function, class or parallel body changes, saved by the
+   * begin methods below for the end ones to put back.
+   */
+  private static final class Enclosing {
+    final FunctionType functionType;
+    final ClassType classType;
+    final int parallelScope;
+    final boolean inParallelBody;
+    final boolean closesOverScope;
+    final Effects function;
+    // whether the begin method opened a scope.
+    final boolean scoped;
+
+    Enclosing(Resolver resolver, boolean scoped) {
+      this.functionType = resolver.currentFunctionType;
+      this.classType = resolver.currentClassType;
+      this.parallelScope = resolver.parallelScope;
+      this.inParallelBody = resolver.inParallelBody;
+      this.closesOverScope = resolver.closesOverScope;
+      this.function = resolver.function;
+      this.scoped = scoped;
+    }
+  }
+
+  /**
+   * begin resolving the body of a function, in a scope of its own when scoped.
+   * The parameters are declared in it next.
+   */
+  private Enclosing beginFunction(Object declaration, FunctionType functionType, boolean scoped) {
+    Enclosing enclosing = new Enclosing(this, scoped);
+    function = functions.of(declaration, scopes.size());
+    currentFunctionType = functionType;
+    inParallelBody = false;
+    closesOverScope = false;
+    if (scoped) {
+      beginScope();
+      // a method's call frame also holds `this`.
+      if (functionType == FunctionType.METHOD || functionType == INITIALIZER) {
+        scopes.peek().put("this", true);
+      }
+    }
+    return enclosing;
+  }
+
+  private void endFunction(Enclosing enclosing) {
+    if (enclosing.scoped) {
+      endScope();
+    }
+    currentFunctionType = enclosing.functionType;
+    inParallelBody = enclosing.inParallelBody;
+    closesOverScope = enclosing.closesOverScope;
+    function = enclosing.function;
+  }
+
+  /**
+   * begin resolving a class, with a superclass when superclass isn't null. The
+   * superclass is resolved next, then beginMethods().
+   */
+  private Enclosing beginClass(String name, Supplier<Token> token, String superclass, Supplier<Token> superclassToken) {
+    Enclosing enclosing = new Enclosing(this, superclass != null);
+    closesOverScope = true;
+    currentClassType = superclass == null ? ClassType.CLASS : ClassType.SUBCLASS;
+    declare(name, token);
+    define(name);
+    if (name.equals(superclass)) {
+      error(superclassToken.get(), "A class cannot inherit from itself.");
+    }
+    return enclosing;
+  }
+
+  /**
+   * `super` is in a scope around the methods, `this` in each method's own scope,
+   * see beginFunction().
+   */
+  private void beginMethods(Enclosing enclosing) {
+    if (enclosing.scoped) {
+      beginScope();
+      scopes.peek().put("super", true);
+    }
+  }
+
+  private static FunctionType methodType(String name) {
+    return name.equals("init") ? INITIALIZER : FunctionType.METHOD;
+  }
+
+  private void endClass(Enclosing enclosing) {
+    if (enclosing.scoped) {
+      endScope();
+    }
+    currentClassType = enclosing.classType;
+  }
+
+  /**
+   * begin resolving a parallel body, once its range is resolved. Every
+   * iteration gets its own environment holding the index.
+   */
+  private Enclosing beginParallel(String index, Supplier<Token> token) {
+    Enclosing enclosing = new Enclosing(this, true);
+    beginScope();
+    declare(index, token);
+    define(index);
+    parallelScope = scopes.size() - 1;
+    inParallelBody = true;
+    return enclosing;
+  }
+
+  private void endParallel(Enclosing enclosing) {
+    parallelScope = enclosing.parallelScope;
+    inParallelBody = enclosing.inParallelBody;
+    endScope();
+  }
+
+  /**
+   * how many scopes out from the innermost one name is declared, -1 when it
+   * is a global.
+   */
+  private int depthOf(String name) {
+    int scope = scopeOf(name);
+    return scope < 0 ? -1 : scopes.size() - 1 - scope;
+  }
+
+  /**
+   * the index of the innermost scope declaring name, -1 when it is a global.
+   */
+  private int scopeOf(String name) {
+    // we walk from the innermost scope to global
+    for (int i = scopes.size() - 1; i >= 0; i--) {
+      if (scopes.get(i).containsKey(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * report the calls from parallel bodies of functions writing outside them. A
+   * lazy body they may reach is parsed and resolved for it now, without errors,
+   * which its first call reports.
+   */
+  private void checkParallelCalls() {
+    if (parallelCalls.isEmpty()) return;
+    Set<Effects> reached = new HashSet<>();
+    Deque<Effects> pending = new ArrayDeque<>();
+    for (ParallelCall call : parallelCalls) {
+      pending.push(call.callee);
+    }
+    while (!pending.isEmpty()) {
+      Effects effects = pending.pop();
+      if (!reached.add(effects)) continue;
+      if (!effects.resolved) {
+        Statement.Function declaration = (Statement.Function) effects.declaration;
+        List<Statement> body = declaration.lazy.parsed();
+        if (body == null) {
+          effects.resolved = true;
+        } else {
+          new Resolver(interpreter, true).resolveBody(declaration, body, declaration.lazy.context());
+        }
+      }
+      pending.addAll(effects.calls);
+    }
+    // a function writes what the functions it calls write outside it, calls may go round.
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Effects effects : reached) {
+        for (Effects callee : effects.calls) {
+          if (callee.outermost < effects.base && callee.outermost < effects.outermost) {
+            effects.outermost = callee.outermost;
+            changed = true;
+          }
+        }
+      }
+    }
+    for (ParallelCall call : parallelCalls) {
+      if (call.callee.outermost < call.parallelScope) {
+        error(call.name, "Can't call a function assigning to a variable declared outside a parallel body.");
+      }
+    }
+    parallelCalls.clear();
   }
 
   @Override
@@ -55,6 +536,10 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
     for (Expr argument : expr.arguments) {
       resolve(argument);
     }
+    if (expr.callee instanceof Expr.Variable) {
+      Token name = ((Expr.Variable) expr.callee).name;
+      call(name.lexeme, () -> name);
+    }
     return null;
   }
 
@@ -73,22 +558,13 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
 
   @Override
   public Void visitThisExpr(Expr.This expr) {
-    if (currentClassType == ClassType.NONE) {
-      Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
-    }
-    resolveLocal(expr, expr.keyword);
+    resolveLocal(expr, resolveThis(() -> expr.keyword));
     return null;
   }
 
   @Override
   public Void visitSuperExpr(Expr.Super expr) {
-    if (currentClassType == ClassType.NONE) {
-      Lox.error(expr.keyword, "Can't use 'super' outside of a class");
-    }
-    else if (currentClassType != ClassType.SUBCLASS) {
-      Lox.error(expr.keyword, "Can't use 'super' in a class wih no superclass");
-    }
-    resolveLocal(expr, expr.keyword);
+    resolveLocal(expr, resolveSuper(() -> expr.keyword));
     return null;
   }
 
@@ -111,31 +587,20 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
 
   @Override
   public Void visitVariableExpr(Expr.Variable expr) {
-    // means the variable has not been defined
-    if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-      Lox.error(expr.name, "Can't read local variable in its own initializer.");
-    }
-    resolveLocal(expr, expr.name);
+    resolveLocal(expr, read(expr.name.lexeme, () -> expr.name));
     return null;
   }
 
-  private void resolveLocal(Expr expr, Token name) {
-    for (int i = scopes.size() - 1; i >= 0; i--) {
-      if (scopes.get(i).containsKey(name.lexeme)) {
-        // we walk from the innermost scope to global
-        // if we find the variable, we resolve it and pass in the number
-        // of scopes between the current innermost scope and the scope
-        // where the variable is found.
-        interpreter.resolve(expr, scopes.size() - 1 - i);
-        return;
-      }
+  private void resolveLocal(Expr expr, int depth) {
+    if (depth >= 0) {
+      interpreter.resolve(expr, depth);
     }
   }
 
   @Override
   public Void visitAssignExpr(Expr.Assign expr) {
     resolve(expr.value);
-    resolveLocal(expr, expr.name);
+    resolveLocal(expr, write(expr.name.lexeme, () -> expr.name));
     return null;
   }
 
@@ -146,6 +611,27 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitVariableBinaryExpr(Expr.VariableBinary expr) {
+    resolveLocal(expr, read(expr.name.lexeme, () -> expr.name));
+    resolve(expr.right);
+    return null;
+  }
+
+  @Override
+  public Void visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    resolve(expr.value);
+    resolveLocal(expr, write(expr.name.lexeme, () -> expr.name));
+    return null;
+  }
+
+  @Override
+  public Void visitCompoundSetExpr(Expr.CompoundSet expr) {
+    resolve(expr.value);
+    resolve(expr.object);
+    return null;
+  }
+
   @Override
   public Void visitExpressionStatement(Statement.Expression statement) {
     resolve(statement.expression);
@@ -154,23 +640,52 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
 
   @Override
   public Void visitFunctionStatement(Statement.Function statement) {
-    declare(statement.name);
-    declare(statement.name);
+    declareFunction(statement.name.lexeme, () -> statement.name, statement);
     resolveFunction(statement, FunctionType.FUNCTION);
     return null;
   }
 
   private void resolveFunction(Statement.Function statement, FunctionType functionType) {
-    FunctionType enclosingFunctionType = currentFunctionType;
-    currentFunctionType = functionType;
-    beginScope();
+    // a method's call frame also holds `this`, so methods always get their scope,
+    // and a body not parsed yet may declare anything.
+    boolean scoped = functionType == FunctionType.METHOD
+        || functionType == INITIALIZER
+        || !statement.params.isEmpty()
+        || statement.body == null
+        || declaresAnything(statement.body);
+    Enclosing enclosing = beginFunction(statement, functionType, scoped);
+    if (!scoped) {
+      interpreter.resolveScopeless(statement);
+    }
     for (Token param : statement.params) {
-      declare(param);
-      define(param);
+      declare(param.lexeme, () -> param);
+      define(param.lexeme);
     }
-    resolve(statement.body);
-    endScope();
-    currentFunctionType = enclosingFunctionType;
+    if (statement.body == null) {
+      statement.lazy.defer(new Context(this));
+    } else {
+      resolve(statement.body);
+      function.resolved = true;
+      if (!closesOverScope) {
+        interpreter.resolveReusableFrame(statement);
+      }
+    }
+    endFunction(enclosing);
+  }
+
+  /**
+   * whether the statements define a name directly in their own scope.
+   * a scope that defines nothing needs no environment at runtime.
+   */
+  private static boolean declaresAnything(List<Statement> statements) {
+    for (Statement statement : statements) {
+      if (statement instanceof Statement.Var
+          || statement instanceof Statement.Function
+          || statement instanceof Statement.Class) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -189,32 +704,22 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
    */
   @Override
   public Void visitVarStatement(Statement.Var statement) {
-    declare(statement.name);
+    declare(statement.name.lexeme, () -> statement.name);
     if (statement.initializer != null) {
       resolve(statement.initializer);
     }
-    define(statement.name);
+    define(statement.name.lexeme);
     return null;
   }
 
-  private void declare(Token name) {
-    if (scopes.isEmpty()) return;
-    Map<String, Boolean> scope = scopes.peek();
-    if (scope.containsKey(name.lexeme)) {
-      Lox.error(name, "Already a variable with same name in the scope");
-    }
-    // false means the variable has not been defined.
-    scope.put(name.lexeme, false);
-  }
-
-  private void define(Token name) {
-    if (scopes.isEmpty()) return;
-    // true means the variable has been defined.
-    scopes.peek().put(name.lexeme, true);
-  }
-
   @Override
   public Void visitBlockStatement(Statement.Block statement) {
+    if (!declaresAnything(statement.statements)) {
+      // nothing to shadow, the statements run in the enclosing scope.
+      interpreter.resolveScopeless(statement);
+      resolve(statement.statements);
+      return null;
+    }
     beginScope();
     resolve(statement.statements);
     endScope();
@@ -223,35 +728,17 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
 
   @Override
   public Void visitClassStatement(Statement.Class statement) {
-    ClassType enclosingClass = currentClassType;
-    currentClassType = ClassType.CLASS;
-    declare(statement.name);
-    define(statement.name);
-    if (statement.superclass != null && statement.name.lexeme.equals(statement.superclass.name.lexeme)) {
-       Lox.error(statement.superclass.name, "A class cannot inherit from itself.");
-    }
-    if (statement.superclass != null) {
-      currentClassType = ClassType.SUBCLASS;
-      resolve(statement.superclass);
-    }
-    if (statement.superclass != null) {
-      beginScope();
-      scopes.peek().put("super", true);
+    Expr.Variable superclass = statement.superclass;
+    Enclosing enclosing = beginClass(statement.name.lexeme, () -> statement.name,
+        superclass == null ? null : superclass.name.lexeme, () -> superclass.name);
+    if (superclass != null) {
+      resolve(superclass);
     }
-    beginScope();
-    scopes.peek().put("this", true);
+    beginMethods(enclosing);
     for (Statement.Function method : statement.methods) {
-      FunctionType functionType = FunctionType.METHOD;
-      if (method.name.lexeme.equals("init")) {
-        functionType = INITIALIZER;
-      }
-      resolveFunction(method, functionType);
+      resolveFunction(method, methodType(method.name.lexeme));
     }
-    endScope();
-    if (statement.superclass != null) {
-      endScope();
-    }
-    currentClassType = enclosingClass;
+    endClass(enclosing);
     return null;
   }
 
@@ -272,17 +759,206 @@ public class Resolver implements Expr.Visitor<Void>, Statement.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitParallelStatement(Statement.Parallel statement) {
+    resolve(statement.start);
+    resolve(statement.end);
+    Enclosing enclosing = beginParallel(statement.name.lexeme, () -> statement.name);
+    resolve(statement.body);
+    endParallel(enclosing);
+    return null;
+  }
+
   @Override
   public Void visitReturnStatement(Statement.Return statement) {
-    if (currentFunctionType == FunctionType.NONE) {
-      Lox.error(statement.keyword, "Cannot return from top-level");
-    }
+    checkReturn(() -> statement.keyword, statement.value != null);
     if (statement.value != null) {
-      if (currentFunctionType == FunctionType.INITIALIZER) {
-        Lox.error(statement.keyword, "cannot return value from an initializer.");
-      }
       resolve(statement.value);
+      // the caller's frame has nothing left to do once the call is made.
+      // an initializer returns `this` instead, and is an error anyway.
+      if (statement.value instanceof Expr.Call && !inParallelBody
+          && (currentFunctionType == FunctionType.FUNCTION || currentFunctionType == FunctionType.METHOD)) {
+        interpreter.resolveTailCall(statement);
+      }
     }
     return null;
   }
+
+  @Override
+  public Void visitImportStatement(Statement.Import statement) {
+    // the module is resolved when it runs, by the interpreter running it.
+    return null;
+  }
+
+  /**
+   * resolve a program encoded flat, with the same checks as the tree. Every
+   * block and function gets a scope, see FlatInterpreter.
+   *
+   * @return how many scopes out each variable, assignment, this and super
+   * node finds its name, -1 for globals and other nodes.
+   */
+  int[] resolve(FlatAst ast) {
+    this.ast = ast;
+    this.depths = new int[ast.size()];
+    Arrays.fill(depths, -1);
+    resolveFlatList(ast.root);
+    checkParallelCalls();
+    return depths;
+  }
+
+  private void resolveFlatList(int list) {
+    for (int i = 0; i < ast.size(list); i++) {
+      resolveFlat(ast.element(list, i));
+    }
+  }
+
+  private void resolveFlat(int node) {
+    switch (ast.kinds[node]) {
+      case FlatAst.BINARY_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.BINARY_LEFT));
+        resolveFlat(ast.operand(node, FlatAst.BINARY_RIGHT));
+        break;
+      case FlatAst.LOGICAL_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.LOGICAL_LEFT));
+        resolveFlat(ast.operand(node, FlatAst.LOGICAL_RIGHT));
+        break;
+      case FlatAst.CALL_EXPR: {
+        int callee = ast.operand(node, FlatAst.CALL_CALLEE);
+        resolveFlat(callee);
+        resolveFlatList(ast.operand(node, FlatAst.CALL_ARGUMENTS));
+        if (ast.kinds[callee] == FlatAst.VARIABLE_EXPR) {
+          call(ast.lexeme(callee), () -> ast.token(callee));
+        }
+        break;
+      }
+      case FlatAst.GET_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.GET_OBJECT));
+        break;
+      case FlatAst.SET_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.SET_VALUE));
+        resolveFlat(ast.operand(node, FlatAst.SET_OBJECT));
+        break;
+      case FlatAst.COMPOUND_SET_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.COMPOUND_SET_VALUE));
+        resolveFlat(ast.operand(node, FlatAst.COMPOUND_SET_OBJECT));
+        break;
+      case FlatAst.THIS_EXPR:
+        depths[node] = resolveThis(() -> ast.token(node));
+        break;
+      case FlatAst.SUPER_EXPR:
+        depths[node] = resolveSuper(() -> ast.token(node));
+        break;
+      case FlatAst.GROUPING_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.GROUPING_EXPRESSION));
+        break;
+      case FlatAst.UNARY_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.UNARY_RIGHT));
+        break;
+      case FlatAst.EXPRESSION_STATEMENT:
+        resolveFlat(ast.operand(node, FlatAst.EXPRESSION_EXPRESSION));
+        break;
+      case FlatAst.PRINT_STATEMENT:
+        resolveFlat(ast.operand(node, FlatAst.PRINT_EXPRESSION));
+        break;
+      case FlatAst.LITERAL_EXPR:
+        break;
+      case FlatAst.VARIABLE_EXPR:
+        depths[node] = read(ast.lexeme(node), () -> ast.token(node));
+        break;
+      case FlatAst.VARIABLE_BINARY_EXPR:
+        depths[node] = read(ast.lexeme(node), () -> ast.token(node));
+        resolveFlat(ast.operand(node, FlatAst.VARIABLE_BINARY_RIGHT));
+        break;
+      case FlatAst.ASSIGN_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.ASSIGN_VALUE));
+        depths[node] = write(ast.lexeme(node), () -> ast.token(node));
+        break;
+      case FlatAst.COMPOUND_ASSIGN_EXPR:
+        resolveFlat(ast.operand(node, FlatAst.COMPOUND_ASSIGN_VALUE));
+        depths[node] = write(ast.lexeme(node), () -> ast.token(node));
+        break;
+      case FlatAst.FUNCTION_STATEMENT:
+        declareFunction(ast.lexeme(node), () -> ast.token(node), node);
+        resolveFlatFunction(node, FunctionType.FUNCTION);
+        break;
+      case FlatAst.VAR_STATEMENT:
+        declare(ast.lexeme(node), () -> ast.token(node));
+        if (ast.operand(node, FlatAst.VAR_INITIALIZER) >= 0) {
+          resolveFlat(ast.operand(node, FlatAst.VAR_INITIALIZER));
+        }
+        define(ast.lexeme(node));
+        break;
+      case FlatAst.BLOCK_STATEMENT:
+        beginScope();
+        resolveFlatList(ast.operand(node, FlatAst.BLOCK_STATEMENTS));
+        endScope();
+        break;
+      case FlatAst.CLASS_STATEMENT:
+        resolveFlatClass(node);
+        break;
+      case FlatAst.IF_STATEMENT:
+        resolveFlat(ast.operand(node, FlatAst.IF_CONDITION));
+        resolveFlat(ast.operand(node, FlatAst.IF_THEN_BRANCH));
+        if (ast.operand(node, FlatAst.IF_ELSE_BRANCH) >= 0) {
+          resolveFlat(ast.operand(node, FlatAst.IF_ELSE_BRANCH));
+        }
+        break;
+      case FlatAst.WHILE_STATEMENT:
+        resolveFlat(ast.operand(node, FlatAst.WHILE_CONDITION));
+        resolveFlat(ast.operand(node, FlatAst.WHILE_BODY));
+        break;
+      case FlatAst.PARALLEL_STATEMENT:
+        resolveFlatParallel(node);
+        break;
+      case FlatAst.RETURN_STATEMENT:
+        checkReturn(() -> ast.token(node), ast.operand(node, FlatAst.RETURN_VALUE) >= 0);
+        if (ast.operand(node, FlatAst.RETURN_VALUE) >= 0) {
+          resolveFlat(ast.operand(node, FlatAst.RETURN_VALUE));
+        }
+        break;
+      case FlatAst.IMPORT_STATEMENT:
+        error(ast.token(node), "Can't run a script with imports flat.");
+        break;
+      default:
+        throw new IllegalStateException("Unknown node kind " + ast.kinds[node]);
+    }
+  }
+
+  private void resolveFlatFunction(int node, FunctionType functionType) {
+    Enclosing enclosing = beginFunction(node, functionType, true);
+    int params = ast.operand(node, FlatAst.FUNCTION_PARAMS);
+    for (int i = 0; i < ast.size(params); i++) {
+      int param = ast.element(params, i);
+      declare(ast.lexemes[param], () -> ast.tokenAt(param));
+      define(ast.lexemes[param]);
+    }
+    resolveFlatList(ast.operand(node, FlatAst.FUNCTION_BODY));
+    function.resolved = true;
+    endFunction(enclosing);
+  }
+
+  private void resolveFlatClass(int node) {
+    int superclass = ast.operand(node, FlatAst.CLASS_SUPERCLASS);
+    Enclosing enclosing = beginClass(ast.lexeme(node), () -> ast.token(node),
+        superclass < 0 ? null : ast.lexeme(superclass), () -> ast.token(superclass));
+    if (superclass >= 0) {
+      resolveFlat(superclass);
+    }
+    beginMethods(enclosing);
+    int methods = ast.operand(node, FlatAst.CLASS_METHODS);
+    for (int i = 0; i < ast.size(methods); i++) {
+      int method = ast.element(methods, i);
+      resolveFlatFunction(method, methodType(ast.lexeme(method)));
+    }
+    endClass(enclosing);
+  }
+
+  private void resolveFlatParallel(int node) {
+    resolveFlat(ast.operand(node, FlatAst.PARALLEL_START));
+    resolveFlat(ast.operand(node, FlatAst.PARALLEL_END));
+    int index = ast.operand(node, FlatAst.PARALLEL_NAME);
+    Enclosing enclosing = beginParallel(ast.lexemes[index], () -> ast.tokenAt(index));
+    resolveFlat(ast.operand(node, FlatAst.PARALLEL_BODY));
+    endParallel(enclosing);
+  }
 }
@@ -1,5 +1,7 @@
 package lox;
 
+import java.util.List;
+
 /**
  * Use Return as an thrown exception control flow.
  *
@@ -16,11 +18,24 @@ package lox;
  * we need to catch the return value at the outermost stack.
  */
 public class Return extends RuntimeException {
+  private static final long serialVersionUID = 1L;
   final Object value;
+  // a tail call still to make, in place of the call returning.
+  final LoxFunction callee;
+  final List<Object> arguments;
 
   public Return(Object value) {
     super(null, null, false, false);
     this.value = value;
+    this.callee = null;
+    this.arguments = null;
+  }
+
+  Return(LoxFunction callee, List<Object> arguments) {
+    super(null, null, false, false);
+    this.value = null;
+    this.callee = callee;
+    this.arguments = arguments;
   }
 
 }
@@ -1,9 +1,18 @@
 package lox;
 
 public class RunTimeError extends RuntimeException {
+  private static final long serialVersionUID = 1L;
   public final Token token;
   public RunTimeError(Token token, String message) {
     super(message);
     this.token = token;
   }
+
+  /**
+   * for natives, which don't know where they were called from.
+   * the interpreter rethrows it with the token of the call.
+   */
+  public RunTimeError(String message) {
+    this(null, message);
+  }
 }
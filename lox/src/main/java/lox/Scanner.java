@@ -8,10 +8,13 @@ import java.util.Map;
 public class Scanner {
   private static final Map<String, TokenType> keywords;
   private final String source;
+  // identifiers and string literals are interned, see StringTable.
+  private final StringTable strings;
   private List<Token> tokens = new ArrayList<>();
   private int start = 0;
   private int current = 0;
   private int line = 1;
+  private boolean hadError = false;
 
   static {
     keywords = new HashMap<>();
@@ -22,8 +25,10 @@ public class Scanner {
     keywords.put("for", TokenType.FOR);
     keywords.put("fun", TokenType.FUN);
     keywords.put("if", TokenType.IF);
+    keywords.put("import", TokenType.IMPORT);
     keywords.put("nil", TokenType.NIL);
     keywords.put("or", TokenType.OR);
+    keywords.put("parallel", TokenType.PARALLEL);
     keywords.put("print", TokenType.PRINT);
     keywords.put("return", TokenType.RETURN);
     keywords.put("super", TokenType.SUPER);
@@ -34,7 +39,12 @@ public class Scanner {
   }
 
   public Scanner(String source) {
+    this(source, new StringTable());
+  }
+
+  Scanner(String source, StringTable strings) {
     this.source = source;
+    this.strings = strings;
   }
 
   public List<Token> scanTokens() {
@@ -46,6 +56,15 @@ public class Scanner {
     return tokens;
   }
 
+  boolean hadError() {
+    return hadError;
+  }
+
+  private void error(String message) {
+    hadError = true;
+    Lox.error(line, message);
+  }
+
   private boolean isAtEnd() {
     return current >= source.length();
   }
@@ -95,7 +114,7 @@ public class Scanner {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Lox.error(line, "unexpected character .");
+          error("unexpected character .");
         }
         break;
     }
@@ -134,13 +153,13 @@ public class Scanner {
       advance();
     }
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+      error("Unterminated string.");
       return;
     }
     // scan over 2nd "
     advance();
 
-    final String value = source.substring(start + 1, current - 1);
+    final String value = strings.intern(source.substring(start + 1, current - 1));
     addToken(TokenType.STRING, value);
   }
 
@@ -164,7 +183,7 @@ public class Scanner {
       advance();
       while (isDigit(peek())) advance();
     }
-    addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+    addToken(TokenType.NUMBER, LoxNumber.of(Double.parseDouble(source.substring(start, current))));
   }
 
   private char peekNext() {
@@ -176,7 +195,10 @@ public class Scanner {
     while (isAlphaNumeric(peek())) advance();
     String text = source.substring(start, current);
     TokenType type = keywords.get(text);
-    if (type == null) type = TokenType.IDENTIFIER;
+    if (type == null) {
+      tokens.add(new Token(TokenType.IDENTIFIER, strings.intern(text), null, line));
+      return;
+    }
     addToken(type);
   }
 
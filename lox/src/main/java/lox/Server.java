@@ -0,0 +1,109 @@
+package lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs scripts sent on stdin one after another in one process, running with
+ * --server, so a caller with many short scripts pays for starting the JVM and
+ * warming up the JIT once.
+ *
+ * A request is a header line with the length of the script in bytes and,
+ * optionally, the script's path, which imports are relative to, then the
+ * script:
+ *
+ *   <length>[ <path>]\n<script>
+ *
+ * The reply is a header line with the status lox would have exited with and
+ * the lengths of what the script printed and of the errors it reported, then
+ * both of them:
+ *
+ *   <status> <output length> <errors length>\n<output><errors>
+ *
+ * Every script runs on an interpreter of its own, so nothing one defines is
+ * seen by the next; they only share the modules parsed so far, see
+ * ModuleLoader. The server stops at the end of its input, or after replying 64
+ * to a header it can't read.
+ */
+final class Server {
+  private static final Charset CHARSET = Charset.defaultCharset();
+
+  private Server() {
+  }
+
+  /**
+   * @return false when the server stopped at a bad request.
+   */
+  static boolean serve(InputStream input, OutputStream output) throws IOException {
+    InputStream in = new BufferedInputStream(input);
+    OutputStream out = new BufferedOutputStream(output);
+    // anything printed outside a request would corrupt the replies.
+    System.setOut(System.err);
+    while (true) {
+      String header = readLine(in);
+      if (header == null) return true;
+      int space = header.indexOf(' ');
+      int length;
+      try {
+        length = Integer.parseInt(space < 0 ? header : header.substring(0, space));
+      } catch (NumberFormatException e) {
+        length = -1;
+      }
+      if (length < 0) {
+        reply(out, 64, new byte[0], ("Bad request: " + header + "\n").getBytes(CHARSET));
+        return false;
+      }
+      byte[] script = in.readNBytes(length);
+      if (script.length < length) return true;
+      Path directory = space < 0
+          ? Paths.get("").toAbsolutePath()
+          : Paths.get(header.substring(space + 1)).toAbsolutePath().getParent();
+
+      ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+      ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+      int status;
+      try {
+        status = Lox.runIsolated(new String(script, CHARSET), directory, stdout, stderr);
+      } catch (StackOverflowError e) {
+        stderr.write("Stack overflow.\n".getBytes(CHARSET));
+        status = 70;
+      } catch (RuntimeException e) {
+        // a bug in the interpreter ends the script, not the server.
+        e.printStackTrace(new PrintStream(stderr, true, CHARSET));
+        status = 70;
+      }
+      reply(out, status, stdout.toByteArray(), stderr.toByteArray());
+    }
+  }
+
+  private static void reply(OutputStream out, int status, byte[] stdout, byte[] stderr) throws IOException {
+    out.write((status + " " + stdout.length + " " + stderr.length + "\n").getBytes(CHARSET));
+    out.write(stdout);
+    out.write(stderr);
+    out.flush();
+  }
+
+  /**
+   * a line without its '\n', or null at the end of the input.
+   */
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        if (line.size() == 0) return null;
+        break;
+      }
+      line.write(c);
+    }
+    return line.toString(CHARSET);
+  }
+}
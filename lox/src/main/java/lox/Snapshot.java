@@ -0,0 +1,70 @@
+package lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of an interpreter after running a prelude, written to a file so the
+ * prelude does not have to be scanned, parsed, resolved and run again.
+ *
+ * It holds the global environment, with the classes, functions and closures it
+ * reaches and their AST, plus what the resolver recorded about those AST nodes. Both
+ * go through one stream so the nodes keyed in locals are the very nodes the
+ * functions run. Natives are written by name.
+ *
+ * Every class written into a snapshot declares its serialVersionUID, so a
+ * snapshot survives a rebuild. Change one when the fields of its class change,
+ * older snapshots then fail to read rather than read wrongly.
+ *
+ *   lox --snapshot prelude.snapshot prelude.lox
+ *   lox --restore prelude.snapshot script.lox
+ */
+final class Snapshot implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  final GlobalEnvironment global;
+  final Map<Expr, Integer> locals;
+  final Set<Statement> scopeless;
+  final Set<Statement> tailCalls;
+  final Set<Statement> reusableFrames;
+  final Set<String> imported;
+
+  Snapshot(GlobalEnvironment global, Map<Expr, Integer> locals, Set<Statement> scopeless,
+           Set<Statement> tailCalls, Set<Statement> reusableFrames, Set<String> imported) {
+    this.global = global;
+    this.locals = locals;
+    this.scopeless = scopeless;
+    this.tailCalls = tailCalls;
+    this.reusableFrames = reusableFrames;
+    this.imported = imported;
+  }
+
+  void write(Path path) throws IOException {
+    try (ObjectOutputStream out = new ObjectOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+      out.writeObject(this);
+    } catch (NotSerializableException e) {
+      throw new IOException("Can't snapshot the " + e.getMessage() + " reachable from a global.", e);
+    }
+  }
+
+  static Snapshot read(Path path) throws IOException {
+    try (ObjectInputStream in = new ObjectInputStream(
+        new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+      return (Snapshot) in.readObject();
+    } catch (InvalidClassException | ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Snapshot " + path + " was not written by this version of lox.", e);
+    }
+  }
+}
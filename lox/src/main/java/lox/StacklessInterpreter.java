@@ -0,0 +1,596 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An interpreter keeping Lox calls off the Java stack, for deeply recursive
+ * programs: `lox --stackless script.lox`.
+ *
+ * Interpreter evaluates a node by evaluating its children recursively, so every
+ * Lox call costs a handful of Java frames and recursion ends in a
+ * StackOverflowError a few thousand calls deep. This one runs a loop over two
+ * arrays instead:
+ *
+ *   control   what is left to do, a node together with how far along it is,
+ *             an environment to go back to when a block ends, or a Frame
+ *             marking where a call returns to
+ *   values    the values computed so far and not used yet
+ *
+ * A node is taken off the control stack, pushes its children back on in front
+ * of itself with the next state, and finds their values on the value stack when
+ * it comes around again. A call pushes a Frame and the function's body, a
+ * return drops everything above the nearest Frame. A Lox call costs a Frame, its
+ * environment and a control slot per pending node, so depth is bounded by the
+ * heap and by maxDepth, which turns runaway recursion into a runtime error.
+ *
+ * The nodes without children to evaluate, like variables, literals and
+ * declarations, are still evaluated by Interpreter, as is everything a native
+ * does. Calls into Lox from outside the loop, call() or a parallel statement,
+ * start a loop of their own on the same stacks.
+ */
+class StacklessInterpreter extends Interpreter {
+  static final int DEFAULT_MAX_DEPTH = 1_000_000;
+
+  // what the control stack holds besides a node's state.
+  private static final int RESTORE = -1;
+  private static final int FRAME = -2;
+
+  /**
+   * where a call returns to.
+   */
+  private static final class Frame {
+    final Environment caller;
+    final LoxFunction function;
+    final Environment environment;
+    // the memoized calls waiting for the result, see Memo.
+    final Memo.Pending pending;
+
+    Frame(Environment caller, LoxFunction function, Environment environment, Memo.Pending pending) {
+      this.caller = caller;
+      this.function = function;
+      this.environment = environment;
+      this.pending = pending;
+    }
+  }
+
+  private final int maxDepth;
+  private final Step step = new Step();
+  private Object[] control = new Object[64];
+  private int[] states = new int[64];
+  private int controlTop = 0;
+  private Object[] values = new Object[64];
+  private int valueTop = 0;
+  private int depth = 0;
+  // where the innermost run() started, a return can't unwind past it
+  private int base = 0;
+
+  StacklessInterpreter(OutputSink out, int maxDepth) {
+    super(out);
+    this.maxDepth = maxDepth;
+  }
+
+  StacklessInterpreter(OutputSink out, Snapshot snapshot, int maxDepth) {
+    super(out, snapshot);
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * a child running parallel iterations, see Interpreter.fork().
+   */
+  StacklessInterpreter(StacklessInterpreter parent, OutputSink out) {
+    super(parent, out);
+    this.maxDepth = parent.maxDepth;
+  }
+
+  @Override
+  protected Interpreter fork(OutputSink out) {
+    return new StacklessInterpreter(this, out);
+  }
+
+  @Override
+  protected void execute(Statement statement) {
+    int base = controlTop;
+    push(statement, 0);
+    run(base, environment);
+  }
+
+  @Override
+  protected void executeBlock(List<Statement> statements, Environment environment) {
+    int base = controlTop;
+    pushAll(statements);
+    run(base, environment);
+  }
+
+  /**
+   * run until the control stack is back at base, in environment.
+   */
+  private void run(int base, Environment environment) {
+    Environment previous = this.environment;
+    int enclosingBase = this.base;
+    int valueBase = valueTop;
+    int depthBase = depth;
+    this.environment = environment;
+    this.base = base;
+    try {
+      while (controlTop > base) {
+        int top = --controlTop;
+        Object node = control[top];
+        int state = states[top];
+        control[top] = null;
+        if (state == RESTORE) {
+          this.environment = (Environment) node;
+        } else if (state == FRAME) {
+          // the body ran off its end
+          finish((Frame) node, null);
+        } else {
+          advance(node, state);
+        }
+      }
+    } finally {
+      if (controlTop > base) {
+        Arrays.fill(control, base, controlTop, null);
+        controlTop = base;
+      }
+      if (valueTop > valueBase) {
+        Arrays.fill(values, valueBase, valueTop, null);
+      }
+      valueTop = valueBase;
+      depth = depthBase;
+      this.base = enclosingBase;
+      this.environment = previous;
+    }
+  }
+
+  /**
+   * take node one step further, from state.
+   */
+  void advance(Object node, int state) {
+    step.state = state;
+    if (node instanceof Expr) {
+      ((Expr) node).accept(step);
+    } else {
+      ((Statement) node).accept(step);
+    }
+  }
+
+  private void push(Object node, int state) {
+    if (controlTop == control.length) {
+      control = Arrays.copyOf(control, controlTop * 2);
+      states = Arrays.copyOf(states, controlTop * 2);
+    }
+    control[controlTop] = node;
+    states[controlTop++] = state;
+  }
+
+  private void pushAll(List<Statement> statements) {
+    for (int i = statements.size() - 1; i >= 0; i--) {
+      push(statements.get(i), 0);
+    }
+  }
+
+  private void pushValue(Object value) {
+    if (valueTop == values.length) {
+      values = Arrays.copyOf(values, valueTop * 2);
+    }
+    values[valueTop++] = value;
+  }
+
+  private Object pop() {
+    Object value = values[--valueTop];
+    values[valueTop] = null;
+    return value;
+  }
+
+  private Object peek() {
+    return values[valueTop - 1];
+  }
+
+  private void enter(Expr.Call expr, LoxFunction function, List<Object> arguments) {
+    Memo memo = memo(function.declaration);
+    Memo.Pending pending = null;
+    if (memo != null) {
+      Object key = Memo.key(arguments);
+      Object cached = memo.get(key);
+      if (cached != Memo.MISS) {
+        pushValue(cached);
+        return;
+      }
+      pending = new Memo.Pending(memo, key, null);
+    }
+    if (depth == maxDepth) {
+      throw new RunTimeError(expr.paren, "Stack overflow.");
+    }
+    depth++;
+    Environment callee = function.environment(this, arguments);
+    push(new Frame(environment, function, callee, pending), FRAME);
+    environment = callee;
+    pushAll(function.body(this));
+  }
+
+  /**
+   * replace the current call with a call of function, see LoxFunction.call.
+   */
+  private void tailCall(LoxFunction function, List<Object> arguments) {
+    while (controlTop > base) {
+      int top = --controlTop;
+      Object node = control[top];
+      control[top] = null;
+      if (states[top] == FRAME) {
+        Frame frame = (Frame) node;
+        Memo.Pending pending = frame.pending;
+        Memo memo = memo(function.declaration);
+        if (memo != null) {
+          Object key = Memo.key(arguments);
+          Object cached = memo.get(key);
+          if (cached != Memo.MISS) {
+            finish(frame, cached);
+            return;
+          }
+          pending = new Memo.Pending(memo, key, pending);
+        }
+        Environment callee = function.environmentAfter(this, frame.function, frame.environment, arguments);
+        push(new Frame(frame.caller, function, callee, pending), FRAME);
+        environment = callee;
+        pushAll(function.body(this));
+        return;
+      }
+    }
+    throw new Return(function, arguments);
+  }
+
+  private void finish(Frame frame, Object value) {
+    depth--;
+    environment = frame.caller;
+    pushValue(Memo.Pending.complete(frame.pending, frame.function.result(value)));
+  }
+
+  /**
+   * drop everything the current call has left to do. a return with no frame in
+   * this loop belongs to whoever called executeBlock, see LoxFunction.call.
+   */
+  private void unwind(Object value) {
+    while (controlTop > base) {
+      int top = --controlTop;
+      Object node = control[top];
+      control[top] = null;
+      if (states[top] == FRAME) {
+        finish((Frame) node, value);
+        return;
+      }
+    }
+    throw new Return(value);
+  }
+
+  /**
+   * one step of a node, taking up where the node's state says it left off.
+   */
+  private final class Step implements Expr.Visitor<Void>, Statement.Visitor<Void> {
+    int state;
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.right, 0);
+        push(expr.left, 0);
+      } else {
+        Object right = pop();
+        pushValue(binary(expr.operator, pop(), right));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+      if (state == 0) {
+        push(expr, 1);
+        for (int i = expr.arguments.size() - 1; i >= 0; i--) {
+          push(expr.arguments.get(i), 0);
+        }
+        push(expr.callee, 0);
+        return null;
+      }
+      int count = expr.arguments.size();
+      List<Object> arguments = new ArrayList<>(count);
+      for (int i = valueTop - count; i < valueTop; i++) {
+        arguments.add(values[i]);
+      }
+      for (int i = 0; i < count; i++) pop();
+      LoxCallable function = callable(expr, pop(), count);
+      if (function instanceof LoxFunction) {
+        enter(expr, (LoxFunction) function, arguments);
+      } else if (function instanceof LoxClass) {
+        LoxClass loxClass = (LoxClass) function;
+        LoxInstance instance = newInstance(loxClass);
+        LoxFunction init = loxClass.findMethod("init");
+        if (init != null) {
+          enter(expr, bind(init, instance), arguments);
+        } else {
+          pushValue(instance);
+        }
+      } else {
+        pushValue(callAt(expr, function, arguments));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.object, 0);
+      } else {
+        pushValue(property(expr, pop()));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.object, 0);
+      } else if (state == 1) {
+        fieldsOf(peek(), expr.name);
+        push(expr, 2);
+        push(expr.value, 0);
+      } else {
+        Object value = pop();
+        ((LoxInstance) pop()).set(expr.name, value);
+        pushValue(value);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+      pushValue(StacklessInterpreter.this.visitThisExpr(expr));
+      return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+      pushValue(StacklessInterpreter.this.visitSuperExpr(expr));
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      push(expr.expression, 0);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      pushValue(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.right, 0);
+      } else {
+        pushValue(unary(expr.operator, pop()));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      pushValue(StacklessInterpreter.this.visitVariableExpr(expr));
+      return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.value, 0);
+      } else {
+        assign(expr, peek());
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.left, 0);
+        return null;
+      }
+      boolean truthy = isTruthy(peek());
+      if (expr.operator.type == TokenType.OR ? !truthy : truthy) {
+        pop();
+        push(expr.right, 0);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitVariableBinaryExpr(Expr.VariableBinary expr) {
+      if (state == 0) {
+        pushValue(lookUpVariable(expr.name, expr));
+        push(expr, 1);
+        push(expr.right, 0);
+      } else {
+        Object right = pop();
+        pushValue(binary(expr.operator, pop(), right));
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+      if (state == 0) {
+        pushValue(lookUpVariable(expr.name, expr));
+        push(expr, 1);
+        push(expr.value, 0);
+      } else {
+        Object operand = pop();
+        Object value = binary(expr.operator, pop(), operand);
+        assignVariable(expr.name, expr, value);
+        pushValue(value);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitCompoundSetExpr(Expr.CompoundSet expr) {
+      if (state == 0) {
+        push(expr, 1);
+        push(expr.object, 0);
+      } else if (state == 1) {
+        LoxInstance instance = fieldsOf(peek(), expr.name);
+        pushValue(instance.get(expr.name, StacklessInterpreter.this));
+        push(expr, 2);
+        push(expr.value, 0);
+      } else {
+        Object operand = pop();
+        Object value = binary(expr.operator, pop(), operand);
+        ((LoxInstance) pop()).set(expr.name, value);
+        pushValue(value);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStatement(Statement.Expression statement) {
+      if (state == 0) {
+        push(statement, 1);
+        push(statement.expression, 0);
+      } else {
+        pop();
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(Statement.Function statement) {
+      StacklessInterpreter.this.visitFunctionStatement(statement);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Statement.Print statement) {
+      if (state == 0) {
+        push(statement, 1);
+        push(statement.expression, 0);
+      } else {
+        print(pop());
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Statement.Var statement) {
+      if (state == 0 && statement.initializer != null) {
+        push(statement, 1);
+        push(statement.initializer, 0);
+      } else {
+        define(statement.name, statement.initializer == null ? null : pop());
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Statement.Block statement) {
+      if (!isScopeless(statement)) {
+        push(environment, RESTORE);
+        environment = newEnvironment(environment);
+      }
+      pushAll(statement.statements);
+      return null;
+    }
+
+    @Override
+    public Void visitClassStatement(Statement.Class statement) {
+      // the superclass is a variable, nothing here recurses
+      StacklessInterpreter.this.visitClassStatement(statement);
+      return null;
+    }
+
+    @Override
+    public Void visitImportStatement(Statement.Import statement) {
+      // the module's statements go through execute(), each on a nested run.
+      StacklessInterpreter.this.visitImportStatement(statement);
+      return null;
+    }
+
+    @Override
+    public Void visitIfStatement(Statement.If statement) {
+      if (state == 0) {
+        push(statement, 1);
+        push(statement.condition, 0);
+      } else if (isTruthy(pop())) {
+        push(statement.thenBranch, 0);
+      } else if (statement.elseBranch != null) {
+        push(statement.elseBranch, 0);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(Statement.While statement) {
+      if (state == 0) {
+        push(statement, 1);
+        push(statement.condition, 0);
+      } else if (isTruthy(pop())) {
+        push(statement, 0);
+        push(statement.body, 0);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitParallelStatement(Statement.Parallel statement) {
+      if (state == 0) {
+        push(statement, 1);
+        push(statement.end, 0);
+        push(statement.start, 0);
+      } else {
+        Object end = pop();
+        parallel(statement, pop(), end);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Statement.Return statement) {
+      if (state == 0 && isTailCall(statement)) {
+        Expr.Call call = (Expr.Call) statement.value;
+        push(statement, 2);
+        for (int i = call.arguments.size() - 1; i >= 0; i--) {
+          push(call.arguments.get(i), 0);
+        }
+        push(call.callee, 0);
+      } else if (state == 0 && statement.value != null) {
+        push(statement, 1);
+        push(statement.value, 0);
+      } else if (state == 2) {
+        Expr.Call call = (Expr.Call) statement.value;
+        int count = call.arguments.size();
+        Object callee = values[valueTop - count - 1];
+        if (callee instanceof LoxFunction && ((LoxFunction) callee).arity() == count) {
+          List<Object> arguments = new ArrayList<>(count);
+          for (int i = valueTop - count; i < valueTop; i++) {
+            arguments.add(values[i]);
+          }
+          for (int i = 0; i <= count; i++) pop();
+          tailCall((LoxFunction) callee, arguments);
+        } else {
+          // classes, natives and errors go the usual way, the call finds its values in place
+          push(statement, 1);
+          push(call, 1);
+        }
+      } else {
+        unwind(statement.value == null ? null : pop());
+      }
+      return null;
+    }
+  }
+}
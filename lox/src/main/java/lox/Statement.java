@@ -1,8 +1,30 @@
 package lox;
 
+import java.io.Serializable;
 import java.util.List;
 
-abstract class Statement {
+abstract class Statement implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static final int EXPRESSION = 0;
+  static final int FUNCTION = 1;
+  static final int PRINT = 2;
+  static final int VAR = 3;
+  static final int BLOCK = 4;
+  static final int CLASS = 5;
+  static final int IF = 6;
+  static final int WHILE = 7;
+  static final int PARALLEL = 8;
+  static final int RETURN = 9;
+  static final int IMPORT = 10;
+
+  // which subclass this is, one of the constants above.
+  final int kind;
+
+  Statement(int kind) {
+    this.kind = kind;
+  }
+
   interface Visitor<R> {
     R visitExpressionStatement(Expression statement);
     R visitFunctionStatement(Function statement);
@@ -12,11 +34,49 @@ abstract class Statement {
     R visitClassStatement(Class statement);
     R visitIfStatement(If statement);
     R visitWhileStatement(While statement);
+    R visitParallelStatement(Parallel statement);
     R visitReturnStatement(Return statement);
+    R visitImportStatement(Import statement);
+  }
+
+  /**
+   * the same as statement.accept(visitor), but a switch on its kind instead
+   * of a virtual call, see SwitchInterpreter.
+   */
+  static <R> R dispatch(Visitor<R> visitor, Statement statement) {
+    switch (statement.kind) {
+      case EXPRESSION:
+        return visitor.visitExpressionStatement((Expression) statement);
+      case FUNCTION:
+        return visitor.visitFunctionStatement((Function) statement);
+      case PRINT:
+        return visitor.visitPrintStatement((Print) statement);
+      case VAR:
+        return visitor.visitVarStatement((Var) statement);
+      case BLOCK:
+        return visitor.visitBlockStatement((Block) statement);
+      case CLASS:
+        return visitor.visitClassStatement((Class) statement);
+      case IF:
+        return visitor.visitIfStatement((If) statement);
+      case WHILE:
+        return visitor.visitWhileStatement((While) statement);
+      case PARALLEL:
+        return visitor.visitParallelStatement((Parallel) statement);
+      case RETURN:
+        return visitor.visitReturnStatement((Return) statement);
+      case IMPORT:
+        return visitor.visitImportStatement((Import) statement);
+      default:
+        throw new IllegalStateException("Unknown statement kind " + statement.kind);
+    }
   }
 
   static class Expression extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Expression(Expr expression) {
+      super(EXPRESSION);
       this.expression = expression;
     }
 
@@ -28,7 +88,10 @@ abstract class Statement {
   }
 
   static class Function extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Function(Token name, List<Token> params, List<Statement> body) {
+      super(FUNCTION);
       this.name = name;
       this.params = params;
       this.body = body;
@@ -41,10 +104,14 @@ abstract class Statement {
   final Token name;
   final List<Token> params;
   final List<Statement> body;
+  LazyBody lazy;
   }
 
   static class Print extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Print(Expr expression) {
+      super(PRINT);
       this.expression = expression;
     }
 
@@ -56,7 +123,10 @@ abstract class Statement {
   }
 
   static class Var extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Var(Token name, Expr initializer) {
+      super(VAR);
       this.name = name;
       this.initializer = initializer;
     }
@@ -70,7 +140,10 @@ abstract class Statement {
   }
 
   static class Block extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Block(List<Statement> statements) {
+      super(BLOCK);
       this.statements = statements;
     }
 
@@ -82,7 +155,10 @@ abstract class Statement {
   }
 
   static class Class extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Class(Token name, Expr.Variable superclass, List<Statement.Function> methods) {
+      super(CLASS);
       this.name = name;
       this.superclass = superclass;
       this.methods = methods;
@@ -98,7 +174,10 @@ abstract class Statement {
   }
 
   static class If extends Statement {
+    private static final long serialVersionUID = 1L;
+
     If(Expr condition, Statement thenBranch, Statement elseBranch) {
+      super(IF);
       this.condition = condition;
       this.thenBranch = thenBranch;
       this.elseBranch = elseBranch;
@@ -114,7 +193,10 @@ abstract class Statement {
   }
 
   static class While extends Statement {
+    private static final long serialVersionUID = 1L;
+
     While(Expr condition, Statement body) {
+      super(WHILE);
       this.condition = condition;
       this.body = body;
     }
@@ -127,8 +209,34 @@ abstract class Statement {
   final Statement body;
   }
 
+  static class Parallel extends Statement {
+    private static final long serialVersionUID = 1L;
+
+    Parallel(Token keyword, Token name, Expr start, Expr end, Statement body) {
+      super(PARALLEL);
+      this.keyword = keyword;
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitParallelStatement(this);
+    }
+  final Token keyword;
+  final Token name;
+  final Expr start;
+  final Expr end;
+  final Statement body;
+  }
+
   static class Return extends Statement {
+    private static final long serialVersionUID = 1L;
+
     Return(Token keyword, Expr value) {
+      super(RETURN);
       this.keyword = keyword;
       this.value = value;
     }
@@ -141,6 +249,24 @@ abstract class Statement {
   final Expr value;
   }
 
+  static class Import extends Statement {
+    private static final long serialVersionUID = 1L;
+
+    Import(Token keyword, Token path) {
+      super(IMPORT);
+      this.keyword = keyword;
+      this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitImportStatement(this);
+    }
+  final Token keyword;
+  final Token path;
+  Module module;
+  }
+
 
   abstract <R> R accept(Visitor<R> visitor);
 }
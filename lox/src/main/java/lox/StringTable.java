@@ -0,0 +1,51 @@
+package lox;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Interns Lox strings, so that equal strings are mostly the same String and
+ * isEqual() answers with an identity check.
+ *
+ * The Scanner interns every identifier and string literal of a program, and the
+ * modules it imports, through one table. With --intern the interpreter also
+ * interns the short strings `+` builds, so a tag put together at runtime is
+ * the same object as the literal it is compared to.
+ *
+ * Each program gets a table of its own, the server makes one per request, so
+ * programs don't contend for one lock or keep each other's strings. A module
+ * the loader has cached keeps the strings of the table it was parsed with;
+ * comparing those to another program's only misses the identity check.
+ *
+ * Entries are weak, a string nobody uses anymore leaves the table. Modules are
+ * parsed on several threads and parallel statements concatenate on several
+ * threads, so intern() is synchronized.
+ */
+final class StringTable {
+  // runtime strings longer than this aren't worth a lookup, they rarely repeat.
+  static final int MAX_RUNTIME_LENGTH = 64;
+
+  private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+  /**
+   * the String in the table equal to string, string itself if there was none.
+   */
+  synchronized String intern(String string) {
+    WeakReference<String> reference = strings.get(string);
+    String interned = reference == null ? null : reference.get();
+    if (interned != null) return interned;
+    strings.put(string, new WeakReference<>(string));
+    return string;
+  }
+
+  /**
+   * intern the result of `+`, when it is short enough to be flat.
+   */
+  Object internRuntime(Object value) {
+    if (value instanceof String && ((String) value).length() <= MAX_RUNTIME_LENGTH) {
+      return intern((String) value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,38 @@
+package lox;
+
+/**
+ * An interpreter dispatching on the kind of each node, see Expr.dispatch(),
+ * rather than with the visitors' accept. Running with --dispatch switch.
+ *
+ * A subclass rather than a flag in Interpreter, so the default visitor dispatch
+ * doesn't read a flag per node, and each of the two measures only itself.
+ */
+class SwitchInterpreter extends Interpreter {
+
+  SwitchInterpreter(OutputSink out) {
+    super(out);
+  }
+
+  SwitchInterpreter(OutputSink out, Snapshot snapshot) {
+    super(out, snapshot);
+  }
+
+  private SwitchInterpreter(SwitchInterpreter parent, OutputSink out) {
+    super(parent, out);
+  }
+
+  @Override
+  protected Interpreter fork(OutputSink out) {
+    return new SwitchInterpreter(this, out);
+  }
+
+  @Override
+  protected void execute(Statement statement) {
+    Statement.dispatch(this, statement);
+  }
+
+  @Override
+  protected Object evaluate(Expr expr) {
+    return Expr.dispatch(this, expr);
+  }
+}
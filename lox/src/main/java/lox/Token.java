@@ -1,6 +1,9 @@
 package lox;
 
-public class Token {
+import java.io.Serializable;
+
+public class Token implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   protected final TokenType type;
   protected String lexeme;
@@ -10,8 +10,8 @@ public enum TokenType {
 
   IDENTIFIER, STRING, NUMBER,
 
-  AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
-  PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+  AND, CLASS, ELSE, FALSE, FUN, FOR, IF, IMPORT, NIL, OR,
+  PARALLEL, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
 
   EOF
 }
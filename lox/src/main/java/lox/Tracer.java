@@ -0,0 +1,66 @@
+package lox;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * The listener behind `lox --trace`: prints every statement, call and variable
+ * write, indented by call depth.
+ */
+class Tracer implements ExecutionListener {
+  private final PrintStream out;
+  // calls nest per thread, the iterations of a parallel statement run on several.
+  private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+  Tracer(PrintStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void statementEntered(Statement statement) {
+    String kind = statement.getClass().getSimpleName().toLowerCase();
+    trace(LineFinder.of(statement), kind);
+  }
+
+  @Override
+  public void callEntered(Token paren, LoxCallable callee, List<Object> arguments) {
+    StringBuilder call = new StringBuilder("call ").append(callee).append("(");
+    for (int i = 0; i < arguments.size(); i++) {
+      if (i > 0) call.append(", ");
+      call.append(Interpreter.stringify(arguments.get(i)));
+    }
+    trace(paren.line, call.append(")").toString());
+    depth.get()[0]++;
+  }
+
+  @Override
+  public void callExited(Token paren, LoxCallable callee, Object result) {
+    depth.get()[0]--;
+    trace(paren.line, "return " + Interpreter.stringify(result) + " from " + callee);
+  }
+
+  @Override
+  public void callReplaced(Token paren, LoxCallable callee) {
+    depth.get()[0]--;
+    trace(paren.line, "tail call from " + callee);
+  }
+
+  @Override
+  public void callFailed(Token paren, LoxCallable callee, Throwable error) {
+    depth.get()[0]--;
+    trace(paren.line, "error in " + callee);
+  }
+
+  @Override
+  public void variableWritten(Token name, Object value) {
+    trace(name.line, name.lexeme + " = " + Interpreter.stringify(value));
+  }
+
+  private void trace(int line, String event) {
+    StringBuilder builder = new StringBuilder("[line ").append(line < 0 ? "?" : String.valueOf(line)).append("] ");
+    for (int i = 0, n = depth.get()[0]; i < n; i++) {
+      builder.append("  ");
+    }
+    out.println(builder.append(event));
+  }
+}
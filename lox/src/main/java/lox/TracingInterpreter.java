@@ -0,0 +1,163 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An interpreter reporting what it executes to ExecutionListeners.
+ *
+ * The hooks live in this subclass rather than behind a flag in Interpreter, so
+ * a plain Interpreter runs none of them, as it runs none of the allocation
+ * counting of ProfilingInterpreter. Only create a TracingInterpreter when
+ * somebody is going to listen.
+ */
+class TracingInterpreter extends Interpreter {
+  /**
+   * a call in progress, taken over by the calls it makes in tail position.
+   */
+  private static final class Frame {
+    Token paren;
+    LoxCallable callee;
+
+    Frame(Token paren, LoxCallable callee) {
+      this.paren = paren;
+      this.callee = callee;
+    }
+  }
+
+  private final List<ExecutionListener> listeners;
+  // the calls this interpreter is in, innermost first.
+  private final Deque<Frame> calls = new ArrayDeque<>();
+
+  TracingInterpreter(OutputSink out) {
+    super(out);
+    this.listeners = new CopyOnWriteArrayList<>();
+  }
+
+  TracingInterpreter(OutputSink out, Snapshot snapshot) {
+    super(out, snapshot);
+    this.listeners = new CopyOnWriteArrayList<>();
+  }
+
+  private TracingInterpreter(TracingInterpreter parent, OutputSink out) {
+    super(parent, out);
+    this.listeners = parent.listeners;
+  }
+
+  /**
+   * parallel iterations report to the same listeners, from their own threads.
+   */
+  @Override
+  protected Interpreter fork(OutputSink out) {
+    return new TracingInterpreter(this, out);
+  }
+
+  void addListener(ExecutionListener listener) {
+    listeners.add(listener);
+  }
+
+  void removeListener(ExecutionListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  protected void execute(Statement statement) {
+    for (ExecutionListener listener : listeners) {
+      listener.statementEntered(statement);
+    }
+    super.execute(statement);
+  }
+
+  @Override
+  protected Object invoke(Expr.Call expr, LoxCallable function, List<Object> arguments) {
+    Frame frame = new Frame(expr.paren, function);
+    calls.push(frame);
+    for (ExecutionListener listener : listeners) {
+      listener.callEntered(expr.paren, function, arguments);
+    }
+    Object result;
+    try {
+      result = super.invoke(expr, function, arguments);
+    } catch (Throwable error) {
+      calls.pop();
+      for (ExecutionListener listener : listeners) {
+        listener.callFailed(frame.paren, frame.callee, error);
+      }
+      throw error;
+    }
+    calls.pop();
+    for (ExecutionListener listener : listeners) {
+      listener.callExited(frame.paren, frame.callee, result);
+    }
+    return result;
+  }
+
+  /**
+   * a tail call leaves its caller's frame as a Return, and the call running
+   * makes it, see LoxFunction.call. The frame now belongs to the callee, which
+   * the listeners hear about as the caller leaving and the callee entering.
+   */
+  @Override
+  public Void visitReturnStatement(Statement.Return statement) {
+    try {
+      return super.visitReturnStatement(statement);
+    } catch (Return returned) {
+      Frame frame = calls.peek();
+      // calls made through call() from outside aren't reported, nor their tail calls.
+      if (returned.callee != null && frame != null) {
+        Token paren = ((Expr.Call) statement.value).paren;
+        for (ExecutionListener listener : listeners) {
+          listener.callReplaced(frame.paren, frame.callee);
+        }
+        frame.paren = paren;
+        frame.callee = returned.callee;
+        for (ExecutionListener listener : listeners) {
+          listener.callEntered(paren, returned.callee, returned.arguments);
+        }
+      }
+      throw returned;
+    }
+  }
+
+  @Override
+  protected void define(Token name, Object value) {
+    super.define(name, value);
+    for (ExecutionListener listener : listeners) {
+      listener.variableWritten(name, value);
+    }
+  }
+
+  /**
+   * the class is defined as nil first, for its methods to refer to, and
+   * assigned when it's made, reported as one write of the class.
+   */
+  @Override
+  public Void visitClassStatement(Statement.Class statement) {
+    super.visitClassStatement(statement);
+    Object loxClass = environment.get(statement.name);
+    for (ExecutionListener listener : listeners) {
+      listener.variableWritten(statement.name, loxClass);
+    }
+    return null;
+  }
+
+  @Override
+  public Object visitAssignExpr(Expr.Assign expr) {
+    Object value = super.visitAssignExpr(expr);
+    for (ExecutionListener listener : listeners) {
+      listener.variableWritten(expr.name, value);
+    }
+    return value;
+  }
+
+  @Override
+  public Object visitCompoundAssignExpr(Expr.CompoundAssign expr) {
+    Object value = super.visitCompoundAssignExpr(expr);
+    for (ExecutionListener listener : listeners) {
+      listener.variableWritten(expr.name, value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,13 @@
+package lox.runtime;
+
+/**
+ * Anything a compiled program can call: functions, bound methods, classes and natives.
+ */
+public abstract class Callable {
+  public abstract int arity();
+
+  /**
+   * the number of arguments has already been checked.
+   */
+  public abstract Object call(Object[] arguments, int line);
+}
@@ -0,0 +1,47 @@
+package lox.runtime;
+
+import java.util.Map;
+
+/**
+ * A Lox class: calling it creates an instance and runs init on it.
+ */
+public final class CompiledClass extends Callable {
+  private final String name;
+  private final CompiledClass superclass;
+  private final Map<String, CompiledMethod> methods;
+
+  public CompiledClass(String name, CompiledClass superclass, Map<String, CompiledMethod> methods) {
+    this.name = name;
+    this.superclass = superclass;
+    this.methods = methods;
+  }
+
+  CompiledMethod findMethod(String name) {
+    CompiledMethod method = methods.get(name);
+    if (method == null && superclass != null) {
+      return superclass.findMethod(name);
+    }
+    return method;
+  }
+
+  @Override
+  public int arity() {
+    CompiledMethod init = findMethod("init");
+    return init == null ? 0 : init.arity();
+  }
+
+  @Override
+  public Object call(Object[] arguments, int line) {
+    CompiledInstance instance = new CompiledInstance(this);
+    CompiledMethod init = findMethod("init");
+    if (init != null) {
+      init.invoke(instance, arguments);
+    }
+    return instance;
+  }
+
+  @Override
+  public String toString() {
+    return "class name : " + name;
+  }
+}
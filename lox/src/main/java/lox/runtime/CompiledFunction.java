@@ -0,0 +1,31 @@
+package lox.runtime;
+
+/**
+ * A Lox function, the compiler subclasses it once per function declaration.
+ */
+public abstract class CompiledFunction extends Callable {
+  private final String name;
+  private final int arity;
+
+  protected CompiledFunction(String name, int arity) {
+    this.name = name;
+    this.arity = arity;
+  }
+
+  public abstract Object invoke(Object[] arguments);
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Object[] arguments, int line) {
+    return invoke(arguments);
+  }
+
+  @Override
+  public String toString() {
+    return "<function " + name + " >";
+  }
+}
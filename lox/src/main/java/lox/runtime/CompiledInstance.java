@@ -0,0 +1,38 @@
+package lox.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An instance of a CompiledClass.
+ */
+public final class CompiledInstance {
+  private final CompiledClass loxClass;
+  private final Map<String, Object> fields = new HashMap<>();
+
+  CompiledInstance(CompiledClass loxClass) {
+    this.loxClass = loxClass;
+  }
+
+  Object get(String name, int line) {
+    if (fields.containsKey(name)) {
+      return fields.get(name);
+    }
+    CompiledMethod method = loxClass.findMethod(name);
+    if (method != null) {
+      return method.bind(this);
+    }
+    throw new LoxError("Undefined property '" + name + "'.", line);
+  }
+
+  void set(String name, Object value) {
+    fields.put(name, value);
+  }
+
+  @Override
+  public String toString() {
+    return "LoxInstance{" +
+        "loxClass=" + loxClass +
+        '}';
+  }
+}
@@ -0,0 +1,41 @@
+package lox.runtime;
+
+/**
+ * A method of a Lox class, not bound to any instance yet.
+ *
+ * The compiler makes an init method return its instance, as the interpreter does.
+ */
+public abstract class CompiledMethod {
+  final String name;
+  private final int arity;
+
+  protected CompiledMethod(String name, int arity) {
+    this.name = name;
+    this.arity = arity;
+  }
+
+  public abstract Object invoke(CompiledInstance self, Object[] arguments);
+
+  int arity() {
+    return arity;
+  }
+
+  Callable bind(CompiledInstance self) {
+    return new Callable() {
+      @Override
+      public int arity() {
+        return arity;
+      }
+
+      @Override
+      public Object call(Object[] arguments, int line) {
+        return invoke(self, arguments);
+      }
+
+      @Override
+      public String toString() {
+        return "<function " + name + " >";
+      }
+    };
+  }
+}
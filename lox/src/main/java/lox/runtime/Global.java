@@ -0,0 +1,38 @@
+package lox.runtime;
+
+/**
+ * A global variable of a compiled program, a static field of the generated class.
+ */
+public final class Global {
+  private final String name;
+  private Object value;
+  private boolean defined = false;
+
+  public Global(String name) {
+    this.name = name;
+    Object nativeFunction = Natives.find(name);
+    if (nativeFunction != null) {
+      define(nativeFunction);
+    }
+  }
+
+  public void define(Object value) {
+    this.value = value;
+    this.defined = true;
+  }
+
+  public Object get(int line) {
+    if (!defined) {
+      throw new LoxError("Undefined Variable: '" + name + "' .", line);
+    }
+    return value;
+  }
+
+  public Object assign(Object value, int line) {
+    if (!defined) {
+      throw new LoxError("Undefined variable '" + name + "'.", line);
+    }
+    this.value = value;
+    return value;
+  }
+}
@@ -0,0 +1,14 @@
+package lox.runtime;
+
+/**
+ * A runtime error in a compiled program, carrying the source line it happened on.
+ */
+public class LoxError extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+  public final int line;
+
+  public LoxError(String message, int line) {
+    super(message, null, false, false);
+    this.line = line;
+  }
+}
@@ -0,0 +1,227 @@
+package lox.runtime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * The operations a compiled Lox program is made of.
+ *
+ * The generated code calls these for everything that needs Lox semantics:
+ * arithmetic on boxed values, truthiness, equality, calls and properties. Errors
+ * are reported with the line the compiler passed in, like the interpreter does.
+ */
+public final class LoxRuntime {
+  private static final Writer out = new BufferedWriter(
+      new OutputStreamWriter(System.out, Charset.defaultCharset()), 8192);
+
+  private LoxRuntime() {
+  }
+
+  /**
+   * run a compiled program the way lox.Lox runs a script, exiting with 70 on
+   * a runtime error.
+   */
+  public static void run(Runnable program) {
+    try {
+      program.run();
+    } catch (LoxError error) {
+      flush();
+      System.out.println(error.getMessage() + "\n[line " + error.line + "]");
+      System.exit(70);
+    } finally {
+      flush();
+    }
+  }
+
+  private static void flush() {
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static void print(Object value) {
+    String line = stringify(value) + System.lineSeparator();
+    try {
+      out.write(line);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * run body for every index from start up to end, on the common ForkJoinPool.
+   */
+  public static void parallel(Object start, Object end, int line, IntConsumer body) {
+    IntStream.range(bound(start, line), bound(end, line)).parallel().forEach(body);
+  }
+
+  private static int bound(Object value, int line) {
+    if (!(value instanceof Double) || (double) value != Math.rint((double) value)
+        || Math.abs((double) value) > Integer.MAX_VALUE) {
+      throw new LoxError("parallel bounds must be integers.", line);
+    }
+    return (int) (double) value;
+  }
+
+  /**
+   * evaluate an expression statement, whose value nobody wants.
+   */
+  public static void discard(Object value) {
+  }
+
+  static String stringify(Object object) {
+    if (object == null) return "nil";
+    if (object instanceof Double) {
+      String text = object.toString();
+      if (text.endsWith(".0")) {
+        text = text.substring(0, text.length() - 2);
+      }
+      return text;
+    }
+    return object.toString();
+  }
+
+  public static boolean truthy(Object object) {
+    if (object == null) return false;
+    if (object instanceof Boolean) return (boolean) object;
+    return true;
+  }
+
+  public static boolean isEqual(Object left, Object right) {
+    if (left == right) return true;
+    if (left == null) return false;
+    return left.equals(right);
+  }
+
+  public static Object or(Object left, Supplier<Object> right) {
+    return truthy(left) ? left : right.get();
+  }
+
+  public static Object and(Object left, Supplier<Object> right) {
+    return truthy(left) ? right.get() : left;
+  }
+
+  private static void checkNumbers(Object left, Object right, int line) {
+    if (left instanceof Double && right instanceof Double) return;
+    throw new LoxError("operands must be numbers", line);
+  }
+
+  public static Object add(Object left, Object right, int line) {
+    if (left instanceof Double && right instanceof Double) {
+      return (double) left + (double) right;
+    }
+    if (left instanceof String && right instanceof String) {
+      return ((String) left).concat((String) right);
+    }
+    throw new LoxError("operands must be two numbers or two strings", line);
+  }
+
+  public static Object subtract(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left - (double) right;
+  }
+
+  public static Object multiply(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left * (double) right;
+  }
+
+  public static Object divide(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left / (double) right;
+  }
+
+  public static Object greater(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left > (double) right;
+  }
+
+  public static Object greaterEqual(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left >= (double) right;
+  }
+
+  public static Object less(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left < (double) right;
+  }
+
+  public static Object lessEqual(Object left, Object right, int line) {
+    checkNumbers(left, right, line);
+    return (double) left <= (double) right;
+  }
+
+  public static Object equal(Object left, Object right) {
+    return isEqual(left, right);
+  }
+
+  public static Object notEqual(Object left, Object right) {
+    return !isEqual(left, right);
+  }
+
+  public static Object negate(Object operand, int line) {
+    if (!(operand instanceof Double)) {
+      throw new LoxError("operand must be a number", line);
+    }
+    return -(double) operand;
+  }
+
+  public static Object not(Object operand) {
+    return !truthy(operand);
+  }
+
+  public static final Object[] NO_ARGUMENTS = {};
+
+  public static Object call(Object callee, Object[] arguments, int line) {
+    if (!(callee instanceof Callable)) {
+      throw new LoxError("you can only call functions and classes.", line);
+    }
+    Callable function = (Callable) callee;
+    if (arguments.length != function.arity()) {
+      throw new LoxError("Expected " + function.arity() + " arguments but got " + arguments.length + ".", line);
+    }
+    return function.call(arguments, line);
+  }
+
+  public static Object get(Object object, String name, int line) {
+    if (object instanceof CompiledInstance) {
+      return ((CompiledInstance) object).get(name, line);
+    }
+    if (object instanceof Natives.NativeObject) {
+      return ((Natives.NativeObject) object).get(name, line);
+    }
+    throw new LoxError("only instances have properties", line);
+  }
+
+  public static Object set(Object object, String name, Object value, int line) {
+    if (!(object instanceof CompiledInstance)) {
+      throw new LoxError("only instances have fields.", line);
+    }
+    ((CompiledInstance) object).set(name, value);
+    return value;
+  }
+
+  public static CompiledClass superclass(Object superclass, int line) {
+    if (!(superclass instanceof CompiledClass)) {
+      throw new LoxError("Superclass must be a class", line);
+    }
+    return (CompiledClass) superclass;
+  }
+
+  public static Object superMethod(CompiledClass superclass, CompiledInstance self, String name, int line) {
+    CompiledMethod method = superclass.findMethod(name);
+    if (method == null) {
+      throw new LoxError("Undefined property '" + name + "'.", line);
+    }
+    return method.bind(self);
+  }
+}
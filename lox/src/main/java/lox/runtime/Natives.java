@@ -0,0 +1,311 @@
+package lox.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The natives of a compiled program: clock, list, array and map, behaving like
+ * the interpreter's.
+ */
+final class Natives {
+  // the lists and maps this thread is printing, one reached again through a
+  // cycle prints as [...] or {...}.
+  private static final ThreadLocal<Set<Object>> PRINTING =
+      ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+  /**
+   * a value with methods, read with `.`.
+   */
+  interface NativeObject {
+    Object get(String name, int line);
+  }
+
+  private abstract static class NativeFunction extends Callable {
+    private final int arity;
+
+    NativeFunction(int arity) {
+      this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+      return arity;
+    }
+
+    @Override
+    public String toString() {
+      return "native function";
+    }
+  }
+
+  private static final Map<String, Callable> NATIVES = new LinkedHashMap<>();
+
+  static {
+    NATIVES.put("clock", new NativeFunction(0) {
+      @Override
+      public Object call(Object[] arguments, int line) {
+        return (double) System.currentTimeMillis() / 1000.0;
+      }
+    });
+    NATIVES.put("list", new NativeFunction(0) {
+      @Override
+      public Object call(Object[] arguments, int line) {
+        return new LoxList();
+      }
+    });
+    NATIVES.put("array", new NativeFunction(1) {
+      @Override
+      public Object call(Object[] arguments, int line) {
+        Object length = arguments[0];
+        if (!(length instanceof Double) || (double) length < 0 || (double) length != Math.floor((double) length)) {
+          throw new LoxError("Array length must be a non-negative integer.", line);
+        }
+        return new LoxArray((int) (double) length);
+      }
+    });
+    NATIVES.put("map", new NativeFunction(0) {
+      @Override
+      public Object call(Object[] arguments, int line) {
+        return new LoxMap();
+      }
+    });
+    // compiled scripts aren't profiled, see lox --profile-allocations.
+    NATIVES.put("allocations", new NativeFunction(0) {
+      @Override
+      public Object call(Object[] arguments, int line) {
+        return null;
+      }
+    });
+  }
+
+  private Natives() {
+  }
+
+  static Object find(String name) {
+    return NATIVES.get(name);
+  }
+
+  private static int index(Object value, int length, int line) {
+    if (!(value instanceof Double)) {
+      throw new LoxError("Index must be a number.", line);
+    }
+    double number = (double) value;
+    if (number != Math.floor(number)) {
+      throw new LoxError("Index must be an integer.", line);
+    }
+    if (number < 0 || number >= length) {
+      throw new LoxError("Index " + LoxRuntime.stringify(value) + " out of bounds for length " + length + ".", line);
+    }
+    return (int) number;
+  }
+
+  private static Object undefined(String name, int line) {
+    throw new LoxError("Undefined property '" + name + "'.", line);
+  }
+
+  private static final class LoxList implements NativeObject {
+    private final List<Object> elements = new ArrayList<>();
+
+    @Override
+    public Object get(String name, int line) {
+      switch (name) {
+        case "get":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return elements.get(index(arguments[0], elements.size(), line));
+            }
+          };
+        case "set":
+          return new NativeFunction(2) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              elements.set(index(arguments[0], elements.size(), line), arguments[1]);
+              return arguments[1];
+            }
+          };
+        case "push":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              elements.add(arguments[0]);
+              return null;
+            }
+          };
+        case "pop":
+          return new NativeFunction(0) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              if (elements.isEmpty()) {
+                throw new LoxError("Can't pop from an empty list.", line);
+              }
+              return elements.remove(elements.size() - 1);
+            }
+          };
+        case "length":
+          return new NativeFunction(0) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return (double) elements.size();
+            }
+          };
+        default:
+          return undefined(name, line);
+      }
+    }
+
+    @Override
+    public String toString() {
+      Set<Object> printing = PRINTING.get();
+      if (!printing.add(this)) return "[...]";
+      try {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < elements.size(); i++) {
+          if (i > 0) builder.append(", ");
+          builder.append(LoxRuntime.stringify(elements.get(i)));
+        }
+        return builder.append("]").toString();
+      } finally {
+        printing.remove(this);
+      }
+    }
+  }
+
+  private static final class LoxArray implements NativeObject {
+    private final double[] elements;
+
+    LoxArray(int length) {
+      this.elements = new double[length];
+    }
+
+    @Override
+    public Object get(String name, int line) {
+      switch (name) {
+        case "get":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return elements[index(arguments[0], elements.length, line)];
+            }
+          };
+        case "set":
+          return new NativeFunction(2) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              int index = index(arguments[0], elements.length, line);
+              if (!(arguments[1] instanceof Double)) {
+                throw new LoxError("Array elements must be numbers.", line);
+              }
+              elements[index] = (double) arguments[1];
+              return arguments[1];
+            }
+          };
+        case "length":
+          return new NativeFunction(0) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return (double) elements.length;
+            }
+          };
+        default:
+          return undefined(name, line);
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder("[");
+      for (int i = 0; i < elements.length; i++) {
+        if (i > 0) builder.append(", ");
+        builder.append(LoxRuntime.stringify(elements[i]));
+      }
+      return builder.append("]").toString();
+    }
+  }
+
+  /**
+   * Lox `==` on keys is Object.equals on everything a compiled program creates,
+   * so a plain hash map will do.
+   */
+  private static final class LoxMap implements NativeObject {
+    private final Map<Object, Object> entries = new LinkedHashMap<>();
+
+    @Override
+    public Object get(String name, int line) {
+      switch (name) {
+        case "get":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return entries.get(arguments[0]);
+            }
+          };
+        case "set":
+          return new NativeFunction(2) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              entries.put(arguments[0], arguments[1]);
+              return arguments[1];
+            }
+          };
+        case "has":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return entries.containsKey(arguments[0]);
+            }
+          };
+        case "remove":
+          return new NativeFunction(1) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return entries.remove(arguments[0]);
+            }
+          };
+        case "size":
+          return new NativeFunction(0) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              return (double) entries.size();
+            }
+          };
+        case "keys":
+          return new NativeFunction(0) {
+            @Override
+            public Object call(Object[] arguments, int line) {
+              LoxList keys = new LoxList();
+              keys.elements.addAll(entries.keySet());
+              return keys;
+            }
+          };
+        default:
+          return undefined(name, line);
+      }
+    }
+
+    @Override
+    public String toString() {
+      Set<Object> printing = PRINTING.get();
+      if (!printing.add(this)) return "{...}";
+      try {
+        StringBuilder builder = new StringBuilder("{");
+        boolean first = true;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+          if (!first) builder.append(", ");
+          first = false;
+          builder.append(LoxRuntime.stringify(entry.getKey()))
+              .append(": ")
+              .append(LoxRuntime.stringify(entry.getValue()));
+        }
+        return builder.append("}").toString();
+      } finally {
+        printing.remove(this);
+      }
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package lox.runtime;
+
+/**
+ * A local variable of a compiled program.
+ *
+ * Lox closures capture variables, not values, and Java only lets inner classes
+ * capture final locals, so every Lox local is a final reference to one of these.
+ */
+public final class Ref {
+  public Object value;
+
+  public Ref(Object value) {
+    this.value = value;
+  }
+}
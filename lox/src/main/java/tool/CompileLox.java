@@ -0,0 +1,156 @@
+package tool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import lox.JavaGenerator;
+import lox.runtime.LoxRuntime;
+
+/**
+ * Compiles a Lox script ahead of time into a runnable jar:
+ *
+ *   compile_lox fib.lox fib.jar
+ *   java -jar fib.jar
+ *
+ * lox.JavaGenerator turns the script into Java source, the JDK's compiler turns
+ * that into class files, and the jar bundles them with the lox.runtime classes,
+ * so it runs on a plain JVM without the interpreter.
+ */
+public class CompileLox {
+  private static final String CLASS_NAME = "Main";
+  private static final String RUNTIME = "lox/runtime/";
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: compile_lox <script> <output jar>");
+      System.exit(64);
+    }
+    String source = new String(Files.readAllBytes(Paths.get(args[0])), Charset.defaultCharset());
+    String java = JavaGenerator.generate(source, CLASS_NAME);
+    if (java == null) {
+      System.exit(65);
+    }
+
+    Path runtime = runtimeLocation();
+    Path classes = Files.createTempDirectory("lox-classes");
+    try {
+      compile(java, runtime, classes);
+      writeJar(Paths.get(args[1]), classes, runtime);
+    } finally {
+      try (Stream<Path> files = Files.walk(classes)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * the directory or jar the runtime classes are loaded from.
+   */
+  private static Path runtimeLocation() {
+    try {
+      return Paths.get(LoxRuntime.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void compile(String java, Path runtime, Path classes) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      System.err.println("No Java compiler available, compile_lox needs to run on a JDK.");
+      System.exit(70);
+    }
+    JavaFileObject file = new SimpleJavaFileObject(
+        URI.create("string:///" + CLASS_NAME + JavaFileObject.Kind.SOURCE.extension),
+        JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return java;
+      }
+    };
+    List<String> options = Arrays.asList(
+        "-classpath", runtime.toString(),
+        "-d", classes.toString(),
+        "-nowarn");
+    if (!compiler.getTask(null, null, null, options, null, List.of(file)).call()) {
+      // the generator produced something javac rejects, that is a bug in the generator
+      System.err.println("Generated Java failed to compile.");
+      System.exit(70);
+    }
+  }
+
+  private static void writeJar(Path jar, Path classes, Path runtime) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, CLASS_NAME);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+      List<Path> compiled;
+      try (Stream<Path> files = Files.walk(classes)) {
+        compiled = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : compiled) {
+        String name = classes.relativize(file).toString().replace('\\', '/');
+        try (InputStream in = Files.newInputStream(file)) {
+          copy(out, name, in);
+        }
+      }
+
+      if (Files.isDirectory(runtime)) {
+        List<Path> runtimeClasses;
+        try (Stream<Path> files = Files.list(runtime.resolve(RUNTIME))) {
+          runtimeClasses = files.filter(file -> file.toString().endsWith(".class"))
+              .sorted().collect(Collectors.toList());
+        }
+        for (Path file : runtimeClasses) {
+          try (InputStream in = Files.newInputStream(file)) {
+            copy(out, RUNTIME + file.getFileName(), in);
+          }
+        }
+      } else {
+        try (JarFile lox = new JarFile(runtime.toFile())) {
+          List<JarEntry> entries = new ArrayList<>();
+          for (Enumeration<JarEntry> e = lox.entries(); e.hasMoreElements(); ) {
+            JarEntry entry = e.nextElement();
+            if (entry.getName().startsWith(RUNTIME) && entry.getName().endsWith(".class")) {
+              entries.add(entry);
+            }
+          }
+          for (JarEntry entry : entries) {
+            try (InputStream in = lox.getInputStream(entry)) {
+              copy(out, entry.getName(), in);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void copy(JarOutputStream out, String name, InputStream in) throws IOException {
+    out.putNextEntry(new JarEntry(name));
+    in.transferTo(out);
+    out.closeEntry();
+  }
+}
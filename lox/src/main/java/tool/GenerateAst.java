@@ -3,6 +3,7 @@ package tool;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -14,7 +15,7 @@ public class GenerateAst {
     }
     String outputDir = args[0];
     System.out.println(outputDir);
-    defineAst(outputDir, "Expr", Arrays.asList(
+    List<String> exprTypes = Arrays.asList(
         "Binary   : Expr left, Token operator, Expr right",
         "Call     : Expr callee, Token paren, List<Expr> arguments",
         "Get      : Expr object, Token name",
@@ -24,23 +25,33 @@ public class GenerateAst {
         "Grouping : Expr expression",
         "Literal  : Object value",
         "Unary    : Token operator, Expr right",
-        "Variable : Token name",
-        "Assign   : Token name, Expr value",
-        "Logical  : Expr left, Token operator, Expr right"
-    ));
+        "Variable : Token name ; GlobalEnvironment.Cell cell",
+        "Assign   : Token name, Expr value ; GlobalEnvironment.Cell cell",
+        "Logical  : Expr left, Token operator, Expr right",
+        // superinstructions, only created by the Optimizer.
+        "VariableBinary : Token name, Token operator, Expr right ; GlobalEnvironment.Cell cell",
+        "CompoundAssign : Token name, Token operator, Expr value ; GlobalEnvironment.Cell cell",
+        "CompoundSet    : Expr object, Token name, Token operator, Expr value"
+    );
+    defineAst(outputDir, "Expr", exprTypes);
 
-    defineAst(outputDir, "Statement", Arrays.asList(
+    List<String> statementTypes = Arrays.asList(
         "Expression : Expr expression",
-        "Function   : Token name, List<Token> params, List<Statement> body",
+        // body is null while the parser leaves it to lazy, see LazyBody.
+        "Function   : Token name, List<Token> params, List<Statement> body ; LazyBody lazy",
         "Print      : Expr expression",
         "Var        : Token name, Expr initializer",
         "Block      : List<Statement> statements",
         "Class      : Token name, Expr.Variable superclass, List<Statement.Function> methods",
         "If         : Expr condition, Statement thenBranch, Statement elseBranch",
         "While      : Expr condition, Statement body",
-        "Return     : Token keyword, Expr value"
-    ));
-
+        "Parallel   : Token keyword, Token name, Expr start, Expr end, Statement body",
+        "Return     : Token keyword, Expr value",
+        // module is filled in by the ModuleLoader before the program runs.
+        "Import     : Token keyword, Token path ; Module module"
+    );
+    defineAst(outputDir, "Statement", statementTypes);
+    defineFlatAst(outputDir, exprTypes, statementTypes);
   }
 
   /**
@@ -49,6 +60,9 @@ public class GenerateAst {
    * @param baseName base class name.
    * @param types an expression string as className : field,field
    *              "Binary : Expr left, Token operator, Expr right"
+   *              fields after a ';' are not final and left out of the constructor,
+   *              they cache what the interpreter works out at runtime.
+   *              "Variable : Token name ; GlobalEnvironment.Cell cell"
    * @throws IOException Exception.
    */
   private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -56,10 +70,17 @@ public class GenerateAst {
     PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
     writer.println("package lox;");
     writer.println();
+    writer.println("import java.io.Serializable;");
     writer.println("import java.util.List;");
     writer.println();
-    writer.println("abstract class " + baseName + " {");
+    // nodes are serializable so that snapshots can keep the functions they declare.
+    writer.println("abstract class " + baseName + " implements Serializable {");
+    // fixed, so snapshots stay readable after a rebuild, see Snapshot.
+    writer.println("  private static final long serialVersionUID = 1L;");
+    writer.println();
+    defineKinds(writer, baseName, types);
     defineVisitor(writer, baseName, types);
+    defineDispatch(writer, baseName, types);
     for (String type: types) {
       String className = type.split(":")[0].trim();
       String fieldsListString = type.split(":")[1].trim();
@@ -71,6 +92,45 @@ public class GenerateAst {
     writer.close();
   }
 
+  /**
+   * a dense int per subclass, kind, so that dispatch() can switch on it.
+   */
+  private static void defineKinds(PrintWriter writer, String baseName, List<String> types) {
+    for (int i = 0; i < types.size(); i++) {
+      writer.println("  static final int " + constant(className(types.get(i))) + " = " + i + ";");
+    }
+    writer.println();
+    writer.println("  // which subclass this is, one of the constants above.");
+    writer.println("  final int kind;");
+    writer.println();
+    writer.println("  " + baseName + "(int kind) {");
+    writer.println("    this.kind = kind;");
+    writer.println("  }");
+    writer.println();
+  }
+
+  private static void defineDispatch(PrintWriter writer, String baseName, List<String> types) {
+    String argument = baseName.toLowerCase();
+    writer.println("  /**");
+    writer.println("   * the same as " + argument + ".accept(visitor), but a switch on its kind instead");
+    writer.println("   * of a virtual call, see SwitchInterpreter.");
+    writer.println("   */");
+    writer.println("  static <R> R dispatch(Visitor<R> visitor, " + baseName + " " + argument + ") {");
+    writer.println("    switch (" + argument + ".kind) {");
+    for (String type : types) {
+      String className = className(type);
+      writer.println("      case " + constant(className) + ":");
+      writer.println("        return visitor.visit" + className + baseName + "((" + className + ") " + argument
+          + ");");
+    }
+    writer.println("      default:");
+    writer.println("        throw new IllegalStateException(\"Unknown " + argument + " kind \" + " + argument
+        + ".kind);");
+    writer.println("    }");
+    writer.println("  }");
+    writer.println();
+  }
+
   private static void defineVisitor(PrintWriter writer, String baseName, List<String> types) {
     writer.println("  interface Visitor<R> {");
     for (String type : types) {
@@ -83,8 +143,16 @@ public class GenerateAst {
   }
 
   private static void defineType(PrintWriter writer, String baseName, String className, String fieldsListString) {
+    String[] mutableFields = new String[0];
+    if (fieldsListString.contains(";")) {
+      mutableFields = fieldsListString.split(";")[1].trim().split(", ");
+      fieldsListString = fieldsListString.split(";")[0].trim();
+    }
     writer.println("  static class " + className + " extends " + baseName + " {" );
+    writer.println("    private static final long serialVersionUID = 1L;");
+    writer.println();
     writer.println("    " + className + "(" + fieldsListString + ") {");
+    writer.println("      super(" + constant(className) + ");");
     String[] fields = fieldsListString.split(", ");
     for (String field : fields) {
       String name = field.split(" ")[1];
@@ -99,7 +167,323 @@ public class GenerateAst {
     for (String field : fields) {
       writer.println("  final " + field + ";");
     }
+    for (String field : mutableFields) {
+      writer.println("  " + field + ";");
+    }
     writer.println("  }");
     writer.println();
   }
+
+  /**
+   * the same nodes as parallel int arrays, with an encoder from the tree.
+   * see the comment written into FlatAst for the layout.
+   */
+  private static void defineFlatAst(String outputDir, List<String> exprTypes, List<String> statementTypes)
+      throws IOException {
+    PrintWriter writer = new PrintWriter(outputDir + "/FlatAst.java", StandardCharsets.UTF_8);
+    lines(writer,
+        "package lox;",
+        "",
+        "import java.util.ArrayList;",
+        "import java.util.Arrays;",
+        "import java.util.HashMap;",
+        "import java.util.List;",
+        "import java.util.Map;",
+        "",
+        "/**",
+        " * A program as parallel arrays instead of a graph of nodes, generated along",
+        " * with Expr and Statement.",
+        " *",
+        " * Node n is kinds[n], one of the constants below, tokens[n], the index of its",
+        " * first Token field or -1, and its other fields in order from",
+        " * operands[operandStart[n]]: a child node or -1 for null, the index of a token",
+        " * or of a constant, or where a list starts in operands, its size followed by",
+        " * its elements. The offset of a field is the constant named after its node and",
+        " * itself. Children come before their parents, root is the list of the",
+        " * program's statements.",
+        " *",
+        " * Tokens are columns too, with their lexemes interned and without literals,",
+        " * and a Token object is only made for one the first time it is asked for.",
+        " * The caches after a ';' in GenerateAst are left out.",
+        " */",
+        "final class FlatAst {");
+    int kind = 0;
+    for (String type : exprTypes) {
+      writer.println("  static final int " + constant(className(type)) + "_EXPR = " + kind++ + ";");
+    }
+    for (String type : statementTypes) {
+      writer.println("  static final int " + constant(className(type)) + "_STATEMENT = " + kind++ + ";");
+    }
+    writer.println();
+    for (List<String> types : Arrays.asList(exprTypes, statementTypes)) {
+      for (String type : types) {
+        List<String> operands = operandFields(type);
+        for (int i = 0; i < operands.size(); i++) {
+          writer.println("  static final int " + constant(className(type)) + "_"
+              + constant(operands.get(i).split(" ")[1]) + " = " + i + ";");
+        }
+      }
+    }
+    lines(writer,
+        "",
+        "  final int[] kinds;",
+        "  final int[] tokens;",
+        "  final int[] operandStart;",
+        "  final int[] operands;",
+        "  final TokenType[] tokenTypes;",
+        "  final String[] lexemes;",
+        "  final int[] lines;",
+        "  final Object[] constants;",
+        "  final int root;",
+        "  private final Token[] tokenObjects;",
+        "",
+        "  private FlatAst(int[] kinds, int[] tokens, int[] operandStart, int[] operands, TokenType[] tokenTypes,",
+        "                  String[] lexemes, int[] lines, Object[] constants, int root) {",
+        "    this.kinds = kinds;",
+        "    this.tokens = tokens;",
+        "    this.operandStart = operandStart;",
+        "    this.operands = operands;",
+        "    this.tokenTypes = tokenTypes;",
+        "    this.lexemes = lexemes;",
+        "    this.lines = lines;",
+        "    this.constants = constants;",
+        "    this.root = root;",
+        "    this.tokenObjects = new Token[lexemes.length];",
+        "  }",
+        "",
+        "  static FlatAst encode(List<Statement> statements) {",
+        "    Encoder encoder = new Encoder();",
+        "    return encoder.build(encoder.statementList(statements));",
+        "  }",
+        "",
+        "  int size() {",
+        "    return kinds.length;",
+        "  }",
+        "",
+        "  /**",
+        "   * the node's first Token field.",
+        "   */",
+        "  Token token(int node) {",
+        "    return tokenAt(tokens[node]);",
+        "  }",
+        "",
+        "  String lexeme(int node) {",
+        "    return lexemes[tokens[node]];",
+        "  }",
+        "",
+        "  int operand(int node, int field) {",
+        "    return operands[operandStart[node] + field];",
+        "  }",
+        "",
+        "  Token tokenAt(int index) {",
+        "    Token token = tokenObjects[index];",
+        "    if (token == null) {",
+        "      token = tokenObjects[index] = new Token(tokenTypes[index], lexemes[index], null, lines[index]);",
+        "    }",
+        "    return token;",
+        "  }",
+        "",
+        "  Object constant(int index) {",
+        "    return constants[index];",
+        "  }",
+        "",
+        "  int size(int list) {",
+        "    return operands[list];",
+        "  }",
+        "",
+        "  int element(int list, int index) {",
+        "    return operands[list + 1 + index];",
+        "  }",
+        "",
+        "  private static final class Encoder implements Expr.Visitor<Integer>, Statement.Visitor<Integer> {",
+        "    private int[] kinds = new int[256];",
+        "    private int[] tokens = new int[256];",
+        "    private int[] operandStart = new int[256];",
+        "    private int nodes = 0;",
+        "    private int[] operands = new int[1024];",
+        "    private int operandCount = 0;",
+        "    private TokenType[] tokenTypes = new TokenType[256];",
+        "    private String[] lexemes = new String[256];",
+        "    private int[] lines = new int[256];",
+        "    private int tokenCount = 0;",
+        "    // every occurrence of a name shares one String.",
+        "    private final Map<String, String> interned = new HashMap<>();",
+        "    private final Map<Object, Integer> constantIndex = new HashMap<>();",
+        "    private final List<Object> constants = new ArrayList<>();",
+        "",
+        "    FlatAst build(int root) {",
+        "      return new FlatAst(Arrays.copyOf(kinds, nodes), Arrays.copyOf(tokens, nodes),",
+        "          Arrays.copyOf(operandStart, nodes), Arrays.copyOf(operands, operandCount),",
+        "          Arrays.copyOf(tokenTypes, tokenCount), Arrays.copyOf(lexemes, tokenCount),",
+        "          Arrays.copyOf(lines, tokenCount), constants.toArray(), root);",
+        "    }",
+        "",
+        "    private int add(int kind, Token token, int... values) {",
+        "      if (nodes == kinds.length) {",
+        "        kinds = Arrays.copyOf(kinds, nodes * 2);",
+        "        tokens = Arrays.copyOf(tokens, nodes * 2);",
+        "        operandStart = Arrays.copyOf(operandStart, nodes * 2);",
+        "      }",
+        "      kinds[nodes] = kind;",
+        "      tokens[nodes] = token(token);",
+        "      operandStart[nodes] = operandCount;",
+        "      for (int value : values) {",
+        "        operand(value);",
+        "      }",
+        "      return nodes++;",
+        "    }",
+        "",
+        "    private void operand(int value) {",
+        "      if (operandCount == operands.length) {",
+        "        operands = Arrays.copyOf(operands, operandCount * 2);",
+        "      }",
+        "      operands[operandCount++] = value;",
+        "    }",
+        "",
+        "    private int token(Token token) {",
+        "      if (token == null) return -1;",
+        "      if (tokenCount == lexemes.length) {",
+        "        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount * 2);",
+        "        lexemes = Arrays.copyOf(lexemes, tokenCount * 2);",
+        "        lines = Arrays.copyOf(lines, tokenCount * 2);",
+        "      }",
+        "      String lexeme = interned.putIfAbsent(token.lexeme, token.lexeme);",
+        "      tokenTypes[tokenCount] = token.type;",
+        "      lexemes[tokenCount] = lexeme == null ? token.lexeme : lexeme;",
+        "      lines[tokenCount] = token.line;",
+        "      return tokenCount++;",
+        "    }",
+        "",
+        "    // literals are few and shared, the same value is stored once.",
+        "    private int constant(Object value) {",
+        "      return constantIndex.computeIfAbsent(value, key -> {",
+        "        constants.add(key);",
+        "        return constants.size() - 1;",
+        "      });",
+        "    }",
+        "",
+        "    private int node(Expr expr) {",
+        "      return expr == null ? -1 : expr.accept(this);",
+        "    }",
+        "",
+        "    private int node(Statement statement) {",
+        "      return statement == null ? -1 : statement.accept(this);",
+        "    }",
+        "",
+        "    private int list(int[] elements) {",
+        "      int start = operandCount;",
+        "      operand(elements.length);",
+        "      for (int element : elements) {",
+        "        operand(element);",
+        "      }",
+        "      return start;",
+        "    }",
+        "",
+        "    private int expressionList(List<Expr> list) {",
+        "      if (list == null) return -1;",
+        "      int[] elements = new int[list.size()];",
+        "      for (int i = 0; i < elements.length; i++) {",
+        "        elements[i] = node(list.get(i));",
+        "      }",
+        "      return list(elements);",
+        "    }",
+        "",
+        "    private int statementList(List<? extends Statement> list) {",
+        "      if (list == null) return -1;",
+        "      int[] elements = new int[list.size()];",
+        "      for (int i = 0; i < elements.length; i++) {",
+        "        elements[i] = node(list.get(i));",
+        "      }",
+        "      return list(elements);",
+        "    }",
+        "",
+        "    private int tokenList(List<Token> list) {",
+        "      if (list == null) return -1;",
+        "      int[] elements = new int[list.size()];",
+        "      for (int i = 0; i < elements.length; i++) {",
+        "        elements[i] = token(list.get(i));",
+        "      }",
+        "      return list(elements);",
+        "    }");
+    defineEncoder(writer, "Expr", exprTypes);
+    defineEncoder(writer, "Statement", statementTypes);
+    writer.println("  }");
+    writer.println("}");
+    writer.close();
+  }
+
+  private static void defineEncoder(PrintWriter writer, String baseName, List<String> types) {
+    for (String type : types) {
+      String className = className(type);
+      String argument = baseName.toLowerCase();
+      String token = "null";
+      StringBuilder values = new StringBuilder();
+      List<String> operands = operandFields(type);
+      for (String field : finalFields(type)) {
+        String fieldType = field.split(" ")[0];
+        String value = argument + "." + field.split(" ")[1];
+        if (!operands.contains(field)) {
+          token = value;
+          continue;
+        }
+        if (fieldType.equals("Token")) {
+          value = "token(" + value + ")";
+        } else if (fieldType.equals("Object")) {
+          value = "constant(" + value + ")";
+        } else if (fieldType.equals("List<Token>")) {
+          value = "tokenList(" + value + ")";
+        } else if (fieldType.equals("List<Expr>")) {
+          value = "expressionList(" + value + ")";
+        } else if (fieldType.startsWith("List<")) {
+          value = "statementList(" + value + ")";
+        } else {
+          value = "node(" + value + ")";
+        }
+        values.append(", ").append(value);
+      }
+      writer.println();
+      writer.println("    @Override");
+      writer.println("    public Integer visit" + className + baseName + "(" + baseName + "." + className + " "
+          + argument + ") {");
+      writer.println("      return add(" + constant(className) + "_" + baseName.toUpperCase() + ", " + token
+          + values + ");");
+      writer.println("    }");
+    }
+  }
+
+  private static String className(String type) {
+    return type.split(":")[0].trim();
+  }
+
+  private static List<String> finalFields(String type) {
+    String fields = type.split(":")[1].split(";")[0].trim();
+    return Arrays.asList(fields.split(", "));
+  }
+
+  /**
+   * the fields stored in operands, all but the first Token.
+   */
+  private static List<String> operandFields(String type) {
+    List<String> operands = new ArrayList<>(finalFields(type));
+    for (String field : operands) {
+      if (field.startsWith("Token ")) {
+        operands.remove(field);
+        break;
+      }
+    }
+    return operands;
+  }
+
+  /**
+   * thenBranch -> THEN_BRANCH
+   */
+  private static String constant(String name) {
+    return name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+  }
+
+  private static void lines(PrintWriter writer, String... lines) {
+    for (String line : lines) {
+      writer.println(line);
+    }
+  }
 }
@@ -0,0 +1,106 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * What `lox --profile-allocations` reports, on each interpreter that profiles.
+ */
+class AllocationProfilerTest {
+  private static final String SCRIPT = String.join("\n",
+      "class Point {",
+      "  init(x, y) {",
+      "    this.x = x;",
+      "    this.y = y;",
+      "  }",
+      "  sum() { return this.x + this.y; }",
+      "}",
+      "var total = 0;",
+      "for (var i = 0; i < 100; i = i + 1) {",
+      "  total = total + Point(i, i).sum();",
+      "}",
+      "print total;",
+      "var names = list();",
+      "names.push(\"lox\");",
+      "");
+
+  @Test
+  void countsWhatEachNodeMakes(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("points.lox");
+    Files.writeString(script, SCRIPT);
+    for (List<String> mode : List.of(List.<String>of(), List.of("--stackless"), List.of("--flat"))) {
+      LoxProcess run = profile(mode, script);
+      assertEquals(0, run.status, run.errors);
+      assertEquals("9900" + System.lineSeparator(), run.output);
+      List<String> report = lines(run.errors);
+      // every Point(i, i) makes an instance, binds init and gives the call a frame.
+      assertTrue(report.contains("[alloc] line 10 call instance: 100 objects, 4000 bytes"), mode + "\n" + run.errors);
+      assertTrue(report.contains("[alloc] line 10 call bound method: 100 objects, 3200 bytes"), mode + "\n" + run.errors);
+      assertTrue(report.contains("[alloc] line 10 call variable: 300 objects, 17600 bytes"), mode + "\n" + run.errors);
+      // reading sum binds it.
+      assertTrue(report.contains("[alloc] line 10 get bound method: 100 objects, 3200 bytes"), mode + "\n" + run.errors);
+      assertTrue(report.contains("[alloc] line 1 class closure: 2 objects, 64 bytes"), mode + "\n" + run.errors);
+      assertTrue(report.contains("[alloc] line 13 call list: 1 objects, 72 bytes"), mode + "\n" + run.errors);
+      // the total first, then the biggest sites.
+      assertTrue(report.get(0).matches("\\[alloc\\] \\d+ objects, \\d+ bytes"), mode + "\n" + run.errors);
+      assertEquals("[alloc] line 10 call variable: 300 objects, 17600 bytes", report.get(1), mode + "\n" + run.errors);
+    }
+  }
+
+  @Test
+  void countsATailCallReusingItsFrameOnce(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("count.lox");
+    Files.writeString(script, String.join("\n",
+        "fun count(n) {",
+        "  if (n == 0) return \"done\";",
+        "  return count(n - 1);",
+        "}",
+        "print count(1000);",
+        ""));
+    for (List<String> mode : List.of(List.<String>of(), List.of("--stackless"))) {
+      LoxProcess run = profile(mode, script);
+      assertEquals(0, run.status, run.errors);
+      List<String> report = lines(run.errors);
+      assertTrue(report.contains("[alloc] line 5 call environment: 1 objects, 72 bytes"), mode + "\n" + run.errors);
+      for (String line : report) {
+        assertFalse(line.contains(" return "), mode + "\n" + run.errors);
+      }
+    }
+  }
+
+  @Test
+  void allocationsReportsInTheMiddleOfARun(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("middle.lox");
+    Files.writeString(script, "var names = list();\nallocations();\nprint \"done\";\n");
+    LoxProcess run = profile(List.of(), script);
+    assertEquals(List.of(
+        "[alloc] 1 objects, 72 bytes",
+        "[alloc] line 1 call list: 1 objects, 72 bytes",
+        "[alloc] 1 objects, 72 bytes",
+        "[alloc] line 1 call list: 1 objects, 72 bytes"), lines(run.errors));
+    LoxProcess plain = LoxProcess.run(List.of(script.toString()));
+    assertEquals("done" + System.lineSeparator(), plain.output);
+    assertEquals("", plain.errors);
+  }
+
+  private static LoxProcess profile(List<String> mode, Path script) throws Exception {
+    List<String> arguments = new ArrayList<>();
+    arguments.add("--profile-allocations");
+    arguments.addAll(mode);
+    arguments.add(script.toString());
+    return LoxProcess.run(arguments);
+  }
+
+  private static List<String> lines(String text) {
+    return text.isEmpty() ? List.of() : List.of(text.split(System.lineSeparator()));
+  }
+}
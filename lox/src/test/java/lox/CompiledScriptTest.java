@@ -0,0 +1,59 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+/**
+ * Compiles every script in resources/golden with tool.CompileLox, runs the
+ * jar it writes and holds it to the same .out file and status as
+ * GoldenScriptTest. A script that doesn't compile must fail the way lox
+ * fails on it.
+ */
+class CompiledScriptTest {
+  @TestFactory
+  Stream<DynamicTest> scripts() throws IOException, URISyntaxException {
+    Path directory = Paths.get(CompiledScriptTest.class.getResource("/golden").toURI());
+    List<Path> scripts;
+    try (Stream<Path> files = Files.list(directory)) {
+      scripts = files.filter(path -> path.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+    }
+    List<DynamicTest> tests = new ArrayList<>();
+    for (Path script : scripts) {
+      tests.add(DynamicTest.dynamicTest(script.getFileName().toString(), () -> check(script)));
+    }
+    return tests.stream();
+  }
+
+  private static void check(Path script) throws IOException, InterruptedException {
+    String name = script.getFileName().toString();
+    String base = name.substring(0, name.length() - ".lox".length());
+    Path expected = script.resolveSibling(base + ".out");
+    Path jar = Files.createTempFile(base, ".jar");
+    try {
+      LoxProcess run = LoxProcess.java(List.of("-cp", System.getProperty("java.class.path"),
+          "tool.CompileLox", script.toString(), jar.toString()));
+      if (run.status == 0) run = LoxProcess.java(List.of("-jar", jar.toString()));
+      assertEquals(expectedStatus(script), run.status, run.errors);
+      assertEquals(Files.readString(expected), run.output, run.errors);
+    } finally {
+      Files.deleteIfExists(jar);
+    }
+  }
+
+  private static int expectedStatus(Path script) throws IOException {
+    String first = Files.readAllLines(script).get(0);
+    return first.startsWith("// exit ") ? Integer.parseInt(first.substring("// exit ".length()).trim()) : 0;
+  }
+}
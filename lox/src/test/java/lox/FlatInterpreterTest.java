@@ -0,0 +1,57 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * What `lox --flat` does where it can't do what the tree does, see
+ * FlatInterpreter, and the resolver checking both the same.
+ */
+class FlatInterpreterTest {
+  @Test
+  void reportsRecursionFillingTheStack(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("deep.lox");
+    Files.writeString(script, String.join("\n",
+        "fun count(n) {",
+        "  if (n == 0) return \"done\";",
+        "  return count(n - 1);",
+        "}",
+        "print \"start\";",
+        "print count(1000000);",
+        "print \"not reached\";",
+        ""));
+    LoxProcess run = LoxProcess.run(List.of("--flat", script.toString()));
+    assertEquals(70, run.status, run.errors);
+    assertEquals(String.join(System.lineSeparator(), "start", "Stack overflow.", "[line 3]", ""), run.output);
+    // the tree runs the tail calls in constant stack.
+    LoxProcess tree = LoxProcess.run(List.of(script.toString()));
+    assertEquals(String.join(System.lineSeparator(), "start", "done", "not reached", ""), tree.output);
+  }
+
+  @Test
+  void reportsTheStaticErrorsOfTheTree(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("errors.lox");
+    Files.writeString(script, String.join("\n",
+        "return 1;",
+        "print this;",
+        "fun f(a, a) { var b = b; return super.x; }",
+        "class A < A { init() { return 1; } }",
+        "class B { m() { super.m(); } }",
+        "var x = 1;",
+        "{ var y = 1; var y = 2; }",
+        "parallel (var i = 0, 3) { x = i; return; }",
+        ""));
+    LoxProcess tree = LoxProcess.run(List.of(script.toString()));
+    LoxProcess flat = LoxProcess.run(List.of("--flat", script.toString()));
+    assertEquals(65, tree.status, tree.errors);
+    assertEquals(65, flat.status, flat.errors);
+    assertEquals(11, tree.errors.split(System.lineSeparator()).length, tree.errors);
+    assertEquals(tree.errors, flat.errors);
+  }
+}
@@ -0,0 +1,66 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+/**
+ * Runs every script in resources/golden the ways lox can run it, and checks
+ * what it prints and the status it exits with against the script's .out file,
+ * so the interpreters can't drift apart.
+ *
+ * A script expecting another status than 0 says so on its first line:
+ *
+ *   // exit 70
+ */
+class GoldenScriptTest {
+  private static final List<List<String>> MODES = List.of(
+      List.of(),
+      List.of("--stackless"),
+      List.of("--flat"),
+      List.of("--dispatch", "switch"),
+      List.of("--lazy"));
+
+  @TestFactory
+  Stream<DynamicTest> scripts() throws IOException, URISyntaxException {
+    Path directory = Paths.get(GoldenScriptTest.class.getResource("/golden").toURI());
+    List<Path> scripts;
+    try (Stream<Path> files = Files.list(directory)) {
+      scripts = files.filter(path -> path.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+    }
+    List<DynamicTest> tests = new ArrayList<>();
+    for (Path script : scripts) {
+      for (List<String> mode : MODES) {
+        String name = script.getFileName() + (mode.isEmpty() ? "" : " " + String.join(" ", mode));
+        tests.add(DynamicTest.dynamicTest(name, () -> check(script, mode)));
+      }
+    }
+    return tests.stream();
+  }
+
+  private static void check(Path script, List<String> mode) throws IOException, InterruptedException {
+    String name = script.getFileName().toString();
+    Path expected = script.resolveSibling(name.substring(0, name.length() - ".lox".length()) + ".out");
+    List<String> arguments = new ArrayList<>(mode);
+    arguments.add(script.toString());
+    LoxProcess run = LoxProcess.run(arguments);
+    assertEquals(expectedStatus(script), run.status, run.errors);
+    assertEquals(Files.readString(expected), run.output, run.errors);
+  }
+
+  private static int expectedStatus(Path script) throws IOException {
+    String first = Files.readAllLines(script).get(0);
+    return first.startsWith("// exit ") ? Integer.parseInt(first.substring("// exit ".length()).trim()) : 0;
+  }
+}
@@ -0,0 +1,98 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Threads calling into one loaded program with Interpreter.call(), see the
+ * memory model in Interpreter.
+ */
+class InterpreterCallTest {
+  private static final int THREADS = 8;
+  private static final int CALLS = 200;
+
+  private static final String PROGRAM = String.join("\n",
+      "fun repeat(text, times) {",
+      "  var result = \"\";",
+      "  while (times > 0) {",
+      "    result = result + text;",
+      "    times = times - 1;",
+      "  }",
+      "  return result;",
+      "}",
+      // a rope every thread flattens, the first one to get there drops its pieces.
+      "var shared = repeat(\"ab\", 100);",
+      "fun same() { return shared; }",
+      "fun double(n) { return n * 2; }",
+      "fun shout(text) {",
+      "  print text;",
+      "  print text;",
+      "  return text + \"!\";",
+      "}");
+
+  private final StringWriter printed = new StringWriter();
+  private final Interpreter interpreter = new Interpreter(new OutputSink(printed));
+
+  @Test
+  void threadsCallTheSameProgramAtOnce() throws Exception {
+    load(PROGRAM);
+    String shared = "ab".repeat(100);
+    ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> done = new ArrayList<>();
+    try {
+      for (int thread = 0; thread < THREADS; thread++) {
+        String name = "thread " + thread;
+        done.add(threads.submit(() -> {
+          start.await();
+          for (int i = 0; i < CALLS; i++) {
+            assertEquals(shared, interpreter.call("same"));
+            assertEquals(name.repeat(10), interpreter.call("repeat", name, 10));
+            assertEquals(name + "!", interpreter.call("shout", name));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : done) {
+        future.get();
+      }
+    } finally {
+      threads.shutdownNow();
+    }
+    interpreter.flush();
+    // what one call prints is appended in one piece.
+    List<String> lines = Arrays.asList(printed.toString().split(System.lineSeparator()));
+    assertEquals(THREADS * CALLS * 2, lines.size());
+    for (int i = 0; i < lines.size(); i += 2) {
+      assertEquals(lines.get(i), lines.get(i + 1));
+    }
+  }
+
+  @Test
+  void callConvertsArgumentsAndResults() {
+    load(PROGRAM);
+    assertThrows(RunTimeError.class, () -> interpreter.call("shared"));
+    assertThrows(RunTimeError.class, () -> interpreter.call("shout"));
+    // numbers come back as Doubles, ropes as Strings.
+    assertEquals("", interpreter.call("repeat", "x", 0));
+    assertEquals(8.0, interpreter.call("double", 4));
+  }
+
+  private void load(String source) {
+    List<Statement> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    new Resolver(interpreter).resolve(statements);
+    interpreter.interpret(statements);
+  }
+}
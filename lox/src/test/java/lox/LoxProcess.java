@@ -0,0 +1,80 @@
+package lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A lox run in a process of its own, the way the tests run lox: it keeps its
+ * options in statics and exits with the status.
+ */
+final class LoxProcess {
+  final int status;
+  final String output;
+  final String errors;
+
+  private LoxProcess(int status, String output, String errors) {
+    this.status = status;
+    this.output = output;
+    this.errors = errors;
+  }
+
+  /**
+   * run `lox arguments` to the end, with input as its stdin.
+   */
+  static LoxProcess run(List<String> arguments, String input) throws IOException, InterruptedException {
+    return finish(start(arguments), input);
+  }
+
+  static LoxProcess run(List<String> arguments) throws IOException, InterruptedException {
+    return run(arguments, "");
+  }
+
+  /**
+   * run `java arguments` to the end, for what lox runs outside of lox.Lox:
+   * tool.CompileLox and the jars it writes.
+   */
+  static LoxProcess java(List<String> arguments) throws IOException, InterruptedException {
+    return finish(launch(arguments), "");
+  }
+
+  private static LoxProcess finish(Process process, String input) throws IOException, InterruptedException {
+    process.getOutputStream().write(input.getBytes(StandardCharsets.UTF_8));
+    process.getOutputStream().close();
+    // read both at once, a script filling one pipe would block on it otherwise.
+    CompletableFuture<String> errors = CompletableFuture.supplyAsync(() -> read(process.getErrorStream()));
+    String output = read(process.getInputStream());
+    return new LoxProcess(process.waitFor(), output, errors.join());
+  }
+
+  /**
+   * start `lox arguments`, for a test talking to it while it runs.
+   */
+  static Process start(List<String> arguments) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("lox.Lox");
+    command.addAll(arguments);
+    return launch(command);
+  }
+
+  private static Process launch(List<String> arguments) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(arguments);
+    return new ProcessBuilder(command).start();
+  }
+
+  private static String read(InputStream stream) {
+    try {
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A `lox --server` process the tests send scripts to, see Server for the
+ * framing. Closing it ends the input, which stops the server.
+ */
+final class LoxServer implements AutoCloseable {
+  private static final Charset CHARSET = Charset.defaultCharset();
+
+  /**
+   * what the server replied to a request.
+   */
+  static final class Reply {
+    final int status;
+    final String output;
+    final String errors;
+
+    private Reply(int status, String output, String errors) {
+      this.status = status;
+      this.output = output;
+      this.errors = errors;
+    }
+  }
+
+  private final Process process;
+  private final OutputStream in;
+  private final InputStream out;
+
+  LoxServer(String... options) throws IOException {
+    List<String> arguments = new ArrayList<>(List.of(options));
+    arguments.add("--server");
+    process = LoxProcess.start(arguments);
+    in = process.getOutputStream();
+    out = process.getInputStream();
+  }
+
+  /**
+   * run script, with imports relative to path when it isn't null.
+   */
+  Reply run(String script, Path path) throws IOException {
+    byte[] bytes = script.getBytes(CHARSET);
+    send((bytes.length + (path == null ? "" : " " + path) + "\n").getBytes(CHARSET));
+    send(bytes);
+    in.flush();
+    return read();
+  }
+
+  void send(byte[] bytes) throws IOException {
+    in.write(bytes);
+  }
+
+  /**
+   * the next reply, null when the server stopped instead.
+   */
+  Reply read() throws IOException {
+    in.flush();
+    String header = readLine();
+    if (header == null) return null;
+    String[] fields = header.split(" ");
+    String output = new String(out.readNBytes(Integer.parseInt(fields[1])), CHARSET);
+    String errors = new String(out.readNBytes(Integer.parseInt(fields[2])), CHARSET);
+    return new Reply(Integer.parseInt(fields[0]), output, errors);
+  }
+
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = out.read()) != '\n') {
+      if (c == -1) return null;
+      line.write(c);
+    }
+    return line.toString(CHARSET);
+  }
+
+  /**
+   * end the input and wait for the server to stop, returning its status.
+   */
+  int stop() throws IOException, InterruptedException {
+    in.close();
+    return process.waitFor();
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    stop();
+  }
+}
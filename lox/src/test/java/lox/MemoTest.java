@@ -0,0 +1,82 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The results `lox --memoize` keeps, see Memo and PurityAnalyzer.
+ */
+class MemoTest {
+  private static final String NEWLINE = System.lineSeparator();
+
+  @Test
+  void countsHitsAndMisses() {
+    Memo memo = new Memo("f", 10);
+    assertSame(Memo.MISS, memo.get(Memo.key(List.of(1.0))));
+    memo.put(Memo.key(List.of(1.0)), "one");
+    assertEquals("one", memo.get(Memo.key(List.of(1.0))));
+    // nil is a result like any other.
+    memo.put(Memo.key(List.of(2.0, "x")), null);
+    assertNull(memo.get(Memo.key(List.of(2.0, "x"))));
+    assertEquals("f: 2 hits, 1 misses, 2 cached", memo.toString());
+  }
+
+  @Test
+  void forgetsTheLeastRecentlyUsedResult() {
+    Memo memo = new Memo("f", 2);
+    memo.put(Memo.key(List.of(1.0)), "one");
+    memo.put(Memo.key(List.of(2.0)), "two");
+    // using 1 makes 2 the one to go.
+    assertEquals("one", memo.get(Memo.key(List.of(1.0))));
+    memo.put(Memo.key(List.of(3.0)), "three");
+    assertSame(Memo.MISS, memo.get(Memo.key(List.of(2.0))));
+    assertEquals("one", memo.get(Memo.key(List.of(1.0))));
+    assertEquals("three", memo.get(Memo.key(List.of(3.0))));
+    assertEquals("f: 3 hits, 1 misses, 2 cached", memo.toString());
+  }
+
+  @Test
+  void reportsEveryPureFunctionAtExit(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("memo.lox");
+    Files.writeString(script, String.join("\n",
+        "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }",
+        "fun square(n) { return n * n; }",
+        "var offset = 0;",
+        "fun shifted(n) { return n + offset; }",
+        "print fib(30);",
+        "print square(1) + square(2) + square(1) + square(3) + square(1) + square(2);",
+        "print shifted(1);",
+        ""));
+    for (List<String> mode : List.of(List.<String>of(), List.of("--stackless"))) {
+      LoxProcess run = run(mode, List.of("--memoize"), script);
+      assertEquals(0, run.status, run.errors);
+      assertEquals(String.join(NEWLINE, "832040", "20", "1", ""), run.output);
+      // shifted reads a global that isn't a function, it isn't memoized.
+      assertEquals(String.join(NEWLINE,
+          "[memo] fib: 28 hits, 31 misses, 31 cached",
+          "[memo] square: 3 hits, 3 misses, 3 cached",
+          ""), run.errors, mode.toString());
+
+      LoxProcess small = run(mode, List.of("--memoize", "--memo-size", "2"), script);
+      assertEquals(String.join(NEWLINE, "832040", "20", "1", ""), small.output);
+      // 1 2 1 hit, 3 drops 2, 1 hit, 2 missed again.
+      assertEquals("[memo] square: 2 hits, 4 misses, 2 cached", small.errors.split(NEWLINE)[1], mode.toString());
+    }
+  }
+
+  private static LoxProcess run(List<String> mode, List<String> options, Path script) throws Exception {
+    List<String> arguments = new ArrayList<>(mode);
+    arguments.addAll(options);
+    arguments.add(script.toString());
+    return LoxProcess.run(arguments);
+  }
+}
@@ -0,0 +1,63 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Imports, and the modules a process keeps parsed between the programs it
+ * runs, see ModuleLoader.
+ */
+class ModuleLoaderTest {
+  private static final String MAIN = "import \"lib.lox\";\nprint greet(\"lox\");\n";
+
+  @Test
+  void importsRunOnceInTheGlobals(@TempDir Path directory) throws Exception {
+    Files.writeString(directory.resolve("lib.lox"), "fun greet(name) { return \"hi \" + name; }\nprint \"lib\";\n");
+    Files.writeString(directory.resolve("twice.lox"), "import \"lib.lox\";\n");
+    Path main = directory.resolve("main.lox");
+    Files.writeString(main, "import \"lib.lox\";\nimport \"twice.lox\";\nprint greet(\"lox\");\n");
+    LoxProcess run = LoxProcess.run(List.of(main.toString()));
+    assertEquals(0, run.status, run.errors);
+    assertEquals("lib" + System.lineSeparator() + "hi lox" + System.lineSeparator(), run.output);
+  }
+
+  @Test
+  void rereadsAModuleOnlyOnceItChanges(@TempDir Path directory) throws Exception {
+    Path lib = directory.resolve("lib.lox");
+    Path main = directory.resolve("main.lox");
+    Files.writeString(lib, "fun greet(name) { return \"hi \" + name; }\n");
+    FileTime written = Files.getLastModifiedTime(lib);
+    try (LoxServer server = new LoxServer()) {
+      assertEquals("hi lox" + System.lineSeparator(), server.run(MAIN, main).output);
+      // the same size and modification time, the parsed module is reused.
+      Files.writeString(lib, "fun greet(name) { return \"yo \" + name; }\n");
+      Files.setLastModifiedTime(lib, written);
+      assertEquals("hi lox" + System.lineSeparator(), server.run(MAIN, main).output);
+      // a new modification time, it is parsed again.
+      Files.setLastModifiedTime(lib, FileTime.fromMillis(written.toMillis() + 2000));
+      assertEquals("yo lox" + System.lineSeparator(), server.run(MAIN, main).output);
+      // another size, even at the same time.
+      Files.writeString(lib, "fun greet(name) { return \"hello \" + name; }\n");
+      Files.setLastModifiedTime(lib, FileTime.fromMillis(written.toMillis() + 2000));
+      assertEquals("hello lox" + System.lineSeparator(), server.run(MAIN, main).output);
+    }
+  }
+
+  @Test
+  void flatProgramsRejectImports(@TempDir Path directory) throws Exception {
+    Files.writeString(directory.resolve("lib.lox"), "fun greet(name) { return \"hi \" + name; }\n");
+    Path main = directory.resolve("main.lox");
+    Files.writeString(main, MAIN);
+    LoxProcess run = LoxProcess.run(List.of("--flat", main.toString()));
+    assertEquals(65, run.status);
+    assertEquals("[line 1] Error at 'import': Can't run a script with imports flat." + System.lineSeparator(),
+        run.errors);
+  }
+}
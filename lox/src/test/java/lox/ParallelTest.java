@@ -0,0 +1,102 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * What the Resolver lets a parallel body write, through the functions it calls
+ * as well as itself, see Resolver.Effects.
+ */
+class ParallelTest {
+  private static final List<List<String>> MODES = List.of(
+      List.of(),
+      List.of("--flat"),
+      List.of("--lazy"));
+
+  @Test
+  void rejectsCallsOfFunctionsAssigningOutsideTheBody(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("writes.lox");
+    Files.writeString(script, String.join("\n",
+        "var count = 0;",
+        "fun bump() { count = count + 1; }",
+        "fun twice() { bump(); bump(); }",
+        "parallel (var i = 0, 10) bump();",
+        "parallel (var i = 0, 10) { if (i > 5) twice(); }",
+        "parallel (var i = 0, 10) later();",
+        "fun later() { count = i; }",
+        "print \"not reached\";",
+        ""));
+    for (List<String> mode : MODES) {
+      LoxProcess run = run(mode, script);
+      assertEquals(65, run.status, mode + "\n" + run.errors);
+      assertEquals("", run.output);
+      assertEquals(List.of(
+          "[line 4] Error at 'bump': Can't call a function assigning to a variable declared outside a parallel body.",
+          "[line 5] Error at 'twice': Can't call a function assigning to a variable declared outside a parallel body.",
+          "[line 6] Error at 'later': Can't call a function assigning to a variable declared outside a parallel body."),
+          lines(run.errors), mode.toString());
+    }
+  }
+
+  @Test
+  void rejectsAFunctionWritingTheScopeAroundTheBody(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("closure.lox");
+    Files.writeString(script, String.join("\n",
+        "{",
+        "  var total = 0;",
+        "  fun add(n) { total = total + n; }",
+        "  parallel (var i = 0, 10) add(i);",
+        "}",
+        ""));
+    for (List<String> mode : MODES) {
+      LoxProcess run = run(mode, script);
+      assertEquals(65, run.status, mode + "\n" + run.errors);
+      assertEquals(List.of(
+          "[line 4] Error at 'add': Can't call a function assigning to a variable declared outside a parallel body."),
+          lines(run.errors), mode.toString());
+    }
+  }
+
+  @Test
+  void allowsFunctionsWritingWhatTheBodyDeclares(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("locals.lox");
+    Files.writeString(script, String.join("\n",
+        "var count = 0;",
+        "fun local(n) { var x = n; x = x * 2; return x; }",
+        "var results = array(10);",
+        "parallel (var i = 0, 10) {",
+        "  var mine = 0;",
+        "  fun add(n) { mine = mine + n; }",
+        "  add(local(i));",
+        "  results.set(i, mine);",
+        "}",
+        "print results.get(9);",
+        // a global may be written once no iteration runs.
+        "fun bump() { count = count + 1; }",
+        "bump();",
+        "print count;",
+        ""));
+    for (List<String> mode : MODES) {
+      LoxProcess run = run(mode, script);
+      assertEquals(0, run.status, mode + "\n" + run.errors);
+      assertEquals("18" + System.lineSeparator() + "1" + System.lineSeparator(), run.output, mode.toString());
+    }
+  }
+
+  private static LoxProcess run(List<String> mode, Path script) throws Exception {
+    List<String> arguments = new ArrayList<>(mode);
+    arguments.add(script.toString());
+    return LoxProcess.run(arguments);
+  }
+
+  private static List<String> lines(String text) {
+    return text.isEmpty() ? List.of() : List.of(text.split(System.lineSeparator()));
+  }
+}
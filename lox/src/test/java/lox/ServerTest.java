@@ -0,0 +1,90 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The requests and replies of `lox --server`, see Server.
+ */
+class ServerTest {
+  private static final String NEWLINE = System.lineSeparator();
+
+  @Test
+  void repliesWithTheStatusOutputAndErrorsOfEachScript() throws Exception {
+    try (LoxServer server = new LoxServer()) {
+      LoxServer.Reply ok = server.run("print 1 + 2;\nprint \"two\";\n", null);
+      assertEquals(0, ok.status);
+      assertEquals("3" + NEWLINE + "two" + NEWLINE, ok.output);
+      assertEquals("", ok.errors);
+
+      LoxServer.Reply syntax = server.run("print ;\n", null);
+      assertEquals(65, syntax.status);
+      assertEquals("", syntax.output);
+      assertEquals("[line 1] Error at ';': Expect expression" + NEWLINE, syntax.errors);
+
+      LoxServer.Reply runtime = server.run("print \"before\";\nprint nil + 1;\nprint \"after\";\n", null);
+      assertEquals(70, runtime.status);
+      assertEquals("before" + NEWLINE, runtime.output.substring(0, ("before" + NEWLINE).length()));
+      assertTrue(runtime.output.contains("[line 2]"), runtime.output);
+    }
+  }
+
+  @Test
+  void givesEveryScriptFreshGlobals() throws Exception {
+    try (LoxServer server = new LoxServer()) {
+      assertEquals(0, server.run("var seen = \"first\";\nfun f() { return seen; }\n", null).status);
+      LoxServer.Reply next = server.run("print f();\n", null);
+      assertEquals(70, next.status);
+      assertTrue(next.output.contains("'f'"), next.output);
+    }
+  }
+
+  @Test
+  void keepsServingAfterAStackOverflow() throws Exception {
+    try (LoxServer server = new LoxServer()) {
+      LoxServer.Reply overflow = server.run("fun f(n) { return 1 + f(n + 1); }\nprint f(0);\n", null);
+      assertEquals(70, overflow.status);
+      assertEquals("Stack overflow." + NEWLINE, overflow.errors);
+      assertEquals("ok" + NEWLINE, server.run("print \"ok\";\n", null).output);
+    }
+  }
+
+  @Test
+  void countsLengthsInBytes() throws Exception {
+    try (LoxServer server = new LoxServer()) {
+      // wider than a byte in most encodings, the lengths must still line up.
+      LoxServer.Reply reply = server.run("print \"d\u00e9j\u00e0 vu \u2713\";\nprint \"next\";\n", null);
+      assertEquals(0, reply.status, reply.errors);
+      assertTrue(reply.output.endsWith(NEWLINE + "next" + NEWLINE), reply.output);
+      assertEquals("after" + NEWLINE, server.run("print \"after\";\n", null).output);
+    }
+  }
+
+  @Test
+  void stopsAtAHeaderItCantRead() throws Exception {
+    LoxServer server = new LoxServer();
+    server.send("print 1;\n".getBytes(Charset.defaultCharset()));
+    LoxServer.Reply bad = server.read();
+    assertEquals(64, bad.status);
+    assertEquals("", bad.output);
+    assertEquals("Bad request: print 1;\n", bad.errors);
+    assertNull(server.read());
+    assertEquals(64, server.stop());
+  }
+
+  @Test
+  void stopsAtTheEndOfItsInput() throws Exception {
+    LoxServer server = new LoxServer();
+    assertEquals(0, server.run("print 1;", null).status);
+    assertEquals(0, server.stop());
+    LoxProcess nothing = LoxProcess.run(List.of("--server"));
+    assertEquals(0, nothing.status);
+    assertEquals("", nothing.output);
+  }
+}
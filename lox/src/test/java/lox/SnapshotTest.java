@@ -0,0 +1,82 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saving the globals a script defines with --snapshot and restoring them with
+ * --restore, see Snapshot.
+ */
+class SnapshotTest {
+  private static final String NEWLINE = System.lineSeparator();
+
+  private static final String PRELUDE = String.join("\n",
+      "print \"prelude ran\";",
+      "class Counter {",
+      "  init(start) { this.count = start; }",
+      "  next() { this.count = this.count + 1; return this.count; }",
+      "}",
+      "fun makeAdder(n) { fun add(x) { return x + n; } return add; }",
+      "var addTen = makeAdder(10);",
+      "var shared = Counter(5);",
+      "var names = list();",
+      "names.push(\"a\");",
+      "var table = map();",
+      "table.set(\"k\", \"v\");",
+      "");
+
+  private static final String SCRIPT = String.join("\n",
+      "print addTen(1);",
+      "print shared.next();",
+      "print Counter(0).next();",
+      "print names.get(0) + table.get(\"k\");",
+      "");
+
+  @Test
+  void restoresClassesClosuresAndValues(@TempDir Path directory) throws Exception {
+    Path snapshot = snapshot(directory);
+    Path script = directory.resolve("script.lox");
+    Files.writeString(script, SCRIPT);
+    for (List<String> mode : List.of(List.<String>of(), List.of("--stackless"), List.of("--lazy"),
+        List.of("--dispatch", "switch"))) {
+      List<String> arguments = new ArrayList<>(mode);
+      arguments.addAll(List.of("--restore", snapshot.toString(), script.toString()));
+      LoxProcess run = LoxProcess.run(arguments);
+      assertEquals(0, run.status, mode + "\n" + run.errors);
+      // the prelude isn't run again, and every run starts from the state it saved.
+      assertEquals(String.join(NEWLINE, "11", "6", "1", "av", ""), run.output, mode.toString());
+    }
+  }
+
+  @Test
+  void reportsASnapshotItCantRead(@TempDir Path directory) throws Exception {
+    Path script = directory.resolve("script.lox");
+    Files.writeString(script, SCRIPT);
+    Path garbage = directory.resolve("garbage.snapshot");
+    Files.writeString(garbage, "not a snapshot");
+    for (Path snapshot : List.of(directory.resolve("missing.snapshot"), garbage)) {
+      LoxProcess run = LoxProcess.run(List.of("--restore", snapshot.toString(), script.toString()));
+      assertEquals(65, run.status);
+      assertEquals("", run.output);
+      assertTrue(run.errors.startsWith("Can't restore snapshot: "), run.errors);
+    }
+  }
+
+  private static Path snapshot(Path directory) throws Exception {
+    Path prelude = directory.resolve("prelude.lox");
+    Files.writeString(prelude, PRELUDE);
+    Path snapshot = directory.resolve("prelude.snapshot");
+    LoxProcess run = LoxProcess.run(List.of("--snapshot", snapshot.toString(), prelude.toString()));
+    assertEquals(0, run.status, run.errors);
+    assertEquals("prelude ran" + NEWLINE, run.output);
+    return snapshot;
+  }
+}
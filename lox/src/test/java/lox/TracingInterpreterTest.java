@@ -0,0 +1,109 @@
+package lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * What a TracingInterpreter tells its listeners, see ExecutionListener.
+ */
+class TracingInterpreterTest {
+  private final StringWriter printed = new StringWriter();
+  private final TracingInterpreter interpreter = new TracingInterpreter(new OutputSink(printed));
+  // every event but statementEntered, in order.
+  private final List<String> events = new ArrayList<>();
+
+  TracingInterpreterTest() {
+    interpreter.addListener(new ExecutionListener() {
+      @Override
+      public void callEntered(Token paren, LoxCallable callee, List<Object> arguments) {
+        List<String> values = new ArrayList<>();
+        for (Object argument : arguments) {
+          values.add(Interpreter.stringify(argument));
+        }
+        events.add("enter " + callee + "(" + String.join(", ", values) + ")");
+      }
+
+      @Override
+      public void callExited(Token paren, LoxCallable callee, Object result) {
+        events.add("exit " + callee + " " + Interpreter.stringify(result));
+      }
+
+      @Override
+      public void callFailed(Token paren, LoxCallable callee, Throwable error) {
+        events.add("fail " + callee);
+      }
+
+      @Override
+      public void variableWritten(Token name, Object value) {
+        events.add("write " + name.lexeme + " = " + Interpreter.stringify(value));
+      }
+    });
+  }
+
+  @Test
+  void reportsDeclarationsAssignmentsAndCalls() {
+    run("var a = 1;",
+        "a = a + 1;",
+        "fun next(x) { return x + 1; }",
+        "class Box {}",
+        "print next(a);");
+    assertEquals(List.of(
+        "write a = 1",
+        "write a = 2",
+        "write next = <function next >",
+        "write Box = class name : Box",
+        "enter <function next >(2)",
+        "exit <function next > 3"), events);
+  }
+
+  @Test
+  void reportsATailCallAsTheCallerLeavingAndTheCalleeEntering() {
+    run("fun inner(n) { return n * 2; }",
+        "fun outer(n) { return inner(n + 1); }",
+        "print outer(1);");
+    assertEquals(List.of(
+        "write inner = <function inner >",
+        "write outer = <function outer >",
+        "enter <function outer >(1)",
+        "exit <function outer > nil",
+        "enter <function inner >(2)",
+        "exit <function inner > 4"), events);
+    assertEquals("4" + System.lineSeparator(), printed.toString());
+  }
+
+  @Test
+  void keepsTailCallsInConstantStack() {
+    run("fun count(n) {",
+        "  if (n == 0) return \"done\";",
+        "  return count(n - 1);",
+        "}",
+        "print count(1000000);");
+    assertEquals("done" + System.lineSeparator(), printed.toString());
+    long entered = events.stream().filter(event -> event.startsWith("enter")).count();
+    long exited = events.stream().filter(event -> event.startsWith("exit")).count();
+    assertEquals(1000001, entered);
+    assertEquals(entered, exited);
+  }
+
+  @Test
+  void reportsACallFailing() {
+    run("fun fail() { return nil + 1; }",
+        "fail();");
+    assertEquals(List.of(
+        "write fail = <function fail >",
+        "enter <function fail >()",
+        "fail <function fail >"), events);
+  }
+
+  private void run(String... lines) {
+    List<Statement> statements = new Parser(new Scanner(String.join("\n", lines)).scanTokens()).parse();
+    new Resolver(interpreter).resolve(statements);
+    interpreter.interpret(statements);
+    interpreter.flush();
+  }
+}